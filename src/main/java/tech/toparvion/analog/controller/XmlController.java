@@ -0,0 +1,64 @@
+package tech.toparvion.analog.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import tech.toparvion.analog.service.XmlFormattingService;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.Reader;
+
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
+
+/**
+ * A controller for pretty printing the XML fragments that are sent to clients as is in the lazy XML formatting mode.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+@RestController
+public class XmlController {
+  private static final Logger log = LoggerFactory.getLogger(XmlController.class);
+
+  private final XmlFormattingService xmlFormattingService;
+
+  @Autowired
+  public XmlController(XmlFormattingService xmlFormattingService) {
+    this.xmlFormattingService = xmlFormattingService;
+  }
+
+  @PostMapping(value = "/xml/pretty", consumes = TEXT_PLAIN_VALUE, produces = TEXT_PLAIN_VALUE)
+  public String prettyPrint(HttpServletRequest request) throws IOException {
+    // the body is read by hand in order not to buffer more than the service would accept anyway
+    String rawXml = readBody(request, xmlFormattingService.getMaxFragmentLength() + 1);
+    return xmlFormattingService.format(rawXml);
+  }
+
+  /**
+   * @return the body of the request or its first {@code maxLength} chars if the body is longer
+   */
+  private static String readBody(HttpServletRequest request, int maxLength) throws IOException {
+    StringBuilder body = new StringBuilder();
+    char[] buffer = new char[4096];
+    Reader reader = request.getReader();
+    int read;
+    while (body.length() < maxLength
+        && (read = reader.read(buffer, 0, Math.min(buffer.length, maxLength - body.length()))) != -1) {
+      body.append(buffer, 0, read);
+    }
+    return body.toString();
+  }
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  @ResponseStatus(value = PAYLOAD_TOO_LARGE)
+  public void handleTooLongFragment(IllegalArgumentException tooLongFragmentException) {
+    log.warn("Failed to pretty print XML: {}", tooLongFragmentException.getMessage());
+  }
+
+}
@@ -6,10 +6,19 @@ package tech.toparvion.analog.model.api;
 public class StyledLine {
   private final String text;
   private final String style;
+  /**
+   * {@code true} for XML lines that are sent as is, i.e. are to be pretty printed on demand.
+   */
+  private final boolean raw;
 
   public StyledLine(String text, String style) {
+    this(text, style, false);
+  }
+
+  public StyledLine(String text, String style, boolean raw) {
     this.text = text;
     this.style = style;
+    this.raw = raw;
   }
 
   public String getText() {
@@ -20,11 +29,16 @@ public class StyledLine {
     return style;
   }
 
+  public boolean isRaw() {
+    return raw;
+  }
+
   @Override
   public String toString() {
     return "StyledLine{" +
         "style='" + style + '\'' +
         ", text='" + text + '\'' +
+        ", raw=" + raw +
         '}';
   }
 }
@@ -1,5 +1,6 @@
 package tech.toparvion.analog.model.config.adapters;
 
+import java.time.Duration;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -8,9 +9,36 @@ import java.util.Map;
  * @since 0.11
  */
 public class FileAdapterParamSection {
+  private Mode mode = Mode.PROCESS;
+  private Duration pollingDelay = Duration.ofMillis(200);
+  private int pollerThreads = 2;
   private String detectionRequest;
   private Map<String, FileAdapterParams> tailImplementations = new LinkedHashMap<>();
 
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+  }
+
+  public Duration getPollingDelay() {
+    return pollingDelay;
+  }
+
+  public void setPollingDelay(Duration pollingDelay) {
+    this.pollingDelay = pollingDelay;
+  }
+
+  public int getPollerThreads() {
+    return pollerThreads;
+  }
+
+  public void setPollerThreads(int pollerThreads) {
+    this.pollerThreads = pollerThreads;
+  }
+
   public String getDetectionRequest() {
     return detectionRequest;
   }
@@ -30,8 +58,26 @@ public class FileAdapterParamSection {
   @Override
   public String toString() {
     return "FileAdapterParamSection{" +
-            "detectionRequest='" + detectionRequest + '\'' +
+            "mode=" + mode +
+            ", pollingDelay=" + pollingDelay +
+            ", pollerThreads=" + pollerThreads +
+            ", detectionRequest='" + detectionRequest + '\'' +
             ", tailImplementations=" + tailImplementations +
             '}';
   }
+
+  /**
+   * The way the file adapter follows local files.
+   */
+  public enum Mode {
+    /**
+     * With the help of external {@code tail} process (one per file); the implementation is detected by means of
+     * {@link #getDetectionRequest() detection request}.
+     */
+    PROCESS,
+    /**
+     * With pure Java positional reads performed right inside AnaLog's JVM; no external processes are involved.
+     */
+    NATIVE
+  }
 }
@@ -15,6 +15,16 @@ public class TrackingProperties {
   private Grouping grouping;
   private TailSize tailSize;
   private Duration retryDelay;
+  /**
+   * Whether the tail adapters send all the lines of a read chunk as a single message. The batches are taken by the
+   * record assembler as is, whereas for the aggregator they are split back into line messages.
+   */
+  private boolean batching = false;
+  /**
+   * Whether timestamps are expected at the very beginning of log lines only (allows to skip the rest of a line).
+   */
+  private boolean timestampAnchored = false;
+  private Sending sending = new Sending();
 
   public Grouping getGrouping() {
     return grouping;
@@ -40,12 +50,39 @@ public class TrackingProperties {
     this.retryDelay = retryDelay;
   }
 
+  public boolean isBatching() {
+    return batching;
+  }
+
+  public void setBatching(boolean batching) {
+    this.batching = batching;
+  }
+
+  public boolean isTimestampAnchored() {
+    return timestampAnchored;
+  }
+
+  public void setTimestampAnchored(boolean timestampAnchored) {
+    this.timestampAnchored = timestampAnchored;
+  }
+
+  public Sending getSending() {
+    return sending;
+  }
+
+  public void setSending(Sending sending) {
+    this.sending = sending;
+  }
+
   @Override
   public String toString() {
     return "TrackingProperties{" +
             "grouping=" + grouping +
             ", tailSize=" + tailSize +
             ", retryDelay=" + retryDelay +
+            ", batching=" + batching +
+            ", timestampAnchored=" + timestampAnchored +
+            ", sending=" + sending +
             '}';
   }
 
@@ -81,6 +118,11 @@ public class TrackingProperties {
   public static class Grouping {
     private int sizeThreshold;
     private Duration timeout;
+    private Engine engine = Engine.AGGREGATOR;
+    /**
+     * Precision of the timer firing idle timeouts of the records (applicable to {@link Engine#ASSEMBLER} only).
+     */
+    private Duration timerTick = Duration.ofMillis(10);
 
     public int getSizeThreshold() {
       return sizeThreshold;
@@ -98,12 +140,126 @@ public class TrackingProperties {
       this.timeout = timeout;
     }
 
+    public Engine getEngine() {
+      return engine;
+    }
+
+    public void setEngine(Engine engine) {
+      this.engine = engine;
+    }
+
+    public Duration getTimerTick() {
+      return timerTick;
+    }
+
+    public void setTimerTick(Duration timerTick) {
+      this.timerTick = timerTick;
+    }
+
     @Override
     public String toString() {
       return "Grouping{" +
               "sizeThreshold=" + sizeThreshold +
               ", timeout=" + timeout +
+              ", engine=" + engine +
+              ", timerTick=" + timerTick +
               '}';
     }
+
+    /**
+     * The way log lines are grouped into records.
+     */
+    public enum Engine {
+      /**
+       * With Spring Integration aggregator prepended with a priority queue.
+       */
+      AGGREGATOR,
+      /**
+       * With dedicated record assembler that works right in the tailing thread and relies on a timer wheel for
+       * idle timeouts (event-driven, no polling).
+       */
+      ASSEMBLER
+    }
+  }
+
+  /**
+   * Parameters of the per-watcher buffers decoupling the tracking flows from sending records to the watchers.
+   */
+  public static class Sending {
+    /**
+     * Maximum number of messages waiting to be sent to a single watcher.
+     */
+    private int bufferCapacity = 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    /**
+     * Every which message is kept while the buffer is full (applicable to {@link OverflowPolicy#SAMPLE} only).
+     */
+    private int sampleRate = 10;
+    /**
+     * Number of threads sending the messages to the watchers accepting RMI only (the record stream watchers are
+     * served by the threads of their streams).
+     */
+    private int threads = 4;
+
+    public int getBufferCapacity() {
+      return bufferCapacity;
+    }
+
+    public void setBufferCapacity(int bufferCapacity) {
+      this.bufferCapacity = bufferCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+      return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getSampleRate() {
+      return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+      this.sampleRate = sampleRate;
+    }
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    @Override
+    public String toString() {
+      return "Sending{" +
+              "bufferCapacity=" + bufferCapacity +
+              ", overflowPolicy=" + overflowPolicy +
+              ", sampleRate=" + sampleRate +
+              ", threads=" + threads +
+              '}';
+    }
+
+    /**
+     * What to do with a new message when the watcher's buffer is full.
+     */
+    public enum OverflowPolicy {
+      /**
+       * Evict the oldest message from the buffer to make room for the new one.
+       */
+      DROP_OLDEST,
+      /**
+       * Keep only every n-th of the new messages (evicting the oldest one for it) and drop the others.
+       */
+      SAMPLE,
+      /**
+       * Stop sending to the watcher altogether and notify it so that it can unsubscribe from the log (and tell its
+       * clients to reopen it).
+       */
+      DISCONNECT
+    }
   }
 }
@@ -15,6 +15,16 @@ public class Node {
   private String host;
   private int agentPort;
   private int serverPort = NOT_SET;
+  /**
+   * TCP port to receive the records from agents via the record stream on; if not set, the records are received via
+   * RMI on {@link #agentPort} only.
+   */
+  private int streamPort = NOT_SET;
+  /**
+   * Whether the records streamed from this node to the current one must be compressed. Worth enabling for the nodes
+   * that reside in remote regions and thus are bound by network bandwidth rather than CPU.
+   */
+  private boolean streamCompression = false;
 
   public Node() { }
 
@@ -38,6 +48,14 @@ public class Node {
     this.serverPort = serverPort;
   }
 
+  public void setStreamPort(int streamPort) {
+    this.streamPort = streamPort;
+  }
+
+  public void setStreamCompression(boolean streamCompression) {
+    this.streamCompression = streamCompression;
+  }
+
   public String getHost() {
     return host;
   }
@@ -50,6 +68,14 @@ public class Node {
     return serverPort;
   }
 
+  public int getStreamPort() {
+    return streamPort;
+  }
+
+  public boolean isStreamCompression() {
+    return streamCompression;
+  }
+
   public InetSocketAddress getAgentInetSocketAddress() {
     return new InetSocketAddress(host, agentPort);
   }
@@ -0,0 +1,132 @@
+package tech.toparvion.analog.model.remote;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An envelope for the lines sent from agent to server. Carries either a single log record (a group of lines starting
+ * with a timestamped head) or a bunch of unrelated lines of a flat log. Unlike message headers, the timestamp is kept
+ * here as a primitive epoch milliseconds value so that neither agent nor server has to create (and serialize) any
+ * date-time objects per record.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class LogRecord implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  private final ArrayList<String> lines;
+  /**
+   * Epoch milliseconds of the record's local timestamp taken at UTC.
+   */
+  private final long timestamp;
+  @Nullable
+  private final String level;
+  /**
+   * Number of leading lines classified by the agent, i.e. those that are known to contain no XML and (for flat
+   * records) whose levels are detected already. Zero means that the server has to classify all the lines itself.
+   */
+  private final int classifiedLinesCount;
+  /**
+   * Levels of the flat record's classified lines ({@code null} for the lines without level); {@code null} for
+   * grouped records and for the records with no classified lines.
+   */
+  @Nullable
+  private final String[] lineLevels;
+
+  private LogRecord(List<String> lines, long timestamp, @Nullable String level, int classifiedLinesCount,
+                    @Nullable String[] lineLevels) {
+    this.lines = (lines instanceof ArrayList) ? ((ArrayList<String>) lines) : new ArrayList<>(lines);
+    this.timestamp = timestamp;
+    this.level = level;
+    this.classifiedLinesCount = classifiedLinesCount;
+    this.lineLevels = lineLevels;
+  }
+
+  /**
+   * @param lines     lines of the record, the first one is the head
+   * @param timestamp epoch milliseconds of the record's head timestamp
+   * @param level     level of the record
+   * @return an envelope for single record of a group log
+   */
+  public static LogRecord grouped(List<String> lines, long timestamp, @Nullable String level) {
+    return grouped(lines, timestamp, level, 0);
+  }
+
+  /**
+   * The same as {@link #grouped(List, long, String)} but for the lines classified on the agent side.
+   * @param classifiedLinesCount number of leading lines known to contain no XML
+   */
+  public static LogRecord grouped(List<String> lines, long timestamp, @Nullable String level,
+                                  int classifiedLinesCount) {
+    return new LogRecord(lines, timestamp, level, classifiedLinesCount, null);
+  }
+
+  /**
+   * @param lines any lines of a flat log
+   * @return an envelope for the lines of a flat log
+   */
+  public static LogRecord flat(List<String> lines) {
+    return new LogRecord(lines, NO_TIMESTAMP, null, 0, null);
+  }
+
+  /**
+   * The same as {@link #flat(List)} but for the lines classified on the agent side.
+   * @param lineLevels levels of the leading lines known to contain no XML; the array's length is the number of such
+   *                   lines
+   */
+  public static LogRecord flat(List<String> lines, String[] lineLevels) {
+    return new LogRecord(lines, NO_TIMESTAMP, null, lineLevels.length, lineLevels);
+  }
+
+  public List<String> getLines() {
+    return lines;
+  }
+
+  /**
+   * @return epoch milliseconds of the record's timestamp; must not be called for {@linkplain #isFlat() flat} records
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Nullable
+  public String getLevel() {
+    return level;
+  }
+
+  public int getClassifiedLinesCount() {
+    return classifiedLinesCount;
+  }
+
+  /**
+   * @param lineIndex index of a {@linkplain #getClassifiedLinesCount() classified} line of a flat record
+   * @return the line's level or {@code null} if the line has no level
+   */
+  @Nullable
+  public String getLineLevel(int lineIndex) {
+    return (lineLevels != null)
+        ? lineLevels[lineIndex]
+        : null;
+  }
+
+  /**
+   * @return {@code true} if the envelope contains lines of a flat log rather than a single record
+   */
+  public boolean isFlat() {
+    return timestamp == NO_TIMESTAMP;
+  }
+
+  @Override
+  public String toString() {
+    return "LogRecord{" +
+        "lines=" + lines.size() +
+        ", timestamp=" + timestamp +
+        ", level='" + level + '\'' +
+        ", classifiedLinesCount=" + classifiedLinesCount +
+        '}';
+  }
+}
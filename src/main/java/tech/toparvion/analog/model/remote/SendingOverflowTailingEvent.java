@@ -0,0 +1,19 @@
+package tech.toparvion.analog.model.remote;
+
+import org.springframework.integration.file.tail.FileTailingMessageProducerSupport.FileTailingEvent;
+
+import java.io.File;
+
+/**
+ * An event sent by an agent instead of the log's records when the agent's sending buffer for the server has
+ * overflowed and the server has been disconnected from the log.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class SendingOverflowTailingEvent extends FileTailingEvent {
+
+  public SendingOverflowTailingEvent(Object source, String message, File file) {
+    super(source, message, file);
+  }
+}
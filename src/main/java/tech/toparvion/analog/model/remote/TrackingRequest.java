@@ -18,8 +18,9 @@ public class TrackingRequest implements Serializable {
   @Nullable
   private final String timestampFormat;
   /**
-   * Logical address for broadcasting log's records to WebSocket clients. Usually looks exactly as specified on the
-   * client side, e.g. {@code node://angara/home/upc/app.log}.<p>
+   * Logical address for broadcasting log's records to WebSocket clients. Servers before v0.14 specify it exactly as on
+   * the client side, e.g. {@code node://angara/home/upc/app.log}, while the newer ones specify the subscription key
+   * (see {@code FanOutRegistry}) to fan the records out to all the interested destinations by themselves.<p>
    * May be null in case switching the tracking off.
    */
   @Nullable
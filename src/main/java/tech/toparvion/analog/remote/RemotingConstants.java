@@ -17,14 +17,16 @@ public final class RemotingConstants {
   public static final String SERVER_REGISTRATION_RMI_OUT__CHANNEL_PREFIX = "serverRegistrationRmiOutChannel_";
   public static final String AGENT_REGISTRATION_RMI_IN__CHANNEL = "agentRegistrationRmiInChannel";
   public static final String SERVER_RMI_PAYLOAD_IN__CHANNEL = "serverRmiPayloadInChannel";
+  public static final String SERVER_PAYLOAD_IN__CHANNEL = "serverPayloadInChannel";
   //</editor-fold>
 
   //<editor-fold desc="Server-side headers names">
   public static final String REGISTRATION_MODE__HEADER = "registrationMode";
   public static final String REPLY_ADDRESS__HEADER = "replyAddress";
+  public static final String STREAM_PORT__HEADER = "streamPort";
+  public static final String STREAM_COMPRESSION__HEADER = "streamCompression";
   public static final String LOG_TIMESTAMP_VALUE__HEADER = "logTimestampValue";
   public static final String RECORD_LEVEL__HEADER = "recordLevel";
-  public static final String SEQUENCE_NUMBER__HEADER = "sequenceNumberLong";
   public static final String CLIENT_DESTINATION__HEADER = "clientDestination";
   public static final String SOURCE_NODE__HEADER = "sourceNode";
   //</editor-fold>
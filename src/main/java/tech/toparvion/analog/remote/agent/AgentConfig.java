@@ -2,15 +2,26 @@ package tech.toparvion.analog.remote.agent;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.integration.annotation.IntegrationComponentScan;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlows;
 import org.springframework.integration.rmi.RmiInboundGateway;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+import tech.toparvion.analog.model.config.nodes.Node;
 import tech.toparvion.analog.model.config.nodes.NodesProperties;
 import tech.toparvion.analog.model.remote.TrackingRequest;
+import tech.toparvion.analog.remote.stream.StreamTarget;
+import tech.toparvion.analog.remote.agent.tailing.TimerWheel;
 
+import javax.annotation.Nullable;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.springframework.integration.dsl.MessageChannels.direct;
 import static tech.toparvion.analog.remote.RemotingConstants.*;
@@ -40,17 +51,56 @@ public class AgentConfig {
             spec -> spec
                 .subFlowMapping(true  /* registering*/,
                     f -> f.handle(TrackingRequest.class, (request, headers) -> {
-                      trackingService.registerWatcher(request, (InetSocketAddress) headers.get(REPLY_ADDRESS__HEADER));
+                      trackingService.registerWatcher(request, (InetSocketAddress) headers.get(REPLY_ADDRESS__HEADER),
+                          extractStreamTarget(headers));
                       return null;    // just to conform GenericHandler interface
                     }))
                 .subFlowMapping(false /* unregistering */,
                     f -> f.handle(TrackingRequest.class, (request, headers) -> {
-                      trackingService.unregisterWatcher(request, (InetSocketAddress) headers.get(REPLY_ADDRESS__HEADER));
+                      trackingService.unregisterWatcher(request, (InetSocketAddress) headers.get(REPLY_ADDRESS__HEADER),
+                          extractStreamTarget(headers));
                       return null;    // just to conform GenericHandler interface
                     }))
                 .id("agentRegistrationRouter"))
         .get();
   }
 
+  /**
+   * @return the requesting server's record stream or {@code null} if the server can receive records via RMI only
+   */
+  @Nullable
+  private static StreamTarget extractStreamTarget(MessageHeaders headers) {
+    Integer streamPort = headers.get(STREAM_PORT__HEADER, Integer.class);
+    if (streamPort == null || streamPort == Node.NOT_SET) {
+      return null;
+    }
+    InetSocketAddress replyAddress = (InetSocketAddress) headers.get(REPLY_ADDRESS__HEADER);
+    Assert.notNull(replyAddress, "No reply address found in request headers: " + headers);
+    boolean isCompressed = Boolean.TRUE.equals(headers.get(STREAM_COMPRESSION__HEADER, Boolean.class));
+    return new StreamTarget(new InetSocketAddress(replyAddress.getHostName(), streamPort), isCompressed);
+  }
+
+  /**
+   * A timer shared by all the record assemblers for their idle timeouts. Created on first demand only, i.e. when the
+   * first group flow with 'assembler' engine is being built.
+   */
+  @Bean(destroyMethod = "close")
+  @Lazy
+  public TimerWheel groupTimeoutTimerWheel(TrackingProperties trackingProperties) {
+    long tickMillis = trackingProperties.getGrouping().getTimerTick().toMillis();
+    return new TimerWheel(tickMillis, 512, "groupTimeoutTimerWheel");
+  }
+
+  /**
+   * Threads checking the idle timeouts fired by {@link #groupTimeoutTimerWheel(TrackingProperties) the timer wheel}
+   * and sending the records flushed upon them, so that the wheel's own thread is never occupied by a particular log.
+   */
+  @Bean(destroyMethod = "shutdownNow")
+  @Lazy
+  public ExecutorService groupTimeoutExecutor() {
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("groupTimeout-");
+    threadFactory.setDaemon(true);
+    return Executors.newFixedThreadPool(2, threadFactory);
+  }
 
 }
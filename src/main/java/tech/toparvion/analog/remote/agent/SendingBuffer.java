@@ -0,0 +1,246 @@
+package tech.toparvion.analog.remote.agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.util.Assert;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties.Sending;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties.Sending.OverflowPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded asynchronous buffer between a tracking flow and the sender of a particular watcher. The tracking flow only
+ * puts the messages into the buffer and never waits for the sender, so that a slow or unreachable watcher can't stall
+ * the tailing of the log (and thus the other watchers of it).<p>
+ * The buffer has no thread of its own. Instead, whenever it has messages, it schedules a <em>drain task</em> on the
+ * given executor which passes the messages to the sender strictly in the order they came in. There is at most one
+ * drain task of a buffer at a time, and every task sends a limited number of messages so that the buffers sharing the
+ * same executor are served in turn.<p>
+ * When the buffer is full, a new message is treated according to the configured {@link OverflowPolicy}. In case of
+ * {@link OverflowPolicy#DISCONNECT DISCONNECT} the buffer drops all its messages, stops accepting new ones and sends
+ * the <em>disconnect notice</em> instead, so that the watcher can unsubscribe itself (and tell its clients why).<p>
+ * The buffer counts the messages it has received, sent, dropped and failed to send; the counts are exposed for
+ * monitoring via {@link #toString()}.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class SendingBuffer implements MessageHandler {
+  private static final Logger log = LoggerFactory.getLogger(SendingBuffer.class);
+  /**
+   * Maximum number of messages sent by a single drain task.
+   */
+  private static final int MAX_DRAIN_SIZE = 256;
+
+  private final String name;
+  private final MessageHandler sender;
+  private final Executor executor;
+  private final Message<?> disconnectNotice;
+  private final OverflowPolicy overflowPolicy;
+  private final int sampleRate;
+  private final BlockingQueue<Message<?>> queue;
+
+  private final AtomicLong receivedCount = new AtomicLong(0L);
+  private final AtomicLong sentCount = new AtomicLong(0L);
+  private final AtomicLong droppedCount = new AtomicLong(0L);
+  private final AtomicLong failedCount = new AtomicLong(0L);
+  /**
+   * Number of messages that came into the full buffer; used for sampling only.
+   */
+  private final AtomicLong overflowCount = new AtomicLong(0L);
+  private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+  private final AtomicBoolean isDisconnected = new AtomicBoolean(false);
+  private volatile boolean isClosed = false;
+
+  //<editor-fold desc="Accessed by the drain tasks only (which never run concurrently)">
+  /**
+   * Whether the latest sending attempt has failed.
+   */
+  private boolean isFailing = false;
+  private boolean isNoticeSent = false;
+  //</editor-fold>
+
+  /**
+   * @param name a name to distinguish the buffer in logs, e.g. the ID of its sending flow
+   * @param sender the handler actually sending the messages to the watcher
+   * @param executor the executor to run the drain tasks with
+   * @param params capacity and overflow policy of the buffer
+   * @param disconnectNotice a message to send instead of the buffered ones in case of
+   * {@link OverflowPolicy#DISCONNECT}
+   */
+  SendingBuffer(String name, MessageHandler sender, Executor executor, Sending params, Message<?> disconnectNotice) {
+    Assert.isTrue(params.getBufferCapacity() > 0, "bufferCapacity must be positive");
+    Assert.isTrue(params.getSampleRate() > 0, "sampleRate must be positive");
+    this.name = name;
+    this.sender = sender;
+    this.executor = executor;
+    this.disconnectNotice = disconnectNotice;
+    this.overflowPolicy = params.getOverflowPolicy();
+    this.sampleRate = params.getSampleRate();
+    this.queue = new ArrayBlockingQueue<>(params.getBufferCapacity());
+  }
+
+  /**
+   * Puts the message into the buffer without blocking. May be called by several threads concurrently (e.g. by the
+   * tail adapter and by the group timeout scheduler).
+   */
+  @Override
+  public void handleMessage(Message<?> message) {
+    receivedCount.incrementAndGet();
+    if (isDisconnected.get()) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+    if (!queue.offer(message)) {
+      switch (overflowPolicy) {
+        case DROP_OLDEST:
+          replaceOldest(message);
+          break;
+        case SAMPLE:
+          if (overflowCount.incrementAndGet() % sampleRate == 0) {
+            replaceOldest(message);
+          } else {
+            droppedCount.incrementAndGet();
+          }
+          break;
+        case DISCONNECT:
+          disconnect();
+          break;
+      }
+    }
+    scheduleDrain();
+  }
+
+  private void replaceOldest(Message<?> message) {
+    // the drain task (as well as other producers) may change the queue concurrently, so the eviction is repeated
+    // until the message fits
+    while (!queue.offer(message)) {
+      if (queue.poll() != null) {
+        droppedCount.incrementAndGet();
+      }
+    }
+  }
+
+  private void disconnect() {
+    if (!isDisconnected.compareAndSet(false, true)) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+    List<Message<?>> pending = new ArrayList<>(queue.size());
+    queue.drainTo(pending);
+    droppedCount.addAndGet(pending.size() + 1);     // the message that has caused the overflow is dropped as well
+    log.warn("Sending buffer '{}' has overflowed; the watcher is being disconnected. {}", name, this);
+  }
+
+  void close() {
+    isClosed = true;
+  }
+
+  private void scheduleDrain() {
+    if (isClosed || !isScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(this::drain);
+    } catch (RejectedExecutionException e) {
+      isScheduled.set(false);
+      log.debug("Drain task of sending buffer '{}' has been rejected (the executor is shutting down?).", name, e);
+    }
+  }
+
+  private void drain() {
+    try {
+      if (isDisconnected.get()) {
+        if (!isNoticeSent) {
+          send(disconnectNotice);
+          isNoticeSent = true;
+        }
+        return;
+      }
+      for (int i = 0; (i < MAX_DRAIN_SIZE) && !isClosed; i++) {
+        Message<?> message = queue.poll();
+        if (message == null) {
+          break;
+        }
+        send(message);
+      }
+
+    } finally {
+      isScheduled.set(false);
+      // the messages that have come after the last poll (or exceeded the drain size) need another task, as well as
+      // the notice of the disconnection that may have happened during this task
+      if (!queue.isEmpty() || (isDisconnected.get() && !isNoticeSent)) {
+        scheduleDrain();
+      }
+    }
+  }
+
+  private void send(Message<?> message) {
+    try {
+      sender.handleMessage(message);
+      sentCount.incrementAndGet();
+      if (isFailing) {
+        log.info("Sending buffer '{}' has resumed sending. {}", name, this);
+        isFailing = false;
+      }
+
+    } catch (Exception e) {
+      failedCount.incrementAndGet();
+      if (!isFailing) {
+        // subsequent failures are most likely caused by the same reason, so only the first one is logged in detail
+        log.warn("Sending buffer '{}' failed to send a message; the following failures will be logged at DEBUG " +
+            "level only. Cause: {}", name, e.toString());
+        isFailing = true;
+      } else {
+        log.debug("Sending buffer '{}' failed to send a message.", name, e);
+      }
+    }
+  }
+
+  long getReceivedCount() {
+    return receivedCount.get();
+  }
+
+  long getSentCount() {
+    return sentCount.get();
+  }
+
+  long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  long getFailedCount() {
+    return failedCount.get();
+  }
+
+  int getQueuedCount() {
+    return queue.size();
+  }
+
+  boolean isDisconnected() {
+    return isDisconnected.get();
+  }
+
+  @Override
+  public String toString() {
+    return "SendingBuffer{" +
+        "overflowPolicy=" + overflowPolicy +
+        ", queued=" + queue.size() +
+        ", remainingCapacity=" + queue.remainingCapacity() +
+        ", received=" + receivedCount +
+        ", sent=" + sentCount +
+        ", dropped=" + droppedCount +
+        ", failed=" + failedCount +
+        ", isDisconnected=" + isDisconnected +
+        '}';
+  }
+}
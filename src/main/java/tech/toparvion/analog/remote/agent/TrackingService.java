@@ -1,5 +1,10 @@
 package tech.toparvion.analog.remote.agent;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.integration.channel.PublishSubscribeChannel;
@@ -9,20 +14,41 @@ import org.springframework.integration.dsl.StandardIntegrationFlow;
 import org.springframework.integration.dsl.context.IntegrationFlowContext;
 import org.springframework.integration.rmi.RmiInboundGateway;
 import org.springframework.integration.rmi.RmiOutboundGateway;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
 import tech.toparvion.analog.model.config.entry.LogPath;
 import tech.toparvion.analog.model.config.entry.LogType;
+import tech.toparvion.analog.model.remote.SendingOverflowTailingEvent;
 import tech.toparvion.analog.model.remote.TrackingRequest;
 import tech.toparvion.analog.remote.agent.tailing.TailingFlowProvider;
+import tech.toparvion.analog.remote.stream.RecordStreamClient;
+import tech.toparvion.analog.remote.stream.RecordStreamClients;
+import tech.toparvion.analog.remote.stream.StreamTarget;
 import tech.toparvion.analog.util.LocalizedLogger;
+import tech.toparvion.analog.util.timestamp.LogTimestampParser;
 import tech.toparvion.analog.util.timestamp.TimestampExtractor;
 
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.io.File;
 import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
 import static org.springframework.integration.dsl.context.IntegrationFlowContext.IntegrationFlowRegistration;
 import static tech.toparvion.analog.remote.RemotingConstants.*;
 import static tech.toparvion.analog.remote.agent.AgentConstants.*;
@@ -37,9 +63,26 @@ import static tech.toparvion.analog.util.AnaLogUtils.doSafely;
 @Service
 @ManagedResource
 public class TrackingService {
+  /**
+   * The tag telling apart the meters of different sending flows; its value is the ID of the sending flow.
+   */
+  static final String SENDING_FLOW_TAG = "sending.flow";
+
   private final IntegrationFlowContext flowContext;
   private final TimestampExtractor timestampExtractor;
   private final TailingFlowProvider trackingFlowProvider;
+  private final RecordStreamClients recordStreamClients;
+  private final TrackingProperties trackingProperties;
+  private final MeterRegistry meterRegistry;
+  /**
+   * Buffers of all the sending flows keyed by the flows' IDs.
+   */
+  private final Map<String, SendingBuffer> sendingBuffers = new ConcurrentHashMap<>();
+  /**
+   * Threads draining the sending buffers of the watchers accepting RMI only. The buffers of the record stream watchers
+   * are drained by the writer threads of their streams instead.
+   */
+  private final ExecutorService rmiSendingExecutor;
 
   private final LocalizedLogger log;
 
@@ -47,26 +90,40 @@ public class TrackingService {
   public TrackingService(IntegrationFlowContext flowContext,
                          TimestampExtractor timestampExtractor,
                          TailingFlowProvider trackingFlowProvider,
+                         RecordStreamClients recordStreamClients,
+                         TrackingProperties trackingProperties,
+                         MeterRegistry meterRegistry,
                          MessageSource messageSource) {
     this.flowContext = flowContext;
     this.timestampExtractor = timestampExtractor;
     this.trackingFlowProvider = trackingFlowProvider;
+    this.recordStreamClients = recordStreamClients;
+    this.trackingProperties = trackingProperties;
+    this.meterRegistry = meterRegistry;
 
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rmi-sending-");
+    threadFactory.setDaemon(true);
+    rmiSendingExecutor = Executors.newFixedThreadPool(trackingProperties.getSending().getThreads(), threadFactory);
     log = new LocalizedLogger(this, messageSource);
   }
 
   /**
    * Initiates tracking process for the log specified in {@code request}: <ol>
-   *   <li>Finds or {@linkplain TailingFlowProvider#provideGroupFlow(LogPath, boolean) creates} a tailing flow
-   *   (alongside with the {@linkplain TimestampExtractor#registerNewTimestampFormat(String, String) registration}
+   *   <li>Finds or {@linkplain TailingFlowProvider#provideGroupFlow(LogPath, boolean, LogTimestampParser) creates}
+   *   a tailing flow (alongside with the {@linkplain TimestampExtractor#registerNewTimestampFormat(String, String) registration}
    *   of the specified timestamp format);</li>
-   *   <li>Creates new {@code RmiOutboundGateway} capable of sending messages to the {@code watcherAddress} and makes
-   *   it a subscriber for the tailing flow output channel.</li>
+   *   <li>Creates new sending flow capable of sending messages to the watcher (either via the shared record stream or
+   *   via its own {@code RmiOutboundGateway}) and makes it a subscriber for the tailing flow output channel. The
+   *   sending itself is done asynchronously through the watcher's own {@link SendingBuffer} drained either by the
+   *   record stream's writer thread or by the shared RMI sending threads.</li>
    * </ol>
    * @param request holder of parameters for tracking creation
    * @param watcherAddress address of the node to which the tracked messages should be sent
+   * @param streamTarget the watcher's record stream or {@code null} if the watcher accepts RMI only
    */
-  void registerWatcher(TrackingRequest request, InetSocketAddress watcherAddress) {
+  void registerWatcher(TrackingRequest request,
+                       InetSocketAddress watcherAddress,
+                       @Nullable StreamTarget streamTarget) {
     log.info("received-reg-watcher-request", watcherAddress, request);
     StandardIntegrationFlow trackingFlow = findExistingTrackingFlow(request);
     if (trackingFlow == null) {
@@ -77,7 +134,7 @@ public class TrackingService {
         trackingFlow = createGroupTrackingFlow(request);
       }
     }
-    subscribeWatcherToTrackingFlow(trackingFlow, watcherAddress, request);
+    subscribeWatcherToTrackingFlow(trackingFlow, watcherAddress, streamTarget, request);
     startFlows(trackingFlow, request);
   }
 
@@ -125,24 +182,34 @@ public class TrackingService {
     LogPath logPath = request.getLogPath();
     String fullPath = logPath.getFullPath();
     log.debug("creating-new-group-flow", fullPath);
-    IntegrationFlow groupingFlow = trackingFlowProvider
-        .provideGroupFlow(logPath, request.isTailNeeded());
-    IntegrationFlowRegistration trackingRegistration = flowContext
-        .registration(groupingFlow)
-        .autoStartup(false)       // to prevent the tail from posting messages to uncompleted sending flow
-        .id(AgentUtils.composeTrackingFlowId(GROUP_PREFIX, fullPath))
-        .useFlowIdAsPrefix()
-        .register();
-    String timestampKey = (logPath.getType() == LogType.NODE)
-            ? logPath.getTarget()   // in case of node we must omit its name as records will come with pure path only 
-            : fullPath;
+    // the format is registered in advance as its pattern may be used to find the records of the initial tail
+    String timestampKey = composeTimestampKey(logPath);
     timestampExtractor.registerNewTimestampFormat(request.getTimestampFormat(), timestampKey);
+    IntegrationFlowRegistration trackingRegistration;
+    try {
+      // the log's parsing means are resolved once here so that the flow doesn't look them up for every line
+      LogTimestampParser timestampParser = timestampExtractor.bindTo(timestampKey);
+      IntegrationFlow groupingFlow = trackingFlowProvider
+          .provideGroupFlow(logPath, request.isTailNeeded(), timestampParser);
+      trackingRegistration = flowContext
+          .registration(groupingFlow)
+          .autoStartup(false)       // to prevent the tail from posting messages to uncompleted sending flow
+          .id(AgentUtils.composeTrackingFlowId(GROUP_PREFIX, fullPath))
+          .useFlowIdAsPrefix()
+          .register();
+
+    } catch (RuntimeException e) {
+      // there is no flow to unregister the format along with, so the reference must be released right here
+      timestampExtractor.unregisterTimestampFormat(timestampKey);
+      throw e;
+    }
     log.info("created-new-group-flow", fullPath, trackingRegistration.getId());
     return (StandardIntegrationFlow) trackingRegistration.getIntegrationFlow();
   }
 
   private void subscribeWatcherToTrackingFlow(StandardIntegrationFlow trackingFlow,
                                               InetSocketAddress watcherAddress,
+                                              @Nullable StreamTarget streamTarget,
                                               TrackingRequest request) {
     String sendingFlowId = AgentUtils.composeSendingFlowId(request, watcherAddress);
     if (flowContext.getRegistrationById(sendingFlowId) != null) {
@@ -152,19 +219,35 @@ public class TrackingService {
     log.debug("creating-new-sending-flow", sendingFlowId);
     // by this moment the tracking must be already set up, so it's time to establish outbound sending channel
     PublishSubscribeChannel outChannel = AgentUtils.extractOutChannel(trackingFlow);
-    String payloadSendingUrl = format("rmi://%s:%d/%s%s",
-        watcherAddress.getHostName(),
-        watcherAddress.getPort(),
-        RmiInboundGateway.SERVICE_NAME_PREFIX,
-        SERVER_RMI_PAYLOAD_IN__CHANNEL);
+    MessageHandler payloadSender;
+    Executor sendingExecutor;
+    if (streamTarget != null) {
+      // all the sending flows targeting the same server share the same connection (and the thread writing to it)
+      RecordStreamClient recordStreamClient = recordStreamClients.acquire(streamTarget);
+      payloadSender = recordStreamClient::write;
+      sendingExecutor = recordStreamClient;
+    } else {
+      String payloadSendingUrl = format("rmi://%s:%d/%s%s",
+          watcherAddress.getHostName(),
+          watcherAddress.getPort(),
+          RmiInboundGateway.SERVICE_NAME_PREFIX,
+          SERVER_RMI_PAYLOAD_IN__CHANNEL);
+      payloadSender = new RmiOutboundGateway(payloadSendingUrl);
+      sendingExecutor = rmiSendingExecutor;
+    }
     LogPath logPath = request.getLogPath();
     String fullPath = logPath.getFullPath();
+    // the tracking flow just puts the messages into the buffer so that a slow watcher can't stall the others
+    SendingBuffer sendingBuffer = new SendingBuffer(sendingFlowId, payloadSender, sendingExecutor,
+        trackingProperties.getSending(), composeDisconnectNotice(request));
+    sendingBuffers.put(sendingFlowId, sendingBuffer);
+    registerSendingMeters(sendingFlowId, sendingBuffer);
 
     StandardIntegrationFlow sendingFlow = IntegrationFlows
         .from(outChannel)
         .enrichHeaders(e -> e.header(CLIENT_DESTINATION__HEADER, request.getClientDestination()))
         .enrichHeaders(e -> e.header(SOURCE_NODE__HEADER, logPath.getNode()))
-        .handle(new RmiOutboundGateway(payloadSendingUrl))
+        .handle(sendingBuffer)
         .get();
     IntegrationFlowRegistration sendingRegistration = flowContext
         .registration(sendingFlow)
@@ -193,9 +276,12 @@ public class TrackingService {
    * Unsubscribes the requested watcher from corresponding tracking flow and removes the latter if there's no more
    * watchers for it anymore.
    * @param watcherAddress address of watcher to unsubscribe
+   * @param streamTarget the watcher's record stream or {@code null} if the watcher accepts RMI only
    * @param request parameters of log being tracked
    */
-  void unregisterWatcher(TrackingRequest request, InetSocketAddress watcherAddress) {
+  void unregisterWatcher(TrackingRequest request,
+                         InetSocketAddress watcherAddress,
+                         @Nullable StreamTarget streamTarget) {
     LogPath logPath = request.getLogPath();
     String fullPath = logPath.getFullPath();
     log.info("received-unreg-watcher-request", watcherAddress, fullPath);
@@ -220,6 +306,14 @@ public class TrackingService {
     }
     // safely remove the flow to prevent exception propagation
     doSafely(getClass(), () -> flowContext.remove(sendingFlowId));// this also unsubscribes the flow from trackingOutChannel
+    SendingBuffer sendingBuffer = sendingBuffers.remove(sendingFlowId);
+    if (sendingBuffer != null) {
+      sendingBuffer.close();
+    }
+    removeSendingMeters(sendingFlowId);
+    if (streamTarget != null) {
+      recordStreamClients.release(streamTarget);
+    }
     log.debug("unsubscribed-watcher", sendingFlowId, trackingOutChannel);
 
     // 2. Then, if there is no watchers for the TRACKING FLOW, let's remove it as unnecessary
@@ -227,6 +321,10 @@ public class TrackingService {
     if (trackingSubscriberCount < 1) {
       // wrap into safe action to prevent error propagation in case of removal failure
       doSafely(getClass(), () -> flowContext.remove(trackingFlowId));
+      if (!request.isFlat()) {
+        // the group tracking flow was the one who registered the format, so it's time to release it
+        timestampExtractor.unregisterTimestampFormat(composeTimestampKey(logPath));
+      }
       log.debug("stopped-tracking", trackingFlowId);
     } else {
       log.debug("continued-tracking", trackingFlowId, trackingSubscriberCount);
@@ -251,4 +349,79 @@ public class TrackingService {
     }
   }
 
+  /**
+   * @return the state of the sending buffers of all the watchers keyed by the IDs of their sending flows
+   */
+  @ManagedAttribute(description = "Sending buffers of the watchers")
+  public Map<String, String> getSendingBuffers() {
+    Map<String, String> states = new TreeMap<>();
+    sendingBuffers.forEach((sendingFlowId, buffer) -> states.put(sendingFlowId, buffer.toString()));
+    return states;
+  }
+
+  /**
+   * Exposes the state of the sending flow's buffer as meters tagged with the flow's ID: counters of the messages
+   * received, sent, dropped (because of overflow) and failed to be sent, and a gauge of the messages queued.
+   */
+  void registerSendingMeters(String sendingFlowId, SendingBuffer sendingBuffer) {
+    Tags tags = Tags.of(SENDING_FLOW_TAG, sendingFlowId);
+    FunctionCounter.builder("analog.sending.received", sendingBuffer, SendingBuffer::getReceivedCount)
+        .description("Messages received by the sending buffer from the tracking flow")
+        .tags(tags)
+        .register(meterRegistry);
+    FunctionCounter.builder("analog.sending.sent", sendingBuffer, SendingBuffer::getSentCount)
+        .description("Messages sent to the watcher")
+        .tags(tags)
+        .register(meterRegistry);
+    FunctionCounter.builder("analog.sending.dropped", sendingBuffer, SendingBuffer::getDroppedCount)
+        .description("Messages dropped because of the sending buffer overflow")
+        .tags(tags)
+        .register(meterRegistry);
+    FunctionCounter.builder("analog.sending.failed", sendingBuffer, SendingBuffer::getFailedCount)
+        .description("Messages failed to be sent to the watcher")
+        .tags(tags)
+        .register(meterRegistry);
+    Gauge.builder("analog.sending.queued", sendingBuffer, SendingBuffer::getQueuedCount)
+        .description("Messages waiting in the sending buffer")
+        .tags(tags)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Removes the meters of the sending flow so that they don't outlive the flow (nor keep its buffer reachable).
+   */
+  void removeSendingMeters(String sendingFlowId) {
+    List<Meter> sendingMeters = meterRegistry.getMeters().stream()
+        .filter(meter -> sendingFlowId.equals(meter.getId().getTag(SENDING_FLOW_TAG)))
+        .collect(toList());
+    sendingMeters.forEach(meterRegistry::remove);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    rmiSendingExecutor.shutdownNow();
+  }
+
+  /**
+   * @return a message to send to the watcher instead of the log's records in case its sending buffer overflows with
+   * {@link TrackingProperties.Sending.OverflowPolicy#DISCONNECT DISCONNECT} policy; having received it, the watcher is
+   * expected to switch the tracking off as usual
+   */
+  private Message<SendingOverflowTailingEvent> composeDisconnectNotice(TrackingRequest request) {
+    LogPath logPath = request.getLogPath();
+    String message = "the log's records were coming faster than the server could receive them (the sending buffer " +
+        "has overflowed)";
+    SendingOverflowTailingEvent event = new SendingOverflowTailingEvent(this, message, new File(logPath.getTarget()));
+    return MessageBuilder.withPayload(event)
+        .setHeader(CLIENT_DESTINATION__HEADER, request.getClientDestination())
+        .setHeader(SOURCE_NODE__HEADER, logPath.getNode())
+        .build();
+  }
+
+  private static String composeTimestampKey(LogPath logPath) {
+    return (logPath.getType() == LogType.NODE)
+        ? logPath.getTarget()   // in case of node we must omit its name as records will come with pure path only
+        : logPath.getFullPath();
+  }
+
 }
@@ -2,8 +2,6 @@ package tech.toparvion.analog.remote.agent.enrich;
 
 import org.springframework.messaging.Message;
 
-import java.time.LocalDateTime;
-
 import static tech.toparvion.analog.remote.RemotingConstants.LOG_TIMESTAMP_VALUE__HEADER;
 
 /**
@@ -25,8 +23,15 @@ public class CorrelationIdHeaderEnricher {
   private Long currentCorrelationId = System.nanoTime();
 
   public Long obtainCorrelationId(Message<String> lineMessage) {
-    LocalDateTime lineTimestamp = lineMessage.getHeaders().get(LOG_TIMESTAMP_VALUE__HEADER, LocalDateTime.class);
-    if (lineTimestamp == null) {
+    return obtainCorrelationId(lineMessage.getHeaders().containsKey(LOG_TIMESTAMP_VALUE__HEADER));
+  }
+
+  /**
+   * @param hasTimestamp whether a timestamp has been extracted from the line
+   * @return correlationId for the line
+   */
+  public Long obtainCorrelationId(boolean hasTimestamp) {
+    if (!hasTimestamp) {
       return currentCorrelationId;
     }
 
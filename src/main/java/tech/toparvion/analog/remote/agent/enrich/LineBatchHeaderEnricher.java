@@ -0,0 +1,93 @@
+package tech.toparvion.analog.remote.agent.enrich;
+
+import org.springframework.integration.support.AbstractIntegrationMessageBuilder;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import tech.toparvion.analog.service.RecordLevelDetector;
+import tech.toparvion.analog.service.RecordLevelDetector.PositionHint;
+import tech.toparvion.analog.util.timestamp.LogTimestampParser;
+import tech.toparvion.analog.util.timestamp.TimestampExtractor;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.integration.IntegrationMessageHeaderAccessor.CORRELATION_ID;
+import static tech.toparvion.analog.remote.RemotingConstants.*;
+
+/**
+ * Batching counterpart of the timestamp, correlationId and record level header enrichers. Takes a
+ * message carrying a batch of lines and, in a single pass over the batch, turns every line into a message builder
+ * with all the three headers already set. The builders are meant to be returned from a splitter so that each line
+ * message gets built only once instead of being copied by every enricher in turn. Alternatively, the consumers able
+ * to take the batch as a whole (like the record assembler) can have the headers composed for the record heads only
+ * and thus avoid splitting the batch into line messages at all.<p>
+ * Like the enrichers it combines, this class is stateful and <em>is not thread safe</em>; it is intended for single
+ * log only.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class LineBatchHeaderEnricher {
+
+  private final LogTimestampParser timestampParser;
+  private final RecordLevelDetector recordLevelDetector;
+  private final CorrelationIdHeaderEnricher correlationProvider = new CorrelationIdHeaderEnricher();
+  private final PositionHint levelHint = new PositionHint();
+
+  public LineBatchHeaderEnricher(LogTimestampParser timestampParser, RecordLevelDetector recordLevelDetector) {
+    this.timestampParser = timestampParser;
+    this.recordLevelDetector = recordLevelDetector;
+  }
+
+  /**
+   * @param batchMessage a message with {@code List<String>} payload
+   * @return builders of per-line messages, one for each line of the batch and in the same order
+   */
+  public List<AbstractIntegrationMessageBuilder<String>> enrichBatch(Message<?> batchMessage) {
+    List<?> lines = (List<?>) batchMessage.getPayload();
+    List<AbstractIntegrationMessageBuilder<String>> lineBuilders = new ArrayList<>(lines.size());
+
+    for (Object lineObject : lines) {
+      String line = lineObject.toString();
+      long timestamp = timestampParser.extractTimestampMillis(line);
+      boolean hasTimestamp = (timestamp != TimestampExtractor.NO_TIMESTAMP);
+      AbstractIntegrationMessageBuilder<String> lineBuilder = MessageBuilder.withPayload(line);
+      if (hasTimestamp) {
+        lineBuilder.setHeader(LOG_TIMESTAMP_VALUE__HEADER, timestamp);
+        lineBuilder.setHeader(RECORD_LEVEL__HEADER, detectLevel(line));
+      }
+      lineBuilder.setHeader(CORRELATION_ID, correlationProvider.obtainCorrelationId(hasTimestamp));
+      lineBuilders.add(lineBuilder);
+    }
+    return lineBuilders;
+  }
+
+  /**
+   * Checks whether given line of a batch is a record head and, if so, composes the headers the head's line message
+   * would have. Must be called for every line of the batch in turn, like {@link #enrichBatch(Message)} does.
+   * @param line a line of the batch
+   * @param batchHeaders headers of the message carrying the batch
+   * @return the batch headers supplemented with all the three headers or {@code null} if the line is not a record head
+   */
+  @Nullable
+  public MessageHeaders composeHeadHeaders(String line, MessageHeaders batchHeaders) {
+    long timestamp = timestampParser.extractTimestampMillis(line);
+    if (timestamp == TimestampExtractor.NO_TIMESTAMP) {
+      return null;
+    }
+    Map<String, Object> headHeaders = new HashMap<>(batchHeaders);
+    headHeaders.put(LOG_TIMESTAMP_VALUE__HEADER, timestamp);
+    headHeaders.put(RECORD_LEVEL__HEADER, detectLevel(line));
+    headHeaders.put(CORRELATION_ID, correlationProvider.obtainCorrelationId(true));
+    return new MessageHeaders(headHeaders);
+  }
+
+  private String detectLevel(String line) {
+    return recordLevelDetector.detectLevel(line, levelHint)
+                              .orElse(PLAIN_RECORD_LEVEL_NAME);
+  }
+}
@@ -1,5 +1,6 @@
 package tech.toparvion.analog.remote.agent.origin.adapt;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
@@ -8,10 +9,15 @@ import tech.toparvion.analog.model.config.adapters.AdaptersProperties;
 import tech.toparvion.analog.model.config.adapters.FileAdapterParamSection;
 import tech.toparvion.analog.model.config.adapters.FileAdapterParams;
 import tech.toparvion.analog.model.config.adapters.GeneralAdapterParams;
+import tech.toparvion.analog.remote.agent.si.NativeTailMultiplexer;
 
+import javax.annotation.Nullable;
+
+import java.time.Duration;
 import java.util.Map;
 
 import static java.lang.String.format;
+import static tech.toparvion.analog.model.config.adapters.FileAdapterParamSection.Mode.NATIVE;
 
 /**
  * @author Toparvion
@@ -19,12 +25,15 @@ import static java.lang.String.format;
  */
 @Lazy
 @Service
-public class FileOriginAdapter extends AbstractOriginAdapter {
+public class FileOriginAdapter extends AbstractOriginAdapter implements DisposableBean {
 
   private final FileAdapterParamSection fileAdapterParams;
 
   private GeneralAdapterParams tailParams;
 
+  @Nullable
+  private NativeTailMultiplexer multiplexer;
+
   @Autowired
   public FileOriginAdapter(AdaptersProperties adaptersProperties) {
     fileAdapterParams = adaptersProperties.getFile();
@@ -36,8 +45,41 @@ public class FileOriginAdapter extends AbstractOriginAdapter {
     return tailParams;
   }
 
+  /**
+   * @return {@code true} if local files must be followed by AnaLog itself, without external {@code tail} process
+   */
+  public boolean isNativeMode() {
+    return fileAdapterParams.getMode() == NATIVE;
+  }
+
+  /**
+   * @return delay between consequent checks of a file being followed in {@linkplain #isNativeMode() native mode}
+   */
+  public Duration getPollingDelay() {
+    return fileAdapterParams.getPollingDelay();
+  }
+
+  /**
+   * @return shared tailing engine for all local files or {@code null} if every file must be followed by a dedicated
+   * thread (as well as if the adapter is not in {@linkplain #isNativeMode() native mode})
+   */
+  @Nullable
+  public NativeTailMultiplexer getMultiplexer() {
+    return multiplexer;
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
+    if (isNativeMode()) {
+      // no need to detect tail implementation as there is no external tail process at all
+      int pollerThreads = fileAdapterParams.getPollerThreads();
+      if (pollerThreads > 0) {
+        multiplexer = new NativeTailMultiplexer(pollerThreads, getPollingDelay().toMillis());
+      }
+      log.info("Initialized file adapter upon native tailing with polling delay {} and {} poller thread(s).",
+          getPollingDelay(), (pollerThreads > 0) ? pollerThreads : "dedicated");
+      return;
+    }
     String detectionRequest = fileAdapterParams.getDetectionRequest();
     String idfString = obtainIdfString(detectionRequest);
     Assert.hasText(idfString, format("tail detection request '%s' hasn't returned anything", detectionRequest));
@@ -51,4 +93,11 @@ public class FileOriginAdapter extends AbstractOriginAdapter {
     tailParams = foundEntry.getValue();
     log.info("Initialized file adapter upon '{}' tail implementation.", foundEntry.getKey());
   }
+
+  @Override
+  public void destroy() {
+    if (multiplexer != null) {
+      multiplexer.close();
+    }
+  }
 }
@@ -0,0 +1,140 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Finds the tail of a file consisting of given number of last records (lines by default) by scanning the file
+ * backwards. The end of the file is read chunk by chunk into a single window of {@value #WINDOW_SIZE} bytes (the
+ * window is enlarged only for a line that doesn't fit into it) so that the scanning takes the same (small) time for
+ * logs of any size. Nothing is kept from the scanning but the position the tail starts at; the tail itself is meant to
+ * be read by the caller as usual.<p>
+ * The scanning is bounded with {@value #MAX_LINES_PER_RECORD} lines per requested record and with
+ * {@value #MAX_SCAN_SIZE} bytes. If there are not enough record heads within these bounds (e.g. because of mismatched
+ * timestamp format), the tail falls back to the last physical lines of the requested count, just like {@code tail -n}
+ * does.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public final class BackwardTailScanner {
+
+  static final int WINDOW_SIZE = 64 * 1024;
+  static final int MAX_LINES_PER_RECORD = 32;
+  static final int MAX_SCAN_SIZE = 4 * 1024 * 1024;
+
+  private BackwardTailScanner() {
+  }
+
+  /**
+   * @param channel      the channel of the file to scan
+   * @param fileSize     actual size of the file; the data beyond this size is ignored
+   * @param recordsCount how many last records the tail should contain
+   * @param headMatcher  predicate to distinguish record heads from other lines
+   * @return absolute position of the tail's first byte within the file; if the file contains fewer records than
+   * requested, the tail begins with the first record head of the file
+   * @throws IOException in case of failure upon file reading
+   */
+  public static long scan(FileChannel channel, long fileSize, int recordsCount, RecordHeadMatcher headMatcher)
+      throws IOException {
+    Assert.isTrue(recordsCount >= 0, "recordsCount must not be negative");
+    if (recordsCount == 0 || fileSize == 0) {
+      return fileSize;
+    }
+    long maxLinesCount = (long) recordsCount * MAX_LINES_PER_RECORD;
+    long scanLimit = Math.max(0L, fileSize - MAX_SCAN_SIZE);
+    ByteBuffer window = ByteBuffer.allocate((int) Math.min(fileSize, WINDOW_SIZE));
+    // the state below is kept across the windows; every window ends where the line being scanned ends
+    long windowEnd = fileSize;
+    long lineEnd = fileSize;          // absolute position of the end (terminator) of the line being scanned
+    long earliestHead = fileSize;     // absolute position of the earliest record head found so far
+    long lastLinesStart = fileSize;   // absolute position of the earliest line among the last recordsCount ones
+    int foundCount = 0;
+    long linesCount = 0;
+
+    while (true) {
+      long windowStart = Math.max(windowEnd - window.capacity(), scanLimit);
+      if (!readFully(channel, window, windowStart, (int) (windowEnd - windowStart))) {
+        // the file has been truncated during the scanning; it will be re-read from the beginning anyway
+        return fileSize;
+      }
+      for (long pos = windowEnd - 1; pos >= windowStart; pos--) {
+        if (window.get((int) (pos - windowStart)) != '\n') {
+          continue;
+        }
+        if (pos == fileSize - 1) {
+          lineEnd = pos;              // this is the terminator of the very last line, not a boundary between lines
+          continue;
+        }
+        if (++linesCount == recordsCount) {
+          lastLinesStart = pos + 1;
+        }
+        int lineStart = (int) (pos + 1 - windowStart);
+        if (headMatcher.isRecordHead(window, lineStart, stripCr(window, lineStart, (int) (lineEnd - windowStart)))) {
+          earliestHead = pos + 1;
+          if (++foundCount == recordsCount) {
+            return earliestHead;
+          }
+        }
+        lineEnd = pos;
+        if (linesCount == maxLinesCount) {
+          return lastLinesStart;
+        }
+      }
+
+      if (windowStart == 0) {         // the very first line of the file has no preceding terminator
+        if (lineEnd > 0) {
+          if (++linesCount == recordsCount) {
+            lastLinesStart = 0L;
+          }
+          if (headMatcher.isRecordHead(window, 0, stripCr(window, 0, (int) lineEnd))) {
+            earliestHead = 0L;
+            foundCount++;
+          }
+        }
+        // the whole file has been scanned; if it has any records, they all make up the tail
+        if (foundCount > 0) {
+          return earliestHead;
+        }
+        return (linesCount >= recordsCount)
+            ? lastLinesStart
+            : 0L;
+      }
+      if (windowStart == scanLimit) {
+        // not enough records within the bound; the lines found (but not the incomplete one) make up the tail
+        return (linesCount >= recordsCount)
+            ? lastLinesStart
+            : Math.min(lineEnd + 1, fileSize);
+      }
+      if (lineEnd >= windowEnd - 1 && windowEnd - windowStart == window.capacity()) {
+        // the line being scanned doesn't fit into the window
+        window = ByteBuffer.allocate((int) Math.min((long) window.capacity() * 2, MAX_SCAN_SIZE));
+      }
+      windowEnd = Math.min(lineEnd, windowEnd);
+    }
+  }
+
+  /**
+   * Reads {@code length} bytes of the file starting at {@code position} into the beginning of the buffer.
+   * @return {@code false} if the file has turned out to be shorter
+   */
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+      throws IOException {
+    buffer.clear().limit(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int stripCr(ByteBuffer buffer, int lineStart, int lineEnd) {
+    return (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r')
+        ? lineEnd - 1
+        : lineEnd;
+  }
+}
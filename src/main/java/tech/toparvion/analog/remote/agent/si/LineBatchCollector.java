@@ -0,0 +1,41 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link LineSplitter.LineConsumer} that collects decoded lines into a batch instead of sending them one by one.
+ * Used by tail producers in batching mode to emit a single message per read chunk.<p>
+ * Not thread-safe.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class LineBatchCollector implements LineSplitter.LineConsumer {
+
+  private final Charset charset;
+  private List<String> lines = new ArrayList<>();
+
+  LineBatchCollector(Charset charset) {
+    this.charset = charset;
+  }
+
+  @Override
+  public void accept(byte[] bytes, int offset, int length) {
+    lines.add(new String(bytes, offset, length, charset));
+  }
+
+  boolean isEmpty() {
+    return lines.isEmpty();
+  }
+
+  /**
+   * @return the lines collected so far; the collector starts a new batch afterwards
+   */
+  List<String> drain() {
+    List<String> batch = lines;
+    lines = new ArrayList<>(Math.max(batch.size(), 10));
+    return batch;
+  }
+}
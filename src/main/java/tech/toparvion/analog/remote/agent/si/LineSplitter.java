@@ -0,0 +1,100 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits a stream of raw bytes into lines without decoding them. Lines are delimited with {@code \n} (optionally
+ * preceded by {@code \r} which is stripped). An incomplete line at the end of a buffer is kept until its terminator
+ * arrives with subsequent buffers.<p>
+ * The splitter reuses its internal line buffer so that no objects are allocated per line; it is up to the
+ * {@link LineConsumer} to decide whether and when to turn the line bytes into a {@code String}.<p>
+ * Not thread-safe.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class LineSplitter {
+
+  private static final int INITIAL_LINE_CAPACITY = 256;
+  /**
+   * The line buffer is shrunk back after lines longer than this limit in order not to retain huge arrays forever.
+   */
+  private static final int MAX_RETAINED_LINE_CAPACITY = 64 * 1024;
+
+  private byte[] lineBuffer = new byte[INITIAL_LINE_CAPACITY];
+  private int lineLength = 0;
+
+  /**
+   * Consumes all the remaining bytes of the buffer and passes every complete line to the consumer.
+   * @param buffer   buffer to split; its position is moved to its limit
+   * @param consumer recipient of complete lines
+   */
+  public void split(ByteBuffer buffer, LineConsumer consumer) {
+    int limit = buffer.limit();
+    int lineStart = buffer.position();
+    for (int i = lineStart; i < limit; i++) {
+      if (buffer.get(i) == '\n') {
+        append(buffer, lineStart, i - lineStart);
+        emit(consumer);
+        lineStart = i + 1;
+      }
+    }
+    // the rest of the buffer is an incomplete line; it is kept until its end arrives
+    append(buffer, lineStart, limit - lineStart);
+    buffer.position(limit);
+  }
+
+  /**
+   * Passes the incomplete line (if any) to the consumer as if it were terminated. Intended for the end of stream.
+   * @param consumer recipient of the line
+   */
+  public void flush(LineConsumer consumer) {
+    if (lineLength > 0) {
+      emit(consumer);
+    }
+  }
+
+  /**
+   * Discards the incomplete line (if any), e.g. when the stream gets truncated or replaced.
+   */
+  public void reset() {
+    lineLength = 0;
+  }
+
+  private void append(ByteBuffer buffer, int offset, int length) {
+    if (length == 0) {
+      return;
+    }
+    if (lineLength + length > lineBuffer.length) {
+      lineBuffer = Arrays.copyOf(lineBuffer, Math.max(lineBuffer.length * 2, lineLength + length));
+    }
+    buffer.get(offset, lineBuffer, lineLength, length);
+    lineLength += length;
+  }
+
+  private void emit(LineConsumer consumer) {
+    int length = lineLength;
+    if (length > 0 && lineBuffer[length - 1] == '\r') {
+      length--;
+    }
+    lineLength = 0;
+    consumer.accept(lineBuffer, 0, length);
+    if (lineBuffer.length > MAX_RETAINED_LINE_CAPACITY) {
+      lineBuffer = new byte[INITIAL_LINE_CAPACITY];
+    }
+  }
+
+  /**
+   * A recipient of lines found by the splitter.
+   */
+  @FunctionalInterface
+  public interface LineConsumer {
+    /**
+     * @param bytes  array containing the line; valid only until the method returns
+     * @param offset index of the line's first byte
+     * @param length length of the line in bytes (excluding the terminator)
+     */
+    void accept(byte[] bytes, int offset, int length);
+  }
+}
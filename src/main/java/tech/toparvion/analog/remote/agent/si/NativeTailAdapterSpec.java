@@ -0,0 +1,96 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.integration.dsl.MessageProducerSpec;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * A {@link MessageProducerSpec} for {@link NativeTailMessageProducer}.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class NativeTailAdapterSpec extends MessageProducerSpec<NativeTailAdapterSpec, NativeTailMessageProducer> {
+
+  public NativeTailAdapterSpec() {
+    super(new NativeTailMessageProducer());
+  }
+
+  public NativeTailAdapterSpec file(File file) {
+    Assert.notNull(file, "'file' cannot be null");
+    this.target.setFile(file);
+    return _this();
+  }
+
+  /**
+   * @param tailSize the number of last lines to send upon the first opening of the file
+   * @return the spec
+   */
+  public NativeTailAdapterSpec tailSize(int tailSize) {
+    this.target.setTailSize(tailSize);
+    return _this();
+  }
+
+  /**
+   * @param headMatcher predicate to count the records of the initial tail with instead of lines
+   * @return the spec
+   */
+  public NativeTailAdapterSpec headMatcher(RecordHeadMatcher headMatcher) {
+    this.target.setHeadMatcher(headMatcher);
+    return _this();
+  }
+
+  /**
+   * @param batching whether to emit a message per read chunk of lines instead of a message per line
+   * @return the spec
+   */
+  public NativeTailAdapterSpec batching(boolean batching) {
+    this.target.setBatching(batching);
+    return _this();
+  }
+
+  /**
+   * @param pollingDelay delay in milliseconds between checks of the file when there is no new data in it
+   * @return the spec
+   */
+  public NativeTailAdapterSpec pollingDelay(long pollingDelay) {
+    this.target.setPollingDelay(pollingDelay);
+    return _this();
+  }
+
+  /**
+   * @param multiplexer shared tailing engine to follow the file with; {@code null} means a dedicated thread
+   * @return the spec
+   */
+  public NativeTailAdapterSpec multiplexer(@Nullable NativeTailMultiplexer multiplexer) {
+    this.target.setMultiplexer(multiplexer);
+    return _this();
+  }
+
+  /**
+   * The delay in milliseconds between attempts to tail the file after an I/O failure.
+   *
+   * @param fileDelay the fileDelay.
+   * @return the spec.
+   */
+  public NativeTailAdapterSpec fileDelay(long fileDelay) {
+    this.target.setTailAttemptsDelay(fileDelay);
+    return _this();
+  }
+
+  /**
+   * Configure a task executor. Defaults to a
+   * {@link org.springframework.core.task.SimpleAsyncTaskExecutor}.
+   *
+   * @param taskExecutor the taskExecutor.
+   * @return the spec.
+   */
+  public NativeTailAdapterSpec taskExecutor(TaskExecutor taskExecutor) {
+    this.target.setTaskExecutor(taskExecutor);
+    return _this();
+  }
+
+}
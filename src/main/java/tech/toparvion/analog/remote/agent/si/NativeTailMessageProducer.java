@@ -0,0 +1,518 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.file.tail.FileTailingMessageProducerSupport;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.SchedulingAwareRunnable;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A pure Java counterpart of {@link ProcessTailMessageProducer} for local files. Instead of forking an OS {@code tail}
+ * process (and serving it with 3 threads), follows the file by means of positional {@link FileChannel} reads.<p>
+ * The producer detects file rotation by the change of the file's key (inode) and truncation by the decrease of its
+ * size. All such changes are announced with {@link FileTailingEvent}s whose messages mimic those of GNU
+ * {@code tail -F} so that they are recognized by {@code FileLogEventTypeRecognizer} the same way as for the native
+ * tail process.<p>
+ * By default the producer follows the file with a dedicated thread. When given a {@link NativeTailMultiplexer}, it
+ * delegates the following to the latter instead, thus sharing the multiplexer's threads with other producers. In this
+ * case the poller threads only read the file: the lines (as well as the events) are handed off to the producer's own
+ * queue of <em>deliveries</em> which is sent downstream by the multiplexer's dispatcher threads, so that a slow flow of
+ * one file can't hold the pollers of the others. While the queue is full, the file is not read (and thus nothing is
+ * lost); the reading resumes as soon as the queue is drained.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class NativeTailMessageProducer extends FileTailingMessageProducerSupport
+        implements SchedulingAwareRunnable {
+
+  private static final int READ_BUFFER_SIZE = 8192;
+  /**
+   * Max number of buffers to read within single poll in order not to let a fast growing file hold a shared poller
+   * thread for too long.
+   */
+  private static final int MAX_READS_PER_POLL = 64;
+  /**
+   * Max number of deliveries (lines, batches or events) waiting to be sent downstream in multiplexed mode; when
+   * reached, the file is not polled until the deliveries are sent. The limit is soft as a single poll may exceed it.
+   */
+  private static final int MAX_PENDING_DELIVERIES = 4096;
+  /**
+   * Max number of deliveries sent by single dispatcher task in order not to let a busy file hold a shared dispatcher
+   * thread for too long.
+   */
+  private static final int MAX_DELIVERIES_PER_TASK = 256;
+
+  private volatile int tailSize = 0;
+
+  private volatile long pollingDelay = 200;
+
+  private volatile RecordHeadMatcher headMatcher = RecordHeadMatcher.EVERY_LINE;
+
+  private final Charset charset = Charset.defaultCharset();
+
+  /**
+   * Not {@code null} in batching mode only.
+   */
+  @Nullable
+  private volatile LineBatchCollector batchCollector;
+
+  @Nullable
+  private volatile NativeTailMultiplexer multiplexer;
+
+  private volatile Path filePath;
+
+  /**
+   * Unlike {@link #isRunning()}, is reset <em>before</em> the producer stops so that no poll can start after that.
+   */
+  private volatile boolean isTailing = false;
+
+  private final AtomicBoolean isPollScheduled = new AtomicBoolean(false);
+
+  //<editor-fold desc="Hand-off of the read data to the multiplexer's dispatchers">
+  private final Queue<Runnable> pendingDeliveries = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingDeliveriesCount = new AtomicInteger(0);
+  private final AtomicBoolean isDeliveryScheduled = new AtomicBoolean(false);
+  /**
+   * Whether a poll has been skipped because of too many pending deliveries.
+   */
+  private final AtomicBoolean isThrottled = new AtomicBoolean(false);
+  //</editor-fold>
+
+  /**
+   * Serializes polls of the file as they may be performed by different threads of the multiplexer.
+   */
+  private final Object tailingMonitor = new Object();
+
+  //<editor-fold desc="Tailing state (guarded by tailingMonitor)">
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+  private final LineSplitter lineSplitter = new LineSplitter();
+  @Nullable
+  private FileChannel channel;
+  @Nullable
+  private Object fileKey;
+  private long position;
+  private boolean isFirstOpening = true;
+  private boolean isMissing = false;
+  private long retryNotBefore = 0L;
+  //</editor-fold>
+
+  /**
+   * @param tailSize how many last lines of the file should be sent upon the very first opening of the file
+   */
+  public void setTailSize(int tailSize) {
+    Assert.isTrue(tailSize >= 0, "tailSize must not be negative");
+    this.tailSize = tailSize;
+  }
+
+  /**
+   * @param pollingDelay delay (in milliseconds) between consequent checks of the file when there is no new data in it
+   */
+  public void setPollingDelay(long pollingDelay) {
+    Assert.isTrue(pollingDelay > 0, "pollingDelay must be positive");
+    this.pollingDelay = pollingDelay;
+  }
+
+  /**
+   * @param batching whether to send all the lines of a read chunk as a single message with {@code List<String>}
+   *                 payload instead of a message per line
+   */
+  public void setBatching(boolean batching) {
+    this.batchCollector = batching
+        ? new LineBatchCollector(charset)
+        : null;
+  }
+
+  /**
+   * @param headMatcher predicate to count the records of the initial tail with; by default every line is a record
+   */
+  public void setHeadMatcher(RecordHeadMatcher headMatcher) {
+    Assert.notNull(headMatcher, "headMatcher must not be null");
+    this.headMatcher = headMatcher;
+  }
+
+  /**
+   * @param multiplexer shared tailing engine to follow the file with instead of a dedicated thread
+   */
+  public void setMultiplexer(@Nullable NativeTailMultiplexer multiplexer) {
+    this.multiplexer = multiplexer;
+  }
+
+  /**
+   * @return absolute normalized path to the followed file
+   */
+  Path getFilePath() {
+    return filePath;
+  }
+
+  @Override
+  public String getComponentType() {
+    return super.getComponentType() + " (native tail)";
+  }
+
+  @Override
+  public boolean isLongLived() {
+    return true;
+  }
+
+  @Override
+  protected void onInit() {
+    Assert.notNull(getFile(), "File cannot be null");
+    super.onInit();
+    filePath = getFile().toPath().toAbsolutePath().normalize();
+  }
+
+  @Override
+  protected void doStart() {
+    super.doStart();
+    isTailing = true;
+    NativeTailMultiplexer multiplexer = this.multiplexer;
+    if (multiplexer != null) {
+      if (logger.isInfoEnabled()) {
+        logger.info("Starting multiplexed native tailing of file: " + getFile());
+      }
+      multiplexer.register(this);
+    } else {
+      this.getTaskExecutor().execute(this);
+    }
+  }
+
+  @Override
+  protected void doStop() {
+    super.doStop();
+    isTailing = false;
+    NativeTailMultiplexer multiplexer = this.multiplexer;
+    if (multiplexer != null) {
+      multiplexer.unregister(this);
+      synchronized (tailingMonitor) {
+        closeChannel();
+      }
+      pendingDeliveries.clear();
+      pendingDeliveriesCount.set(0);
+      if (logger.isInfoEnabled()) {
+        logger.info("Multiplexed native tailing of file " + getFile() + " has stopped.");
+      }
+    }
+  }
+
+  /**
+   * Follows the file with a dedicated thread until the producer is stopped.
+   */
+  @Override
+  public void run() {
+    if (logger.isInfoEnabled()) {
+      logger.info("Starting native tailing of file: " + getFile());
+    }
+    try {
+      while (isTailing) {
+        boolean hasMoreData = pollOnce();
+        if (!hasMoreData) {
+          Thread.sleep(pollingDelay);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.error("Interrupted - stopping native tailing of file " + getFile(), e);
+
+    } finally {
+      synchronized (tailingMonitor) {
+        closeChannel();
+      }
+    }
+    if (logger.isInfoEnabled()) {
+      logger.info("Native tailing of file " + getFile() + " has stopped.");
+    }
+  }
+
+  /**
+   * Performs single check of the file state and reads newly appended data (if any). In case of I/O failure postpones
+   * subsequent checks for {@link #getMissingFileDelay() missingFileDelay}.
+   * @return {@code true} if the file may contain more data to read right away, {@code false} otherwise
+   */
+  boolean pollOnce() {
+    synchronized (tailingMonitor) {
+      if (!isTailing || System.currentTimeMillis() < retryNotBefore) {
+        return false;
+      }
+      if (pendingDeliveriesCount.get() >= MAX_PENDING_DELIVERIES) {
+        // the poll will be resumed by the dispatcher once the deliveries are sent (or by the multiplexer's sweeper)
+        isThrottled.set(true);
+        return false;
+      }
+      try {
+        return pollFile();
+
+      } catch (IOException e) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Exception on native tailing of file " + getFile(), e);
+        }
+        closeChannel();
+        retryNotBefore = System.currentTimeMillis() + getMissingFileDelay();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Marks the producer as queued for polling by the multiplexer.
+   * @return {@code false} if the producer has already been queued
+   */
+  boolean markPollScheduled() {
+    return isPollScheduled.compareAndSet(false, true);
+  }
+
+  void clearPollScheduled() {
+    isPollScheduled.set(false);
+  }
+
+  /**
+   * Marks the producer as queued for delivery by the multiplexer.
+   * @return {@code false} if the producer has already been queued
+   */
+  boolean markDeliveryScheduled() {
+    return isDeliveryScheduled.compareAndSet(false, true);
+  }
+
+  void clearDeliveryScheduled() {
+    isDeliveryScheduled.set(false);
+  }
+
+  boolean hasPendingDeliveries() {
+    return !pendingDeliveries.isEmpty();
+  }
+
+  /**
+   * @return {@code true} if a poll has been skipped because of too many pending deliveries since the previous call
+   */
+  boolean resetThrottled() {
+    return isThrottled.getAndSet(false);
+  }
+
+  /**
+   * Sends the data handed off by the polls downstream in the order it has been read. Must not be called
+   * concurrently (the multiplexer guarantees it by means of {@link #markDeliveryScheduled()}).
+   * @return {@code true} if there are more deliveries to send right away
+   */
+  boolean deliverPending() {
+    for (int i = 0; i < MAX_DELIVERIES_PER_TASK; i++) {
+      Runnable delivery = pendingDeliveries.poll();
+      if (delivery == null) {
+        return false;
+      }
+      pendingDeliveriesCount.decrementAndGet();
+      if (!isTailing) {
+        continue;       // the producer has been stopped while the data was waiting for delivery
+      }
+      try {
+        delivery.run();
+
+      } catch (RuntimeException e) {
+        logger.error("Failed to send data tailed from file " + getFile(), e);
+      }
+    }
+    return hasPendingDeliveries();
+  }
+
+  /**
+   * Sends the data right away when following the file with a dedicated thread, or hands it off to the multiplexer's
+   * dispatchers otherwise.
+   */
+  private void deliver(Runnable delivery) {
+    NativeTailMultiplexer multiplexer = this.multiplexer;
+    if (multiplexer == null) {
+      delivery.run();
+      return;
+    }
+    pendingDeliveries.add(delivery);
+    pendingDeliveriesCount.incrementAndGet();
+    multiplexer.scheduleDelivery(this);
+  }
+
+  private void announce(String eventMessage) {
+    deliver(() -> publish(eventMessage));
+  }
+
+  /**
+   * @return {@code true} if the file may contain more data to read right away, {@code false} otherwise
+   * @throws IOException in case of any failure upon file access
+   */
+  private boolean pollFile() throws IOException {
+    Path path = filePath;
+    BasicFileAttributes attributes = readAttributes(path);
+
+    if (attributes == null) {                   // the file is absent (or at least inaccessible)
+      if (channel != null) {
+        readRemaining();                        // to fetch the data that might be written right before the removal
+        closeChannel();
+        announce(format("tail: '%s' has become inaccessible: No such file or directory", path));
+
+      } else if (isFirstOpening && !isMissing) {
+        announce(format("tail: cannot open '%s' for reading: No such file or directory", path));
+      }
+      isMissing = true;
+      return false;
+    }
+
+    Object actualFileKey = composeFileKey(attributes);
+    if (channel == null) {
+      openChannel(path, actualFileKey);
+      if (isMissing) {
+        isMissing = false;
+        announce(format("tail: '%s' has appeared;  following new file", path));
+      }
+
+    } else if (!Objects.equals(fileKey, actualFileKey)) {
+      readRemaining();                          // to finish reading of the rotated file before leaving it
+      closeChannel();
+      openChannel(path, actualFileKey);
+      announce(format("tail: '%s' has been replaced;  following new file", path));
+
+    } else if (attributes.size() < position) {
+      position = 0L;
+      lineSplitter.reset();
+      announce(format("tail: %s: file truncated", path));
+    }
+
+    return readAvailable();
+  }
+
+  @Nullable
+  private BasicFileAttributes readAttributes(Path path) throws IOException {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class);
+
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * On Unix-like systems the file key is (device, inode) pair. On systems that do not support file keys (e.g.
+   * Windows) the file creation time is used instead as it also changes when the file gets replaced.
+   */
+  private Object composeFileKey(BasicFileAttributes attributes) {
+    Object key = attributes.fileKey();
+    return (key != null)
+        ? key
+        : attributes.creationTime();
+  }
+
+  private void openChannel(Path path, Object actualFileKey) throws IOException {
+    FileChannel newChannel = FileChannel.open(path, READ);
+    fileKey = actualFileKey;
+    lineSplitter.reset();
+    channel = newChannel;
+    if (isFirstOpening && !isMissing) {
+      // only the very first opening respects tail size; all subsequent ones (e.g. after rotation) read the whole file
+      long fileSize = newChannel.size();
+      long tailStart = BackwardTailScanner.scan(newChannel, fileSize, tailSize, headMatcher);
+      if (logger.isDebugEnabled()) {
+        logger.debug(format("Opened file '%s' (key=%s) for native tailing with initial tail of %d bytes.",
+            path, fileKey, fileSize - tailStart));
+      }
+      // the tail is read and sent the same way as any data appended to the file later
+      position = tailStart;
+    } else {
+      position = 0L;
+      if (logger.isDebugEnabled()) {
+        logger.debug(format("Opened file '%s' (key=%s) for native tailing from the beginning.", path, fileKey));
+      }
+    }
+    isFirstOpening = false;
+  }
+
+  private void closeChannel() {
+    FileChannel channel = this.channel;
+    if (channel != null) {
+      this.channel = null;
+      try {
+        channel.close();
+      } catch (IOException e) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Exception while closing file channel", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the data appended to the file since the last reading and sends it line by line. The reading stops either
+   * at the end of file or after {@value #MAX_READS_PER_POLL} buffers.
+   * @return {@code true} if the reading has stopped before reaching the end of file
+   */
+  private boolean readAvailable() throws IOException {
+    FileChannel channel = this.channel;
+    if (channel == null) {
+      return false;
+    }
+    int readCount;
+    for (int reads = 0; isTailing && (readCount = channel.read(readBuffer.clear(), position)) > 0; reads++) {
+      position += readCount;
+      readBuffer.flip();
+      splitAndSend(readBuffer);
+      if (reads + 1 == MAX_READS_PER_POLL) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the data of the file up to its end regardless of {@value #MAX_READS_PER_POLL} limit.
+   */
+  private void readRemaining() throws IOException {
+    boolean hasMoreData;
+    do {
+      hasMoreData = readAvailable();
+    } while (hasMoreData);
+  }
+
+  private void splitAndSend(ByteBuffer buffer) {
+    LineBatchCollector batchCollector = this.batchCollector;
+    if (batchCollector == null) {
+      lineSplitter.split(buffer, this::sendLine);
+      return;
+    }
+    lineSplitter.split(buffer, batchCollector);
+    if (!batchCollector.isEmpty()) {
+      sendBatch(batchCollector.drain());
+    }
+  }
+
+  private void sendBatch(List<String> lines) {
+    Message<List<String>> batchMessage = getMessageBuilderFactory()
+        .withPayload(lines)
+        .setHeader(FileHeaders.ORIGINAL_FILE, getFile())
+        .setHeader(FileHeaders.FILENAME, getFile().getName())
+        .build();
+    deliver(() -> sendMessage(batchMessage));
+  }
+
+  /**
+   * The only place (except batching mode) where the bytes of a line get decoded into a {@code String}.
+   */
+  private void sendLine(byte[] bytes, int offset, int length) {
+    String line = new String(bytes, offset, length, charset);
+    deliver(() -> send(line));
+  }
+
+}
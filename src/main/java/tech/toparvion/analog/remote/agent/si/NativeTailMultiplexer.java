@@ -0,0 +1,271 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A tailing engine that serves all the {@linkplain NativeTailMessageProducer native tail producers} of the agent
+ * with a fixed set of threads, no matter how many files are being followed:
+ * <ul>
+ *   <li>single <em>watcher</em> thread listens to file system notifications (inotify on Linux) about the directories
+ *   containing followed files and wakes up corresponding producers as soon as their files change;</li>
+ *   <li>single <em>sweeper</em> thread periodically wakes up all the producers in order to catch the changes that the
+ *   notifications may miss (e.g. on network file systems or upon notification queue overflow);</li>
+ *   <li>a few <em>poller</em> threads perform the actual reading of the woken up producers' files;</li>
+ *   <li>the same number of <em>dispatcher</em> threads send the read data downstream (the pollers just hand it off
+ *   to the producers' queues), so that a slow flow of one file can't keep the pollers from reading the others.</li>
+ * </ul>
+ * A producer is never queued for polling (as well as for delivery) twice, so that its state is always consistent even
+ * when it is woken up by both the watcher and the sweeper at the same time.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class NativeTailMultiplexer implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(NativeTailMultiplexer.class);
+
+  private final Map<Path, Set<NativeTailMessageProducer>> producersByFile = new ConcurrentHashMap<>();
+  /**
+   * Directories registered within the watch service. Guarded by itself.
+   */
+  private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+
+  private final ExecutorService pollers;
+  private final ExecutorService dispatchers;
+  private final ScheduledExecutorService sweeper;
+  @Nullable
+  private final WatchService watchService;
+
+  private volatile boolean isClosed = false;
+
+  /**
+   * @param pollerThreads number of threads to read the files with (as well as to send the read data with)
+   * @param sweepInterval delay (in milliseconds) between forced checks of all the registered files
+   */
+  public NativeTailMultiplexer(int pollerThreads, long sweepInterval) {
+    Assert.isTrue(pollerThreads > 0, "pollerThreads must be positive");
+    Assert.isTrue(sweepInterval > 0, "sweepInterval must be positive");
+    pollers = Executors.newFixedThreadPool(pollerThreads, newDaemonThreadFactory("native-tail-poller-"));
+    dispatchers = Executors.newFixedThreadPool(pollerThreads, newDaemonThreadFactory("native-tail-dispatcher-"));
+    sweeper = Executors.newSingleThreadScheduledExecutor(newDaemonThreadFactory("native-tail-sweeper-"));
+    sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, MILLISECONDS);
+    watchService = createWatchService();
+    if (watchService != null) {
+      Thread watcherThread = newDaemonThreadFactory("native-tail-watcher-").newThread(this::watchEvents);
+      watcherThread.start();
+    }
+    log.info("Native tail multiplexer has started with {} poller thread(s), sweep interval {} ms and {} watch service.",
+        pollerThreads, sweepInterval, (watchService != null) ? "enabled" : "disabled");
+  }
+
+  /**
+   * Starts serving given producer. Its file will be polled right away, and then every time it changes.
+   * @param producer producer to serve
+   */
+  public void register(NativeTailMessageProducer producer) {
+    Assert.state(!isClosed, "Multiplexer is closed");
+    Path file = producer.getFilePath();
+    producersByFile.computeIfAbsent(file, f -> ConcurrentHashMap.newKeySet())
+                   .add(producer);
+    Path directory = file.getParent();
+    if (directory != null) {
+      watchDirectory(directory);
+    }
+    schedulePoll(producer);
+    log.debug("Registered native tail producer for file '{}'.", file);
+  }
+
+  /**
+   * Stops serving given producer. The poll that is being executed at the moment (if any) is not interrupted.
+   * @param producer producer to stop serving
+   */
+  public void unregister(NativeTailMessageProducer producer) {
+    Path file = producer.getFilePath();
+    Set<NativeTailMessageProducer> producers = producersByFile.get(file);
+    if (producers == null || !producers.remove(producer)) {
+      return;
+    }
+    if (producers.isEmpty()) {
+      producersByFile.remove(file, producers);
+      Path directory = file.getParent();
+      if (directory != null) {
+        unwatchDirectoryIfUnused(directory);
+      }
+    }
+    log.debug("Unregistered native tail producer for file '{}'.", file);
+  }
+
+  @Override
+  public void close() {
+    isClosed = true;
+    sweeper.shutdownNow();
+    pollers.shutdownNow();
+    dispatchers.shutdownNow();
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        log.warn("Failed to close watch service.", e);
+      }
+    }
+    log.info("Native tail multiplexer has been closed.");
+  }
+
+  private void schedulePoll(NativeTailMessageProducer producer) {
+    if (isClosed || !producer.markPollScheduled()) {
+      return;       // the producer is already in the queue; it will see the latest changes anyway
+    }
+    pollers.execute(() -> {
+      producer.clearPollScheduled();      // cleared beforehand to let the changes made during the poll be noticed
+      boolean hasMoreData = producer.pollOnce();
+      if (hasMoreData) {
+        schedulePoll(producer);           // re-queued to give other producers a chance to be polled in between
+      }
+    });
+  }
+
+  /**
+   * Queues the producer for sending its pending deliveries unless it is queued already.
+   */
+  void scheduleDelivery(NativeTailMessageProducer producer) {
+    if (isClosed || !producer.markDeliveryScheduled()) {
+      return;
+    }
+    dispatchers.execute(() -> {
+      boolean hasMoreDeliveries;
+      try {
+        hasMoreDeliveries = producer.deliverPending();
+      } finally {
+        // cleared afterwards so that the deliveries are never sent concurrently; the ones handed off in between are
+        // noticed by the check below
+        producer.clearDeliveryScheduled();
+      }
+      if (hasMoreDeliveries || producer.hasPendingDeliveries()) {
+        scheduleDelivery(producer);       // re-queued to give other producers a chance to be delivered in between
+      } else if (producer.resetThrottled()) {
+        schedulePoll(producer);           // the file hasn't been read because of the deliveries; now it's time to
+      }
+    });
+  }
+
+  private void sweep() {
+    try {
+      producersByFile.values().forEach(producers -> producers.forEach(this::schedulePoll));
+    } catch (RuntimeException e) {
+      log.error("Failed to sweep native tail producers.", e);
+    }
+  }
+
+  private void watchEvents() {
+    assert watchService != null;
+    while (!isClosed) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ClosedWatchServiceException e) {
+        break;
+      }
+      Path directory = (Path) key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          // some events have been lost so that all the files of the directory have to be checked
+          producersByFile.forEach((file, producers) -> {
+            if (directory.equals(file.getParent())) {
+              producers.forEach(this::schedulePoll);
+            }
+          });
+          continue;
+        }
+        Path file = directory.resolve((Path) event.context());
+        Set<NativeTailMessageProducer> producers = producersByFile.get(file);
+        if (producers != null) {
+          producers.forEach(this::schedulePoll);
+        }
+      }
+      if (!key.reset()) {       // e.g. the directory has been removed; the sweeper will take care of its files
+        synchronized (watchKeys) {
+          watchKeys.remove(directory, key);
+        }
+      }
+    }
+    log.debug("Native tail watcher thread has stopped.");
+  }
+
+  private void watchDirectory(Path directory) {
+    if (watchService == null) {
+      return;
+    }
+    synchronized (watchKeys) {
+      WatchKey existingKey = watchKeys.get(directory);
+      if (existingKey != null && existingKey.isValid()) {
+        return;
+      }
+      try {
+        WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        watchKeys.put(directory, key);
+        log.debug("Directory '{}' is now being watched for changes.", directory);
+
+      } catch (IOException e) {
+        // the directory may be absent yet; the sweeper will take care of its files until it appears
+        log.debug("Unable to watch directory '{}': {}", directory, e.toString());
+      }
+    }
+  }
+
+  private void unwatchDirectoryIfUnused(Path directory) {
+    boolean isDirectoryInUse = producersByFile.keySet()
+        .stream()
+        .anyMatch(file -> directory.equals(file.getParent()));
+    if (isDirectoryInUse) {
+      return;
+    }
+    synchronized (watchKeys) {
+      WatchKey key = watchKeys.remove(directory);
+      if (key != null) {
+        key.cancel();
+        log.debug("Directory '{}' is not watched anymore.", directory);
+      }
+    }
+  }
+
+  @Nullable
+  private static WatchService createWatchService() {
+    try {
+      return FileSystems.getDefault().newWatchService();
+
+    } catch (IOException | UnsupportedOperationException e) {
+      log.warn("File system watch service is not available; native tailing will rely on periodic sweeps only.", e);
+      return null;
+    }
+  }
+
+  private static CustomizableThreadFactory newDaemonThreadFactory(String threadNamePrefix) {
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+    threadFactory.setDaemon(true);
+    return threadFactory;
+  }
+}
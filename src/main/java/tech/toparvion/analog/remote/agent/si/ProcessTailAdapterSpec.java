@@ -82,6 +82,15 @@ public class ProcessTailAdapterSpec extends MessageProducerSpec<ProcessTailAdapt
     return _this();
   }
 
+  /**
+   * @param batching whether to emit a message per read chunk of lines instead of a message per line
+   * @return the spec
+   */
+  public ProcessTailAdapterSpec batching(boolean batching) {
+    this.factoryBean.setBatching(batching);
+    return _this();
+  }
+
   /**
    * Specify the idle interval before start sending idle events.
    *
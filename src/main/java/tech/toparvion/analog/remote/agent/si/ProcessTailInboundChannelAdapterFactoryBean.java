@@ -42,6 +42,8 @@ public class ProcessTailInboundChannelAdapterFactoryBean extends AbstractFactory
 
   private volatile boolean enableStatusReader = true;
 
+  private volatile boolean batching = false;
+
   private volatile Long idleEventInterval;
 
   private volatile String executbale;
@@ -85,6 +87,10 @@ public class ProcessTailInboundChannelAdapterFactoryBean extends AbstractFactory
     this.enableStatusReader = enableStatusReader;
   }
 
+  public void setBatching(boolean batching) {
+    this.batching = batching;
+  }
+
   /**
    * How often to emit {@link FileTailingMessageProducerSupport.FileTailingIdleEvent}s in milliseconds.
    *
@@ -188,6 +194,7 @@ public class ProcessTailInboundChannelAdapterFactoryBean extends AbstractFactory
     ProcessTailMessageProducer adapter = new ProcessTailMessageProducer();
     adapter.setOptions(this.nativeOptions);
     adapter.setEnableStatusReader(this.enableStatusReader);
+    adapter.setBatching(this.batching);
     adapter.setFile(this.file);
     adapter.setExecutable(this.executbale);
     if (this.taskExecutor != null) {
@@ -15,15 +15,21 @@
  */
 package tech.toparvion.analog.remote.agent.si;
 
+import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.tail.FileTailingMessageProducerSupport;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessagingException;
 import org.springframework.scheduling.SchedulingAwareRunnable;
 import org.springframework.util.Assert;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 
 import static java.lang.String.format;
@@ -54,7 +60,18 @@ public class ProcessTailMessageProducer extends FileTailingMessageProducerSuppor
 
   private volatile boolean enableStatusReader = true;
 
-  private volatile BufferedReader reader;
+  private volatile InputStream stdout;
+
+  private final Charset charset = Charset.defaultCharset();
+
+  private volatile boolean batching = false;
+
+  /**
+   * Held by the stdout reader for its whole lifetime so that the reader of a restarted process can't send anything
+   * until the reader of the previous process has finished. This keeps the adapter a single producer for the
+   * downstream channels (some of them rely on it, see {@code SpscRingChannel}) and preserves the order of lines.
+   */
+  private final Object readerMonitor = new Object();
 
 
   public void setOptions(String options) {
@@ -76,6 +93,14 @@ public class ProcessTailMessageProducer extends FileTailingMessageProducerSuppor
     this.enableStatusReader = enableStatusReader;
   }
 
+  /**
+   * @param batching whether to send all the lines of a read chunk as a single message with {@code List<String>}
+   *                 payload instead of a message per line
+   */
+  public void setBatching(boolean batching) {
+    this.batching = batching;
+  }
+
   public String getCommand() {
     return this.command;
   }
@@ -125,6 +150,16 @@ public class ProcessTailMessageProducer extends FileTailingMessageProducerSuppor
     }
   }
 
+  /**
+   * Forgets the terminated process without destroying it, because destroying closes the process' stdout whereas the
+   * reader may not have read all the output yet. The reader gets to the end of the output by itself.
+   */
+  private void releaseProcess(Process process) {
+    if (this.process == process) {
+      this.process = null;
+    }
+  }
+
   /**
    * Exec the native tail process.
    */
@@ -135,13 +170,13 @@ public class ProcessTailMessageProducer extends FileTailingMessageProducerSuppor
     }
     try {
       Process process = Runtime.getRuntime().exec(this.command);
-      BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+      InputStream stdout = process.getInputStream();
       this.process = process;
       this.startProcessMonitor();
       if (this.enableStatusReader) {
         startStatusReader();
       }
-      this.reader = reader;
+      this.stdout = stdout;
       this.getTaskExecutor().execute(this);
     } catch (IOException e) {
       throw new MessagingException("Failed to exec tail command: '" + this.command + "'", e);
@@ -176,7 +211,7 @@ public class ProcessTailMessageProducer extends FileTailingMessageProducerSuppor
         logger.error("Interrupted - stopping adapter", e);
         stop();
       } finally {
-        destroyProcess();
+        releaseProcess(process);
       }
       if (isRunning()) {
         if (logger.isInfoEnabled()) {
@@ -230,24 +265,49 @@ public class ProcessTailMessageProducer extends FileTailingMessageProducerSuppor
   }
 
   /**
-   * Reads lines from stdout and sends in a message to the output channel.
+   * Reads lines from stdout and sends in a message to the output channel. The lines are found on raw bytes and get
+   * decoded only when being sent. The bytes are read from the process' stdout straight into a heap array that the
+   * splitter scans in place (a channel over the stream would only copy them once more through a buffer of its own).
+   * The buffers are allocated once per process (rather than per producer) as the reading thread of the previous
+   * process may still be running when the process is restarted. In that case this reader waits for the previous one to deliver the rest of its lines and exit (which happens as soon as the previous
+   * process' stdout is exhausted) so that the readers never send concurrently.
    */
   @Override
   public void run() {
-    String line;
+    InputStream stdout = this.stdout;
+    synchronized (readerMonitor) {
+      readStdout(stdout);
+    }
+  }
+
+  private void readStdout(InputStream stdout) {
+    byte[] bytes = new byte[8192];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    LineSplitter lineSplitter = new LineSplitter();
+    LineBatchCollector batchCollector = this.batching ? new LineBatchCollector(this.charset) : null;
+    LineSplitter.LineConsumer lineConsumer = (batchCollector != null) ? batchCollector : this::sendLine;
     try {
       if (logger.isDebugEnabled()) {
         logger.debug("Reading stdout");
       }
-      while ((line = this.reader.readLine()) != null) {
-        this.send(line);
+      int count;
+      while ((count = stdout.read(bytes)) >= 0) {
+        buffer.limit(count).position(0);
+        lineSplitter.split(buffer, lineConsumer);
+        if (batchCollector != null && !batchCollector.isEmpty()) {
+          sendBatch(batchCollector.drain());
+        }
+      }
+      lineSplitter.flush(lineConsumer);   // the last line may have no terminator
+      if (batchCollector != null && !batchCollector.isEmpty()) {
+        sendBatch(batchCollector.drain());
       }
     } catch (IOException e) {
       if (logger.isDebugEnabled()) {
         logger.debug("Exception on tail reader", e);
       }
       try {
-        this.reader.close();
+        stdout.close();
       } catch (IOException e1) {
         if (logger.isDebugEnabled()) {
           logger.debug("Exception while closing stdout", e);
@@ -257,4 +317,17 @@ public class ProcessTailMessageProducer extends FileTailingMessageProducerSuppor
     }
   }
 
+  private void sendLine(byte[] bytes, int offset, int length) {
+    this.send(new String(bytes, offset, length, this.charset));
+  }
+
+  private void sendBatch(List<String> lines) {
+    Message<List<String>> batchMessage = getMessageBuilderFactory()
+        .withPayload(lines)
+        .setHeader(FileHeaders.ORIGINAL_FILE, getFile())
+        .setHeader(FileHeaders.FILENAME, getFile().getName())
+        .build();
+    sendMessage(batchMessage);
+  }
+
 }
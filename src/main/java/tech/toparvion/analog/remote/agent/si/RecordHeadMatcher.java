@@ -0,0 +1,28 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A predicate telling whether a line of a log is the first one (the head) of a log record. Used by
+ * {@link BackwardTailScanner} to count records instead of physical lines.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+@FunctionalInterface
+public interface RecordHeadMatcher {
+
+  /**
+   * The matcher that considers every line a separate record.
+   */
+  RecordHeadMatcher EVERY_LINE = (buffer, lineStart, lineEnd) -> true;
+
+  /**
+   * @param buffer    buffer containing the line; must not be modified by the matcher
+   * @param lineStart index of the first byte of the line within the buffer
+   * @param lineEnd   index of the byte following the last one of the line (excluding line terminator)
+   * @return {@code true} if the line starts a new record
+   */
+  boolean isRecordHead(ByteBuffer buffer, int lineStart, int lineEnd);
+
+}
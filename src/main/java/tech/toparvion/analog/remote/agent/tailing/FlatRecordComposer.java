@@ -0,0 +1,39 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import tech.toparvion.analog.model.remote.LogRecord;
+import tech.toparvion.analog.service.RecordLevelDetector;
+import tech.toparvion.analog.service.RecordLevelDetector.PositionHint;
+import tech.toparvion.analog.util.AnaLogUtils;
+
+import java.util.List;
+
+/**
+ * Wraps the lines of a flat log into {@link LogRecord} envelope along with their classification, i.e. the levels of
+ * the lines preceding the first XML fragment (if any). This way the lines are classified in a single pass on the agent
+ * side instead of the server that all the agents send their records to.<p>
+ * The composer is stateful (as it remembers the position of levels in the log) and is intended for single log only.
+ * Within the log it may be called by several threads, e.g. by the tailing one and by the aggregator's group timeout
+ * scheduler in non-batching mode, so the composing is serialized in order to keep the level hint consistent.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class FlatRecordComposer {
+
+  private final RecordLevelDetector recordLevelDetector;
+  private final PositionHint levelHint = new PositionHint();
+
+  FlatRecordComposer(RecordLevelDetector recordLevelDetector) {
+    this.recordLevelDetector = recordLevelDetector;
+  }
+
+  synchronized LogRecord compose(List<String> lines) {
+    // XML fragments may span several lines and thus are left for the server to be distinguished and formatted
+    String[] lineLevels = new String[AnaLogUtils.countLinesBeforeXml(lines)];
+    for (int i = 0; i < lineLevels.length; i++) {
+      lineLevels[i] = recordLevelDetector.detectLevel(lines.get(i), levelHint)
+                                         .orElse(null);
+    }
+    return LogRecord.flat(lines, lineLevels);
+  }
+}
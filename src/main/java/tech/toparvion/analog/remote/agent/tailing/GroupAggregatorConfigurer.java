@@ -2,22 +2,21 @@ package tech.toparvion.analog.remote.agent.tailing;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.integration.core.MessagingTemplate;
 import org.springframework.integration.dsl.AggregatorSpec;
 import org.springframework.integration.store.MessageGroup;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.ChannelInterceptor;
 
 import javax.annotation.Nullable;
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Objects;
 
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 import static org.springframework.integration.IntegrationMessageHeaderAccessor.CORRELATION_ID;
-import static org.springframework.messaging.support.MessageBuilder.withPayload;
 
 /**
  * @author Toparvion
@@ -26,14 +25,33 @@ import static org.springframework.messaging.support.MessageBuilder.withPayload;
 class GroupAggregatorConfigurer {
   private static final Logger log = LoggerFactory.getLogger(GroupAggregatorConfigurer.class);
 
-  private final MessagingTemplate preAggregatorQueueSender;
+  private final SpscRingChannel preAggregatorChannel;
   private final int groupSizeThreshold;
   private final long groupTimeout;
 
-  GroupAggregatorConfigurer(MessageChannel preAggregatorQueueChannel, int groupSizeThreshold, long groupTimeout) {
-    this.preAggregatorQueueSender = new MessagingTemplate(preAggregatorQueueChannel);
+  /**
+   * The message most recently taken by the aggregator from the queue, i.e. the last one added to the group. Along
+   * with the group's first message it is enough to decide whether the group is complete because all the messages of
+   * a group except the last one always share the same correlationId (the group is released as soon as a message with
+   * another correlationId arrives). This makes the decision constant-time instead of walking the whole group.<p>
+   * The message is remembered by the aggregator's poller thread right before the aggregator adds it to the group, so
+   * the release strategy (called by the same thread) always sees the message that has just been added. On expiry the
+   * output processor may be called by another thread though; that is why it checks the group membership first.
+   */
+  @Nullable
+  private volatile Message<?> lastReceivedMessage;
+
+  GroupAggregatorConfigurer(SpscRingChannel preAggregatorChannel, int groupSizeThreshold, long groupTimeout) {
+    this.preAggregatorChannel = preAggregatorChannel;
     this.groupSizeThreshold = groupSizeThreshold;
     this.groupTimeout = groupTimeout;
+    preAggregatorChannel.addInterceptor(new ChannelInterceptor() {
+      @Override
+      public Message<?> postReceive(Message<?> message, MessageChannel channel) {
+        lastReceivedMessage = message;
+        return message;
+      }
+    });
   }
 
   void configure(AggregatorSpec spec) {
@@ -55,12 +73,12 @@ class GroupAggregatorConfigurer {
     if (group.size() >= groupSizeThreshold) {
       return true;
     }
-    MessageTwain prevAndLastMessages = findPrevAndLastMessages(group);
-    Message<?> lastMessage = prevAndLastMessages.getM1();
-    Message<?> second2LastMessage = prevAndLastMessages.getM2();
-    assert (lastMessage != null) && (second2LastMessage != null);   // relying on check for singleton group
+    Message<?> lastMessage = lastReceivedMessage;
+    if (lastMessage == null) {
+      return false;
+    }
     Long lastMessageCorrId = lastMessage.getHeaders().get(CORRELATION_ID, Long.class);
-    Long prevMessageCorrId = second2LastMessage.getHeaders().get(CORRELATION_ID, Long.class);
+    Long prevMessageCorrId = group.getOne().getHeaders().get(CORRELATION_ID, Long.class);
 
     boolean isGroupComplete = !Objects.equals(lastMessageCorrId, prevMessageCorrId);
     if (isGroupComplete) {
@@ -73,75 +91,40 @@ class GroupAggregatorConfigurer {
   private Object outputProcessor(MessageGroup group) {
     assert group.size() > 0;
     if (group.size() == 1) {      // the singleton group is special case and must be handled separately
-      return withPayload(singletonList(group.getOne().getPayload()))
-          .copyHeaders(group.getOne().getHeaders())
-          .build();
+      Message<?> singleMessage = group.getOne();
+      return GroupRecordComposer.compose(singletonList(singleMessage.getPayload().toString()),
+          singleMessage.getHeaders());
     }
     if (group.size() >= groupSizeThreshold) {
       return composeRecord(group);
     }
 
-    MessageTwain prevAndLastMessages = findPrevAndLastMessages(group);
-    Message<?> lastMessage = prevAndLastMessages.getM1();
-    Message<?> second2LastMessage = prevAndLastMessages.getM2();
-    assert (lastMessage != null) && (second2LastMessage != null);   // relying on check for singleton group
+    Message<?> lastMessage = lastReceivedMessage;
+    // on expiry the last received message may not belong to the group yet (the check is O(1) as the group is a set)
+    if (lastMessage == null || !group.getMessages().contains(lastMessage)) {
+      return composeRecord(group);
+    }
     // extract correlation headers in order to find out if the group is released by timeout or by completion
     Long lastMessageCorrId = lastMessage.getHeaders().get(CORRELATION_ID, Long.class);
-    Long prevMessageCorrId = second2LastMessage.getHeaders().get(CORRELATION_ID, Long.class);
+    Long prevMessageCorrId = group.getOne().getHeaders().get(CORRELATION_ID, Long.class);
 
     boolean isGroupComplete = !Objects.equals(lastMessageCorrId, prevMessageCorrId);
     if (isGroupComplete) {
       group.remove(lastMessage);
-      preAggregatorQueueSender.send(lastMessage);
+      // the head of the next record is given back to be received first again, i.e. without any reordering
+      preAggregatorChannel.pushBack(lastMessage);
     }
     return composeRecord(group);
   }
 
   private Object composeRecord(MessageGroup group) {
-    return MessageBuilder
-        .withPayload(group.getMessages()
-            .stream()
-            .map(Message::getPayload)
-            .map(Object::toString)
-            .collect(toList()))
-            //.collect(joining("\n")))
-        .copyHeadersIfAbsent(group.getOne().getHeaders())   // in order not to loose 'logTimestamp' after release
-        .build();
-  }
-
-  /**
-   * @return last (M1) and second to last (M2) messages from given group; both messages can be {@code null} if the
-   * group contains less than 2 or 1 elements
-   */
-  private MessageTwain findPrevAndLastMessages(MessageGroup group) {
-    Message<?> lastMessage = null, second2LastMessage = null;
-    for (Message<?> message : group.getMessages()) {
-      second2LastMessage = lastMessage;
-      lastMessage = message;
-    }
-    return new MessageTwain(lastMessage, second2LastMessage);
-  }
-
-  private static class MessageTwain {
-    @Nullable
-    private final Message<?> m1;
-    @Nullable
-    private final Message<?> m2;
-
-    private MessageTwain(@Nullable Message<?> m1, @Nullable Message<?> m2) {
-      this.m1 = m1;
-      this.m2 = m2;
-    }
-
-    @Nullable
-    Message<?> getM1() {
-      return m1;
-    }
-
-    @Nullable
-    Message<?> getM2() {
-      return m2;
-    }
+    List<String> lines = group.getMessages()
+        .stream()
+        .map(Message::getPayload)
+        .map(Object::toString)
+        .collect(toList());
+    // the headers are taken from the head in order not to loose 'logTimestamp' after release
+    return GroupRecordComposer.compose(lines, group.getOne().getHeaders());
   }
 
 }
@@ -0,0 +1,47 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import tech.toparvion.analog.model.remote.LogRecord;
+import tech.toparvion.analog.util.AnaLogUtils;
+
+import java.util.List;
+
+import static tech.toparvion.analog.remote.RemotingConstants.LOG_TIMESTAMP_VALUE__HEADER;
+import static tech.toparvion.analog.remote.RemotingConstants.RECORD_LEVEL__HEADER;
+
+/**
+ * Common logic of wrapping the lines grouped into a record (by either aggregator or assembler) into the message to be
+ * sent to the server.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+final class GroupRecordComposer {
+
+  private GroupRecordComposer() {
+  }
+
+  /**
+   * Wraps given lines into {@link LogRecord} envelope. The timestamp and the level are moved from the head's headers
+   * into the envelope, the rest of the headers are copied to the resulting message as is. The lines preceding the
+   * first XML fragment (if any) are marked as classified so that the server doesn't examine them once again. If the head has no
+   * timestamp (i.e. the lines precede the first record of the log), the envelope is composed as a flat one.
+   * @param lines       lines of the record
+   * @param headHeaders headers of the record's first line
+   * @return a message to send
+   */
+  static Message<LogRecord> compose(List<String> lines, MessageHeaders headHeaders) {
+    Long timestamp = headHeaders.get(LOG_TIMESTAMP_VALUE__HEADER, Long.class);
+    // the head's level is detected by the enrichers already, so only XML is left to look for
+    LogRecord record = (timestamp != null)
+        ? LogRecord.grouped(lines, timestamp, headHeaders.get(RECORD_LEVEL__HEADER, String.class),
+                            AnaLogUtils.countLinesBeforeXml(lines))
+        : LogRecord.flat(lines);
+    return MessageBuilder.withPayload(record)
+        .copyHeaders(headHeaders)
+        .removeHeaders(LOG_TIMESTAMP_VALUE__HEADER, RECORD_LEVEL__HEADER)
+        .build();
+  }
+}
@@ -0,0 +1,208 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.handler.AbstractMessageProducingHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import tech.toparvion.analog.remote.agent.enrich.LineBatchHeaderEnricher;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static tech.toparvion.analog.remote.RemotingConstants.LOG_TIMESTAMP_VALUE__HEADER;
+
+/**
+ * A purpose-built replacement for the aggregator configured by {@link GroupAggregatorConfigurer}. Assembles log
+ * records out of line messages right in the sending thread: the lines are appended to the current record which is
+ * flushed (sent to the output channel)
+ * <ul>
+ *   <li>upon arrival of the next record head, i.e. the line with a timestamp;</li>
+ *   <li>upon reaching the size threshold;</li>
+ *   <li>upon idle timeout, i.e. when no lines have been appended for the specified time.</li>
+ * </ul>
+ * Unlike the aggregator, the assembler spends constant time per line, doesn't need a message store, doesn't resend
+ * record heads into the queue and doesn't introduce polling latency. The idle timeout is tracked with a single task
+ * per record that reschedules itself while the record keeps growing; the tasks are fired by a {@link TimerWheel}
+ * shared among all the assemblers so that idle logs cause no wakeups at all. The wheel's callback only hands the
+ * timeout over to the given executor so that neither the assembler's lock nor the downstream sending can delay the
+ * timeouts of the other logs.<p>
+ * The flushed records are put into a queue under the lock and sent out of it afterwards by whichever thread has
+ * flushed them (the tailing one or the executor's one). Only one thread sends at a time, so the records leave the
+ * assembler in the order they have been flushed.<p>
+ * In batching mode the assembler takes the batches of lines as they come from the tail adapter, i.e. without splitting
+ * them into line messages; the record heads of a batch are recognized (and given their headers) by the
+ * {@link LineBatchHeaderEnricher}.<p>
+ * The output message has the same shape as the aggregator's one (see {@link GroupRecordComposer}).
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class RecordAssembler extends AbstractMessageProducingHandler {
+  private static final Logger log = LoggerFactory.getLogger(RecordAssembler.class);
+
+  private final int sizeThreshold;
+  private final long idleTimeout;
+  private final TimerWheel timerWheel;
+  private final Executor timeoutExecutor;
+  @Nullable
+  private final LineBatchHeaderEnricher batchEnricher;
+  private final Queue<Message<?>> flushedRecords = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean isSending = new AtomicBoolean(false);
+
+  //<editor-fold desc="Current record state (guarded by this)">
+  private List<String> lines = new ArrayList<>();
+  @Nullable
+  private MessageHeaders headHeaders;
+  private long lastAppendTime;
+  /**
+   * Incremented upon every flush in order to let the timeout tasks that haven't managed to get cancelled know that
+   * their record is already gone.
+   */
+  private long recordNumber = 0L;
+  /**
+   * The idle timeout of the current record; cancelled upon flush so that the records flushed by the next head or by
+   * the size threshold don't bother the timeout executor at all.
+   */
+  @Nullable
+  private TimerWheel.Timeout timeout;
+  //</editor-fold>
+
+  /**
+   * @param timerWheel      timer to track the idle timeouts with
+   * @param timeoutExecutor executor to check the fired timeouts (and to send the records flushed by them) with
+   */
+  RecordAssembler(int sizeThreshold, long idleTimeout, TimerWheel timerWheel, Executor timeoutExecutor) {
+    this(sizeThreshold, idleTimeout, timerWheel, timeoutExecutor, null);
+  }
+
+  /**
+   * @param timerWheel      timer to track the idle timeouts with
+   * @param timeoutExecutor executor to check the fired timeouts (and to send the records flushed by them) with
+   * @param batchEnricher   enricher to recognize the record heads of the incoming batches with; {@code null} if the
+   *                        lines come one by one, already enriched
+   */
+  RecordAssembler(int sizeThreshold, long idleTimeout, TimerWheel timerWheel, Executor timeoutExecutor,
+                  @Nullable LineBatchHeaderEnricher batchEnricher) {
+    this.sizeThreshold = sizeThreshold;
+    this.idleTimeout = idleTimeout;
+    this.timerWheel = timerWheel;
+    this.timeoutExecutor = timeoutExecutor;
+    this.batchEnricher = batchEnricher;
+  }
+
+  @Override
+  public String getComponentType() {
+    return "record-assembler";
+  }
+
+  @Override
+  protected void handleMessageInternal(Message<?> message) {
+    if (batchEnricher != null && message.getPayload() instanceof List) {
+      appendBatch(message, batchEnricher);
+    } else {
+      append(message);
+    }
+    sendFlushedRecords();
+  }
+
+  private synchronized void append(Message<?> lineMessage) {
+    MessageHeaders lineHeaders = lineMessage.getHeaders();
+    appendLine(lineMessage.getPayload().toString(), lineHeaders, lineHeaders.containsKey(LOG_TIMESTAMP_VALUE__HEADER));
+  }
+
+  private synchronized void appendBatch(Message<?> batchMessage, LineBatchHeaderEnricher batchEnricher) {
+    MessageHeaders batchHeaders = batchMessage.getHeaders();
+    for (Object lineObject : (List<?>) batchMessage.getPayload()) {
+      String line = lineObject.toString();
+      MessageHeaders headHeaders = batchEnricher.composeHeadHeaders(line, batchHeaders);
+      boolean isRecordHead = (headHeaders != null);
+      appendLine(line, isRecordHead ? headHeaders : batchHeaders, isRecordHead);
+    }
+  }
+
+  private void appendLine(String line, MessageHeaders lineHeaders, boolean isRecordHead) {
+    if (isRecordHead && !lines.isEmpty()) {
+      flush();
+    }
+    if (lines.isEmpty()) {
+      headHeaders = lineHeaders;
+    }
+    lines.add(line);
+    lastAppendTime = System.currentTimeMillis();
+
+    if (lines.size() >= sizeThreshold) {
+      flush();
+    } else if (timeout == null) {
+      scheduleTimeout(recordNumber, lastAppendTime + idleTimeout);
+    }
+  }
+
+  private void scheduleTimeout(long timedRecordNumber, long fireTime) {
+    long delay = Math.max(fireTime - System.currentTimeMillis(), 0L);
+    timeout = timerWheel.schedule(() -> timeoutExecutor.execute(() -> onTimeout(timedRecordNumber)), delay);
+  }
+
+  private void onTimeout(long timedRecordNumber) {
+    try {
+      checkTimeout(timedRecordNumber);
+      sendFlushedRecords();
+    } catch (RuntimeException e) {
+      log.error("Failed to flush record upon idle timeout.", e);
+    }
+  }
+
+  private synchronized void checkTimeout(long timedRecordNumber) {
+    if (timedRecordNumber != recordNumber) {
+      return;         // the record has already been flushed; the next one (if any) has its own timeout task
+    }
+    timeout = null;
+    if (lines.isEmpty()) {
+      return;
+    }
+    long idleDeadline = lastAppendTime + idleTimeout;
+    if (System.currentTimeMillis() < idleDeadline) {
+      scheduleTimeout(timedRecordNumber, idleDeadline);   // the record has grown since the task was scheduled
+      return;
+    }
+    log.trace("Record of {} line(s) is about to be flushed by idle timeout.", lines.size());
+    flush();
+  }
+
+  private void flush() {
+    List<String> recordLines = lines;
+    MessageHeaders recordHeaders = headHeaders;
+    lines = new ArrayList<>();
+    headHeaders = null;
+    recordNumber++;
+    if (timeout != null) {
+      timeout.cancel();
+      timeout = null;
+    }
+
+    flushedRecords.add(GroupRecordComposer.compose(recordLines, recordHeaders));
+  }
+
+  /**
+   * Sends the flushed records to the output channel unless another thread is already doing it. Must be called
+   * without holding the assembler's lock.
+   */
+  private void sendFlushedRecords() {
+    // the queue is rechecked after releasing the flag as a record might have been added right before the releasing
+    while (!flushedRecords.isEmpty() && isSending.compareAndSet(false, true)) {
+      try {
+        Message<?> recordMessage;
+        while ((recordMessage = flushedRecords.poll()) != null) {
+          getOutputChannel().send(recordMessage);
+        }
+      } finally {
+        isSending.set(false);
+      }
+    }
+  }
+}
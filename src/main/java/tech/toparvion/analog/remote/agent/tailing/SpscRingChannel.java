@@ -0,0 +1,143 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.springframework.integration.channel.AbstractPollableChannel;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A pollable channel backed by a bounded single-producer/single-consumer ring buffer. Sending and receiving involve
+ * neither locks nor comparisons, and the messages leave the channel strictly in the order they came in.<p>
+ * Besides the ring, the channel has a single 'pushback' slot which the consumer can use to return a message it has
+ * just taken. The pushed back message is received again before any message from the ring. This lets the aggregator
+ * give the head of the next record back without resending it through the channel (and without reordering the channel
+ * for that purpose).<p>
+ * The channel relies on the fact that at any moment there is at most one sending thread (the thread of the tail
+ * adapter) and at most one receiving thread (the poller of the aggregator). Both sides may be served by different
+ * threads over time as long as their calls don't overlap; e.g. when a tail process is restarted, the reader of the new
+ * process doesn't send anything until the reader of the previous one has finished.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class SpscRingChannel extends AbstractPollableChannel {
+  /**
+   * How long the producer sleeps between checks for free space when the ring is full.
+   */
+  private static final long FULL_RING_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final Message<?>[] ring;
+  private final int mask;
+  /**
+   * Index of the next message to receive; written by the consumer only.
+   */
+  private final AtomicLong head = new AtomicLong(0L);
+  /**
+   * Index of the next message to send; written by the producer only.
+   */
+  private final AtomicLong tail = new AtomicLong(0L);
+
+  @Nullable
+  private volatile Message<?> pushedBackMessage;
+  @Nullable
+  private volatile Thread waitingConsumer;
+
+  /**
+   * @param capacity maximum number of messages the ring can hold; rounded up to a power of 2
+   */
+  SpscRingChannel(int capacity) {
+    Assert.isTrue(capacity > 0, "capacity must be positive");
+    int normalizedCapacity = Math.max(Integer.highestOneBit(capacity - 1) << 1, 1);
+    this.ring = new Message<?>[normalizedCapacity];
+    this.mask = normalizedCapacity - 1;
+  }
+
+  /**
+   * Returns given message to the channel so that it will be the next one to receive. Must be called by the consumer
+   * only and at most once per received message.
+   * @param message the message most recently received from the channel
+   */
+  void pushBack(Message<?> message) {
+    Assert.state(pushedBackMessage == null, "Only one message can be pushed back at a time");
+    pushedBackMessage = message;
+  }
+
+  @Override
+  protected boolean doSend(Message<?> message, long timeout) {
+    long currentTail = tail.get();
+    if (currentTail - head.get() == ring.length) {
+      long deadline = (timeout > 0) ? (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout)) : 0L;
+      while (currentTail - head.get() == ring.length) {
+        if (timeout == 0 || (timeout > 0 && System.nanoTime() >= deadline)) {
+          return false;
+        }
+        LockSupport.parkNanos(this, FULL_RING_PARK_NANOS);
+      }
+    }
+    ring[(int) (currentTail & mask)] = message;
+    // publishes the slot written above; a full fence (not lazySet) is required here for the consumer check below
+    tail.set(currentTail + 1);
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+    return true;
+  }
+
+  @Override
+  @Nullable
+  protected Message<?> doReceive(long timeout) {
+    Message<?> pushedBack = pushedBackMessage;
+    if (pushedBack != null) {
+      pushedBackMessage = null;
+      return pushedBack;
+    }
+    Message<?> message = poll();
+    if (message != null || timeout == 0) {
+      return message;
+    }
+    long deadline = (timeout > 0) ? (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout)) : 0L;
+    waitingConsumer = Thread.currentThread();
+    try {
+      while ((message = poll()) == null) {
+        if (timeout < 0) {
+          LockSupport.park(this);
+        } else {
+          long remainingNanos = deadline - System.nanoTime();
+          if (remainingNanos <= 0) {
+            break;
+          }
+          LockSupport.parkNanos(this, remainingNanos);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+          break;
+        }
+      }
+    } finally {
+      waitingConsumer = null;
+    }
+    return message;
+  }
+
+  @Nullable
+  private Message<?> poll() {
+    long currentHead = head.get();
+    if (currentHead == tail.get()) {
+      return null;
+    }
+    int index = (int) (currentHead & mask);
+    Message<?> message = ring[index];
+    ring[index] = null;                 // lets the message be collected
+    head.lazySet(currentHead + 1);      // frees the slot for the producer
+    return message;
+  }
+
+  @Override
+  public String getComponentType() {
+    return "spsc-ring-channel";
+  }
+}
@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlowBuilder;
 import org.springframework.integration.dsl.IntegrationFlows;
 import org.springframework.integration.dsl.MessageProducerSpec;
 import org.springframework.integration.dsl.StandardIntegrationFlow;
@@ -13,34 +14,38 @@ import org.springframework.integration.dsl.context.IntegrationFlowContext;
 import org.springframework.integration.dsl.context.IntegrationFlowContext.IntegrationFlowRegistration;
 import org.springframework.lang.Nullable;
 import org.springframework.messaging.Message;
-import org.springframework.messaging.MessageChannel;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import tech.toparvion.analog.model.config.adapters.GeneralAdapterParams;
 import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties.Grouping.Engine;
 import tech.toparvion.analog.model.config.entry.LogPath;
+import tech.toparvion.analog.model.remote.LogRecord;
 import tech.toparvion.analog.remote.agent.enrich.CorrelationIdHeaderEnricher;
-import tech.toparvion.analog.remote.agent.enrich.SequenceNumberHeaderEnricher;
+import tech.toparvion.analog.remote.agent.enrich.LineBatchHeaderEnricher;
 import tech.toparvion.analog.remote.agent.origin.adapt.DockerOriginAdapter;
 import tech.toparvion.analog.remote.agent.origin.adapt.FileOriginAdapter;
 import tech.toparvion.analog.remote.agent.origin.adapt.KubernetesOriginAdapter;
 import tech.toparvion.analog.remote.agent.origin.restrict.FileAccessGuard;
 import tech.toparvion.analog.remote.agent.si.ContainerTargetFile;
+import tech.toparvion.analog.remote.agent.si.NativeTailAdapterSpec;
 import tech.toparvion.analog.remote.agent.si.ProcessTailAdapterSpec;
 import tech.toparvion.analog.service.RecordLevelDetector;
+import tech.toparvion.analog.service.RecordLevelDetector.PositionHint;
 import tech.toparvion.analog.util.PathUtils;
+import tech.toparvion.analog.util.timestamp.LogTimestampParser;
 import tech.toparvion.analog.util.timestamp.TimestampExtractor;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
 import java.text.MessageFormat;
-import java.util.Comparator;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import static java.lang.String.format;
 import static org.springframework.integration.IntegrationMessageHeaderAccessor.CORRELATION_ID;
 import static org.springframework.integration.dsl.MessageChannels.publishSubscribe;
-import static org.springframework.integration.dsl.MessageChannels.queue;
 import static org.springframework.util.StringUtils.hasText;
 import static tech.toparvion.analog.remote.RemotingConstants.*;
 import static tech.toparvion.analog.remote.agent.AgentConstants.*;
@@ -54,8 +59,11 @@ import static tech.toparvion.analog.util.PathUtils.CUSTOM_SCHEMA_SEPARATOR;
 @Component
 public class TailingFlowProvider {
   private static final Logger log = LoggerFactory.getLogger(TailingFlowProvider.class);
+  /**
+   * Number of line messages the channel in front of the aggregator can hold before the tailing thread has to wait.
+   */
+  private static final int PRE_AGGREGATOR_CHANNEL_CAPACITY = 4096;
 
-  private final TimestampExtractor timestampExtractor;
   private final RecordLevelDetector recordLevelDetector;
   private final IntegrationFlowContext flowContext;
   private final TrackingProperties trackingProperties;
@@ -64,14 +72,12 @@ public class TailingFlowProvider {
   private final String thisNodeName;
 
   @Autowired
-  public TailingFlowProvider(TimestampExtractor timestampExtractor,
-                             RecordLevelDetector recordLevelDetector,
+  public TailingFlowProvider(RecordLevelDetector recordLevelDetector,
                              IntegrationFlowContext flowContext,
                              TrackingProperties trackingProperties,
                              FileAccessGuard fileAccessGuard,
                              ApplicationContext appContext,
                              @Value("${nodes.this.name}") String thisNodeName) {
-    this.timestampExtractor = timestampExtractor;
     this.recordLevelDetector = recordLevelDetector;
     this.flowContext = flowContext;
     this.trackingProperties = trackingProperties;
@@ -85,40 +91,63 @@ public class TailingFlowProvider {
    * Creates and returns a grouping integration flow for watching given log. No duplicate flow checking is done inside.
    * @param logPath address data of log to tail
    * @param isTailNeeded should 'tail' include last several lines of the log?
+   * @param timestampParser timestamp parser {@linkplain TimestampExtractor#bindTo(String) bound} to the log
    * @return a new tailing flow
    */
-  public IntegrationFlow provideGroupFlow(LogPath logPath, boolean isTailNeeded) {
-    // each group flow must have its own instance of correlationProvider as it is stateful and not thread-safe
-    CorrelationIdHeaderEnricher correlationProvider = new CorrelationIdHeaderEnricher();
-    // each group flow must have its own instance of sequenceProvider as it is stateful and not thread-safe
-    SequenceNumberHeaderEnricher sequenceProvider = new SequenceNumberHeaderEnricher();
+  public IntegrationFlow provideGroupFlow(LogPath logPath, boolean isTailNeeded, LogTimestampParser timestampParser) {
+    String tailFlowOutChannelName = findOrCreateTailFlow(logPath, false, isTailNeeded, timestampParser);
 
-    /* When dealing with log message groups, some messages have to be resent to aggregator. Since the aggregator is
-    capable of processing single message at a moment only, it is prepended with a queue channel that stores the incoming
-    messages (including those to resend). This approach produces quite subtle situation - if the queue
-    happens to be filled with some message(s) before another message arrives there to be resent, the order of
-    messages can be corrupted as the early arrived messages must leave the queue early as well (since the queue is of
-    FIFO discipline by default). To avoid this, the queue is created as priority one. The priority is specified as
-    simple sequence number (much like the one built in FileSplitter) and provided by dedicated header enricher. */
-    //noinspection ConstantConditions     // null value for the header is prevented by message composing logic
-    PriorityBlockingQueue<Message<?>> queue = new PriorityBlockingQueue<>(100,
-        Comparator.comparingLong(message -> message.getHeaders().get(SEQUENCE_NUMBER__HEADER, Long.class)));
-    MessageChannel preAggregatorQueueChannel = queue(queue).get();
+    IntegrationFlowBuilder flowBuilder = IntegrationFlows.from(tailFlowOutChannelName);
+    boolean isAssembling = (trackingProperties.getGrouping().getEngine() == Engine.ASSEMBLER);
+    // each group flow must have its own instance of batch enricher as it is stateful and not thread-safe
+    LineBatchHeaderEnricher batchEnricher = trackingProperties.isBatching()
+        ? new LineBatchHeaderEnricher(timestampParser, recordLevelDetector)
+        : null;
+    if (batchEnricher != null) {
+      if (!isAssembling) {
+        // unlike the assembler, the aggregator can take line messages only, so the batch is split into them with all
+        // the headers set at once; the splitter's own sequence details must not be applied as they would override
+        // the correlationId
+        flowBuilder.split(Message.class, batchEnricher::enrichBatch, splitter -> splitter.applySequence(false));
+      }
+
+    } else {
+      // each group flow must have its own instances of correlationProvider and levelHint as they are stateful and
+      // not thread-safe
+      CorrelationIdHeaderEnricher correlationProvider = new CorrelationIdHeaderEnricher();
+      PositionHint levelHint = new PositionHint();
+      flowBuilder
+          .enrichHeaders(e -> e.headerFunction(LOG_TIMESTAMP_VALUE__HEADER, timestampParser::extractTimestampMillis))
+          .enrichHeaders(e -> e.headerFunction(CORRELATION_ID, correlationProvider::obtainCorrelationId))
+          .enrichHeaders(e -> e.headerFunction(RECORD_LEVEL__HEADER,
+              (Message<String> recordMessage) -> detectRecordLevel(recordMessage, levelHint)));
+    }
 
     int groupSizeThreshold = trackingProperties.getGrouping().getSizeThreshold();
     long groupTimeout = trackingProperties.getGrouping().getTimeout().toMillis();
-    GroupAggregatorConfigurer recordAggregatorConfigurer
-        = new GroupAggregatorConfigurer(preAggregatorQueueChannel, groupSizeThreshold, groupTimeout);
+    if (isAssembling) {
+      // lines (or whole batches of them) are pushed straight into the assembler; the timer wheel fires for group
+      // timeouts only
+      TimerWheel timerWheel = appContext.getBean(TimerWheel.class);     // (!) this will init the wheel firstly
+      Executor timeoutExecutor = appContext.getBean("groupTimeoutExecutor", Executor.class);
+      return flowBuilder
+          .handle(new RecordAssembler(groupSizeThreshold, groupTimeout, timerWheel, timeoutExecutor, batchEnricher))
+          .channel(publishSubscribe())
+          .get();
+    }
 
-    String tailFlowOutChannelName = findOrCreateTailFlow(logPath, false, isTailNeeded);
+    /* When dealing with log message groups, the head of the next record gets into the aggregator along with the
+    previous record and thus has to be returned back to be aggregated once again. Since the aggregator is capable of
+    processing single message at a moment only, it is prepended with a channel storing the incoming messages. The
+    channel is a single-producer/single-consumer ring (there is exactly one tailing thread and one aggregator poller
+    per flow) with a dedicated slot for the returned message so that it is received first and the order of messages is
+    kept by construction. */
+    SpscRingChannel preAggregatorChannel = new SpscRingChannel(PRE_AGGREGATOR_CHANNEL_CAPACITY);
+    GroupAggregatorConfigurer recordAggregatorConfigurer
+        = new GroupAggregatorConfigurer(preAggregatorChannel, groupSizeThreshold, groupTimeout);
 
-    return IntegrationFlows
-        .from(tailFlowOutChannelName)
-        .enrichHeaders(e -> e.headerFunction(LOG_TIMESTAMP_VALUE__HEADER, timestampExtractor::extractTimestamp))
-        .enrichHeaders(e -> e.headerFunction(CORRELATION_ID, correlationProvider::obtainCorrelationId))
-        .enrichHeaders(e -> e.headerFunction(RECORD_LEVEL__HEADER, this::detectRecordLevel))
-        .enrichHeaders(e -> e.headerFunction(SEQUENCE_NUMBER__HEADER, sequenceProvider::assignSequenceNumber))
-        .channel(preAggregatorQueueChannel)
+    return flowBuilder
+        .channel(preAggregatorChannel)
         .aggregate(recordAggregatorConfigurer::configure)
         .channel(publishSubscribe())
         .get();
@@ -132,7 +161,17 @@ public class TailingFlowProvider {
    * @return a new tailing flow
    */
   public IntegrationFlow provideFlatFlow(LogPath logPath, boolean isTailNeeded) {
-    String tailFlowOutChannelName = findOrCreateTailFlow(logPath, true, isTailNeeded);
+    String tailFlowOutChannelName = findOrCreateTailFlow(logPath, true, isTailNeeded, null);
+    // each flat flow must have its own instance of recordComposer as it remembers the level positions of its log
+    FlatRecordComposer recordComposer = new FlatRecordComposer(recordLevelDetector);
+    if (trackingProperties.isBatching()) {
+      // the tail adapter has already packed the lines into a list, so there is nothing to aggregate
+      return IntegrationFlows
+          .from(tailFlowOutChannelName)
+          .<List<String>, LogRecord>transform(recordComposer::compose)
+          .channel(publishSubscribe())
+          .get();
+    }
     int groupSizeThreshold = trackingProperties.getGrouping().getSizeThreshold();
     long groupTimeout = trackingProperties.getGrouping().getTimeout().toMillis();
     return IntegrationFlows
@@ -144,6 +183,7 @@ public class TailingFlowProvider {
             .expireGroupsUponTimeout(true)
             .expireGroupsUponCompletion(true)
             .sendPartialResultOnExpiry(true))
+        .<List<String>, LogRecord>transform(recordComposer::compose)
         .channel(publishSubscribe())
         .get();
   }
@@ -154,11 +194,14 @@ public class TailingFlowProvider {
    * @param logPath data for building the tail process
    * @param isTrackingFlat is corresponding tracking flat (not grouping)
    * @param isTailNeeded whether previous lines of log file are required or not
+   * @param timestampParser parser bound to the log in case of group tracking; used to count the initial tail in
+   *                        records rather than in lines
    * @return bean name of the flow's output channel to subscribe to
    * @implNote the method is declared {@code synchronized} in order to prevent double flow registration in case of
    * simultaneous requests from clients
    */
-  private synchronized String findOrCreateTailFlow(LogPath logPath, boolean isTrackingFlat, boolean isTailNeeded) {
+  private synchronized String findOrCreateTailFlow(LogPath logPath, boolean isTrackingFlat, boolean isTailNeeded,
+                                                   @Nullable LogTimestampParser timestampParser) {
     // tail output channel name doesn't depend on whether the flow already exists or not, so we can define it in advance
     String fullPath = logPath.getFullPath();
     String tailOutputChannelName = TAIL_OUTPUT_CHANNEL_PREFIX + fullPath;
@@ -168,7 +211,7 @@ public class TailingFlowProvider {
       log.debug("No tail flow found for log '{}'. Will create a new one...", fullPath);
       // first declare the tail flow alongside with its output channel (to subscribe to some time later)
       StandardIntegrationFlow tailFlow = IntegrationFlows
-          .from(findAppropriateAdapter(logPath, isTrackingFlat, isTailNeeded))
+          .from(findAppropriateAdapter(logPath, isTrackingFlat, isTailNeeded, timestampParser))
           .channel(publishSubscribe(tailOutputChannelName))
           .get();
       // then register it within the app context
@@ -186,7 +229,8 @@ public class TailingFlowProvider {
     return tailOutputChannelName;
   }
 
-  private MessageProducerSpec<?, ?> findAppropriateAdapter(LogPath logPath, boolean isTrackingFlat, boolean isTailNeeded) {
+  private MessageProducerSpec<?, ?> findAppropriateAdapter(LogPath logPath, boolean isTrackingFlat, boolean isTailNeeded,
+                                                          @Nullable LogTimestampParser timestampParser) {
     switch (logPath.getType()) {
       case DOCKER:
         return newTailAdapter4Docker(logPath, isTrackingFlat, isTailNeeded);
@@ -200,7 +244,7 @@ public class TailingFlowProvider {
                       format("request aimed to node '%s' has come to different node '%s'", logPath.getNode(), thisNodeName));
         // no break needed
       case LOCAL_FILE:
-        return newTailAdapter4File(logPath, isTrackingFlat, isTailNeeded);
+        return newTailAdapter4File(logPath, isTrackingFlat, isTailNeeded, timestampParser);
 
       case COMPOSITE:
         throw new IllegalStateException("Single adapter cannot be applied to composite log: " + logPath);
@@ -210,28 +254,48 @@ public class TailingFlowProvider {
     }
   }
 
-  private MessageProducerSpec<?, ?> newTailAdapter4File(LogPath logPath, boolean isTrackingFlat, boolean isTailNeeded) {
+  private MessageProducerSpec<?, ?> newTailAdapter4File(LogPath logPath, boolean isTrackingFlat, boolean isTailNeeded,
+                                                       @Nullable LogTimestampParser timestampParser) {
     FileOriginAdapter fileOriginAdapter = appContext.getBean(FileOriginAdapter.class); // (!) this will init the adapter firstly!
-    GeneralAdapterParams adapterParams = fileOriginAdapter.adapterParams();
-    String followCommand = adapterParams.getFollowCommand();
     int tailSize = isTailNeeded
             ? isTrackingFlat
               ? trackingProperties.getTailSize().getFlat()
               : trackingProperties.getTailSize().getGroup()
             : 0;
-    String nativeOptions = MessageFormat.format(followCommand, tailSize);
     String adapterId = TAIL_PROCESS_ADAPTER_PREFIX + logPath.getFullPath();
-    String executable = adapterParams.getExecutable();
-    log.debug("Starting file tracking with executable '{}' and options '{}'...", executable, nativeOptions);
     String localPath = PathUtils.extractLocalPath(logPath);
     // the following call will throw AccessControlException in case of violation
     fileAccessGuard.checkAccess(localPath);
+    if (fileOriginAdapter.isNativeMode()) {
+      File file = new File(localPath);
+      NativeTailAdapterSpec adapterSpec = new NativeTailAdapterSpec()
+              .file(file)
+              .id(adapterId)
+              .tailSize(tailSize)
+              .pollingDelay(fileOriginAdapter.getPollingDelay().toMillis())
+              .multiplexer(fileOriginAdapter.getMultiplexer())
+              .batching(trackingProperties.isBatching())
+              .fileDelay(trackingProperties.getRetryDelay().toMillis());
+      // group tracking must start with a complete record, so its tail is counted in records instead of lines
+      if (timestampParser != null) {
+        adapterSpec.headMatcher(new TimestampRecordHeadMatcher(timestampParser, Charset.defaultCharset()));
+      }
+      log.debug("Starting native file tracking with tail size {} ({})...", tailSize,
+          (timestampParser != null) ? "records" : "lines");
+      return adapterSpec;
+    }
+    GeneralAdapterParams adapterParams = fileOriginAdapter.adapterParams();
+    String followCommand = adapterParams.getFollowCommand();
+    String nativeOptions = MessageFormat.format(followCommand, tailSize);
+    String executable = adapterParams.getExecutable();
+    log.debug("Starting file tracking with executable '{}' and options '{}'...", executable, nativeOptions);
     return new ProcessTailAdapterSpec()
             .executable(executable)
             .file(new File(localPath))
             .id(adapterId)
             .nativeOptions(nativeOptions)
             .fileDelay(trackingProperties.getRetryDelay().toMillis())
+            .batching(trackingProperties.isBatching())
             .enableStatusReader(true);
   }
 
@@ -255,6 +319,7 @@ public class TailingFlowProvider {
         .id(adapterId)
         .nativeOptions(nativeOptions)
         .fileDelay(trackingProperties.getRetryDelay().toMillis())
+        .batching(trackingProperties.isBatching())
         .enableStatusReader(true);
   }
 
@@ -313,15 +378,16 @@ public class TailingFlowProvider {
         .id(adapterId)
         .nativeOptions(k8sLogsOptions)
         .fileDelay(trackingProperties.getRetryDelay().toMillis())
+        .batching(trackingProperties.isBatching())
         .enableStatusReader(true);
   }
 
   @Nullable
-  private String detectRecordLevel(Message<String> recordMessage) {
+  private String detectRecordLevel(Message<String> recordMessage, PositionHint levelHint) {
     if (!recordMessage.getHeaders().containsKey(LOG_TIMESTAMP_VALUE__HEADER)) {
       return null;
     }
-    return recordLevelDetector.detectLevel(recordMessage.getPayload())
+    return recordLevelDetector.detectLevel(recordMessage.getPayload(), levelHint)
                               .orElse(PLAIN_RECORD_LEVEL_NAME);
   }
 
@@ -0,0 +1,171 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timer wheel for the tasks that need coarse precision but are scheduled very often, e.g. idle timeouts of
+ * the records being assembled. Scheduling is O(1) and lock-free: the task is put into a concurrent queue and then
+ * distributed to its wheel bucket by the wheel's single thread. The thread ticks with the given precision only while
+ * there are pending tasks; when the wheel is empty, the thread sleeps until the next task gets scheduled so that idle
+ * logs cost no wakeups at all.<p>
+ * Tasks are executed right in the wheel's thread and therefore must be short, e.g. just hand the actual work over to
+ * an executor. A scheduled task can be {@linkplain Timeout#cancel() cancelled}; the cancelled task stays in the wheel
+ * until its bucket is visited next time but isn't executed.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class TimerWheel implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+  private final long tickNanos;
+  private final int mask;
+  private final List<List<Entry>> buckets;
+  private final Queue<Entry> pendingEntries = new ConcurrentLinkedQueue<>();
+  /**
+   * Number of scheduled but not yet executed tasks, including those in the pending queue.
+   */
+  private final AtomicInteger entriesCount = new AtomicInteger(0);
+  private final Thread workerThread;
+
+  private volatile boolean isClosed = false;
+
+  //<editor-fold desc="Wheel state (accessed from the worker thread only)">
+  private long startTime;
+  private long tick;
+  //</editor-fold>
+
+  /**
+   * @param tickMillis precision of the wheel, i.e. the interval between checks for expired tasks
+   * @param wheelSize  number of buckets; rounded up to a power of 2
+   * @param threadName name of the wheel's thread
+   */
+  public TimerWheel(long tickMillis, int wheelSize, String threadName) {
+    Assert.isTrue(tickMillis > 0, "tickMillis must be positive");
+    Assert.isTrue(wheelSize > 0, "wheelSize must be positive");
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    int normalizedSize = Integer.highestOneBit(wheelSize - 1) << 1;
+    normalizedSize = Math.max(normalizedSize, 1);
+    this.mask = normalizedSize - 1;
+    this.buckets = new ArrayList<>(normalizedSize);
+    for (int i = 0; i < normalizedSize; i++) {
+      buckets.add(new ArrayList<>());
+    }
+    workerThread = new Thread(this::work, threadName);
+    workerThread.setDaemon(true);
+    workerThread.start();
+    log.debug("Timer wheel '{}' has started with tick {} ms and {} buckets.", threadName, tickMillis, normalizedSize);
+  }
+
+  /**
+   * Schedules given task for one-time execution after the given delay (rounded up to the wheel's tick).
+   * @param task        the task to execute in the wheel's thread
+   * @param delayMillis the delay of execution
+   * @return a handle to cancel the task with
+   */
+  public Timeout schedule(Runnable task, long delayMillis) {
+    Assert.state(!isClosed, "Timer wheel is closed");
+    Entry entry = new Entry(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+    pendingEntries.add(entry);
+    if (entriesCount.getAndIncrement() == 0) {
+      LockSupport.unpark(workerThread);     // the wheel might be sleeping because of no tasks
+    }
+    return entry;
+  }
+
+  @Override
+  public void close() {
+    isClosed = true;
+    LockSupport.unpark(workerThread);
+  }
+
+  private void work() {
+    while (!isClosed) {
+      if (entriesCount.get() == 0) {
+        LockSupport.park(this);
+        // all the buckets are empty at this moment, so that the wheel can safely be reset to the current time
+        startTime = System.nanoTime();
+        tick = 0;
+        continue;
+      }
+      long tickDeadline = startTime + (tick + 1) * tickNanos;
+      long sleepNanos;
+      while (!isClosed && (sleepNanos = tickDeadline - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(this, sleepNanos);
+      }
+      transferPendingEntries();
+      expireBucket(buckets.get((int) (tick & mask)));
+      tick++;
+    }
+    log.debug("Timer wheel '{}' has stopped.", workerThread.getName());
+  }
+
+  private void transferPendingEntries() {
+    Entry entry;
+    while ((entry = pendingEntries.poll()) != null) {
+      long deadlineTick = Math.max((entry.deadline - startTime + tickNanos - 1) / tickNanos - 1, tick);
+      entry.remainingRounds = (deadlineTick - tick) / buckets.size();
+      buckets.get((int) (deadlineTick & mask)).add(entry);
+    }
+  }
+
+  private void expireBucket(List<Entry> bucket) {
+    for (Iterator<Entry> iterator = bucket.iterator(); iterator.hasNext(); ) {
+      Entry entry = iterator.next();
+      if (entry.isCancelled) {
+        iterator.remove();
+        entriesCount.decrementAndGet();
+        continue;
+      }
+      if (entry.remainingRounds > 0) {
+        entry.remainingRounds--;
+        continue;
+      }
+      iterator.remove();
+      entriesCount.decrementAndGet();
+      try {
+        entry.task.run();
+      } catch (RuntimeException e) {
+        log.error("Timer wheel task has failed.", e);
+      }
+    }
+  }
+
+  /**
+   * A handle of a scheduled task.
+   */
+  public interface Timeout {
+    /**
+     * Prevents the task from being executed. Has no effect if the task is being executed or has been executed already.
+     */
+    void cancel();
+  }
+
+  private static class Entry implements Timeout {
+    private final Runnable task;
+    private final long deadline;
+    private long remainingRounds;
+    private volatile boolean isCancelled = false;
+
+    private Entry(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public void cancel() {
+      isCancelled = true;
+    }
+  }
+}
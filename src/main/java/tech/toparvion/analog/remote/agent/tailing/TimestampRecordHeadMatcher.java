@@ -0,0 +1,40 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import tech.toparvion.analog.remote.agent.si.RecordHeadMatcher;
+import tech.toparvion.analog.util.timestamp.LogTimestampParser;
+import tech.toparvion.analog.util.timestamp.TimestampExtractor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Considers a line to be a record head if it contains a timestamp, i.e. exactly in the same way as the group tracking
+ * flow does it when the line passes through it. To guarantee this, the matcher relies on the same
+ * {@linkplain TimestampExtractor#bindTo(String) bound} parser as the flow, including its anchoring and prefiltering.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class TimestampRecordHeadMatcher implements RecordHeadMatcher {
+
+  private final LogTimestampParser timestampParser;
+  private final Charset charset;
+
+  TimestampRecordHeadMatcher(LogTimestampParser timestampParser, Charset charset) {
+    this.timestampParser = timestampParser;
+    this.charset = charset;
+  }
+
+  @Override
+  public boolean isRecordHead(ByteBuffer buffer, int lineStart, int lineEnd) {
+    if (lineEnd - lineStart >= 4
+        && buffer.get(lineStart) == '\t' && buffer.get(lineStart + 1) == 'a'
+        && buffer.get(lineStart + 2) == 't' && buffer.get(lineStart + 3) == ' ') {
+      return false;           // the same short-hand for java stack traces as in the parser, but without decoding
+    }
+    byte[] bytes = new byte[lineEnd - lineStart];
+    buffer.get(lineStart, bytes);
+    String line = new String(bytes, charset);
+    return timestampParser.extractTimestampMillis(line) != TimestampExtractor.NO_TIMESTAMP;
+  }
+}
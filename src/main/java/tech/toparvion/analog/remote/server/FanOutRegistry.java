@@ -0,0 +1,216 @@
+package tech.toparvion.analog.remote.server;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+import tech.toparvion.analog.model.config.entry.LogPath;
+import tech.toparvion.analog.model.remote.TrackingRequest;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A storage of bindings between the logs requested from agents and the client destinations consuming them. Every log
+ * is requested from its agent only once per tracking mode (flat or group) regardless of how many destinations (plain
+ * log views and composites) include it. Instead of a destination, the agent is given the <em>subscription key</em>
+ * which then comes back along with every record, and the server fans the record out to all the destinations
+ * currently bound to the key. Thus a log's records cross the network to a server exactly once.<p>
+ * As the agent sends the initial tail of the log only once (for the first destination), the registry also keeps the
+ * most recent records of every key, so that a destination joining the key later can be given them instead (see
+ * {@link RecordSender#sendRecentRecords(String, String)}). The records are kept as long as the key is bound to any
+ * destination; their number is limited by the same tail sizes as the agent's initial tails.<p>
+ * In case the agent stops sending a log on its own (e.g. because this server can't keep up with the log's records),
+ * the key is {@linkplain #drop(String) dropped} altogether along with all its destinations.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+@Component
+public class FanOutRegistry {
+  private static final String FLAT_KEY_PREFIX = "flat>";
+  private static final String GROUP_KEY_PREFIX = "group>";
+
+  /**
+   * Key: subscription key, i.e. tracking mode along with the log's full path
+   * Value: client destinations (without websocket topic prefix) consuming the log in that mode along with the recent
+   * records of the log
+   */
+  private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+  private final int flatTailSize;
+  private final int groupTailSize;
+
+  @Autowired
+  public FanOutRegistry(TrackingProperties trackingProperties) {
+    this(trackingProperties.getTailSize().getFlat(), trackingProperties.getTailSize().getGroup());
+  }
+
+  /**
+   * @param flatTailSize  maximum number of lines kept for destinations joining flat logs
+   * @param groupTailSize maximum number of records kept for destinations joining group logs
+   */
+  FanOutRegistry(int flatTailSize, int groupTailSize) {
+    this.flatTailSize = flatTailSize;
+    this.groupTailSize = groupTailSize;
+  }
+
+  public static String composeSubscriptionKey(LogPath logPath, boolean isFlat) {
+    return (isFlat ? FLAT_KEY_PREFIX : GROUP_KEY_PREFIX) + logPath.getFullPath();
+  }
+
+  /**
+   * @param request     the request the log is (to be) requested from its agent with; its client destination is the
+   *                    subscription key. All the destinations of a key must specify the same timestamp format as the
+   *                    log is grouped once for all of them. The {@linkplain TrackingRequest#isTailNeeded() tail flag}
+   *                    tells whether the destination must be given the recent records in case the key is bound to
+   *                    other destinations already; such a destination doesn't receive new records until it is given
+   *                    the recent ones with {@link RecordSender#sendRecentRecords(String, String)}
+   * @return {@code true} if the destination is the first one for the key, i.e. if the log must be requested from its
+   * agent
+   * @throws IllegalStateException if the key is already bound with another timestamp format
+   */
+  public boolean bind(TrackingRequest request, String destination) throws IllegalStateException {
+    String subscriptionKey = requireNonNull(request.getClientDestination());
+    String timestampFormat = request.getTimestampFormat();
+    boolean isTailNeeded = request.isTailNeeded();
+    boolean[] isFirst = {false};
+    // the binding is done within compute() to prevent the subscription from being removed by concurrent unbinding
+    subscriptions.compute(subscriptionKey, (key, subscription) -> {
+      if (subscription == null) {
+        int tailSize = key.startsWith(FLAT_KEY_PREFIX)
+            ? flatTailSize
+            : groupTailSize;
+        subscription = new Subscription(request.getLogPath(), timestampFormat, tailSize);
+        isFirst[0] = true;
+      }
+      synchronized (subscription) {
+        if (!Objects.equals(subscription.timestampFormat, timestampFormat)) {
+          throw new IllegalStateException(format("Log '%s' is already being tracked with timestamp format '%s' and " +
+              "thus can't be tracked with format '%s' at the same time. Please align the formats of the log in all " +
+              "composites including it.", subscriptionKey, subscription.timestampFormat, timestampFormat));
+        }
+        subscription.destinations.add(destination);
+        if (!isFirst[0] && isTailNeeded) {
+          subscription.pendingDestinations.add(destination);
+        }
+      }
+      return subscription;
+    });
+    return isFirst[0];
+  }
+
+  /**
+   * @return {@code true} if the destination was the last one for the key, i.e. if the log is not needed from its
+   * agent anymore
+   */
+  public boolean unbind(String subscriptionKey, String destination) {
+    boolean[] isLast = {false};
+    subscriptions.computeIfPresent(subscriptionKey, (key, subscription) -> {
+      synchronized (subscription) {
+        subscription.pendingDestinations.remove(destination);
+        if (!subscription.destinations.remove(destination) || !subscription.destinations.isEmpty()) {
+          return subscription;
+        }
+      }
+      isLast[0] = true;
+      return null;
+    });
+    return isLast[0];
+  }
+
+  /**
+   * Removes the key along with all its destinations regardless of their number. The subsequent binding of the key is
+   * considered the first one again.
+   * @return the removed subscription or {@code null} if the key has not been bound to any destination
+   */
+  @Nullable
+  public Subscription drop(String subscriptionKey) {
+    return subscriptions.remove(subscriptionKey);
+  }
+
+  /**
+   * @return destinations bound to the key; may be empty in case of records that have arrived after the last
+   * destination's unbinding
+   */
+  public Set<String> findDestinations(String subscriptionKey) {
+    Subscription subscription = subscriptions.get(subscriptionKey);
+    return (subscription != null)
+        ? subscription.destinations
+        : Collections.emptySet();
+  }
+
+  /**
+   * @return the key's subscription or {@code null} if the key is not bound to any destination
+   */
+  @Nullable
+  Subscription findSubscription(String subscriptionKey) {
+    return subscriptions.get(subscriptionKey);
+  }
+
+  /**
+   * Destinations and recent records of a subscription key. Must be accessed while holding its monitor so that every
+   * destination receives the records in the same order.
+   */
+  public static final class Subscription {
+    private final LogPath logPath;
+    @Nullable
+    private final String timestampFormat;
+    private final int tailSize;
+    private final Set<String> destinations = new CopyOnWriteArraySet<>();
+    /**
+     * Destinations bound to the key after the first one and still waiting for the recent records.
+     */
+    private final Set<String> pendingDestinations = new HashSet<>();
+    private final Deque<PreparedRecord> recentRecords = new ArrayDeque<>();
+    /**
+     * Number of lines in case of flat key, number of records otherwise.
+     */
+    private int recentSize = 0;
+
+    Subscription(LogPath logPath, @Nullable String timestampFormat, int tailSize) {
+      this.logPath = logPath;
+      this.timestampFormat = timestampFormat;
+      this.tailSize = tailSize;
+    }
+
+    void remember(PreparedRecord record) {
+      recentRecords.addLast(record);
+      recentSize += record.getSize();
+      while (recentSize > tailSize && !recentRecords.isEmpty()) {
+        recentSize -= recentRecords.removeFirst().getSize();
+      }
+    }
+
+    Collection<PreparedRecord> getRecentRecords() {
+      return recentRecords;
+    }
+
+    public LogPath getLogPath() {
+      return logPath;
+    }
+
+    @Nullable
+    public String getTimestampFormat() {
+      return timestampFormat;
+    }
+
+    public Set<String> getDestinations() {
+      return destinations;
+    }
+
+    boolean isPending(String destination) {
+      return pendingDestinations.contains(destination);
+    }
+
+    /**
+     * @return {@code true} if the destination was waiting for the recent records
+     */
+    boolean markSent(String destination) {
+      return pendingDestinations.remove(destination);
+    }
+  }
+}
@@ -12,12 +12,17 @@ import tech.toparvion.analog.model.LogEventType;
 import tech.toparvion.analog.model.Metadata;
 import tech.toparvion.analog.model.ServerFailure;
 import tech.toparvion.analog.model.remote.AccessViolationTailingEvent;
+import tech.toparvion.analog.model.remote.SendingOverflowTailingEvent;
+import tech.toparvion.analog.model.remote.TrackingRequest;
+import tech.toparvion.analog.remote.server.FanOutRegistry.Subscription;
 import tech.toparvion.analog.service.origin.LogEventTypeDetector;
 import tech.toparvion.analog.util.AnaLogUtils;
 
 import static java.time.ZonedDateTime.now;
 import static java.util.Collections.singletonMap;
+import static java.util.Objects.requireNonNull;
 import static tech.toparvion.analog.remote.RemotingConstants.*;
+import static tech.toparvion.analog.util.AnaLogUtils.doSafely;
 
 /**
  * A service for sending tailing metadata to clients through websocket. With its help clients get notified about log
@@ -32,17 +37,64 @@ public class MetaDataSender {
   
   private final SimpMessagingTemplate messagingTemplate;
   private final LogEventTypeDetector dispatcher; 
+  private final FanOutRegistry fanOutRegistry;
+  private final RemoteGateway remoteGateway;
 
   @Autowired
   public MetaDataSender(SimpMessagingTemplate messagingTemplate,
-                        LogEventTypeDetector dispatcher) {
+                        LogEventTypeDetector dispatcher,
+                        FanOutRegistry fanOutRegistry,
+                        RemoteGateway remoteGateway) {
     this.messagingTemplate = messagingTemplate;
     this.dispatcher = dispatcher;
+    this.fanOutRegistry = fanOutRegistry;
+    this.remoteGateway = remoteGateway;
   }
 
   void sendMetaData(Message<?> metaMessage) {
+    // the metadata concerns all the destinations consuming the log (see FanOutRegistry)
+    String subscriptionKey = requireNonNull(metaMessage.getHeaders().get(CLIENT_DESTINATION__HEADER, String.class));
+    if (metaMessage.getPayload() instanceof SendingOverflowTailingEvent) {
+      stopOverflowedTracking(subscriptionKey, metaMessage);
+      return;
+    }
+    for (String destination : fanOutRegistry.findDestinations(subscriptionKey)) {
+      sendMetaDataTo(destination, metaMessage);
+    }
+  }
+
+  /**
+   * Handles the agent's notice of that it has stopped sending the log to this server because the server couldn't
+   * keep up with it. The log's subscription is dropped and the agent is requested to switch the tracking off as usual
+   * so that the log can be requested anew by any subsequent subscription. The clients are told to reopen the log.
+   */
+  private void stopOverflowedTracking(String subscriptionKey, Message<?> noticeMessage) {
+    Subscription subscription = fanOutRegistry.drop(subscriptionKey);
+    if (subscription == null) {
+      log.debug("Sending overflow notice for log '{}' is ignored as the log has no subscription anymore.",
+          subscriptionKey);
+      return;
+    }
+    TrackingRequest request = new TrackingRequest(subscription.getLogPath(), subscription.getTimestampFormat(),
+        subscriptionKey, false);
+    log.warn("Agent has stopped sending log '{}' to this server as the server couldn't keep up with it. Switching " +
+        "the tracking off for destinations {}: {}", subscriptionKey, subscription.getDestinations(), request);
+    doSafely(getClass(), () -> remoteGateway.switchRegistration(request, false));
+
+    SendingOverflowTailingEvent event = (SendingOverflowTailingEvent) noticeMessage.getPayload();
+    String sourceNode = noticeMessage.getHeaders().get(SOURCE_NODE__HEADER, String.class);
+    String serverMessage = String.format("Tracking of log '%s' on node '%s' has been stopped because %s. Please " +
+        "reopen the log to resume the tracking.", event.getFile().getAbsolutePath(), sourceNode,
+        AnaLogUtils.extractMessage(event.toString()));
+    ServerFailure failure = new ServerFailure(serverMessage, now());
+    for (String destination : subscription.getDestinations()) {
+      messagingTemplate.convertAndSend(WEBSOCKET_TOPIC_PREFIX + destination, failure,
+          singletonMap(MESSAGE_TYPE_HEADER, MessageType.FAILURE));
+    }
+  }
+
+  private void sendMetaDataTo(String destination, Message<?> metaMessage) {
     // extract header values in order to include them into metadata being sent
-    String destination = metaMessage.getHeaders().get(CLIENT_DESTINATION__HEADER, String.class);
     String sourceNode = metaMessage.getHeaders().get(SOURCE_NODE__HEADER, String.class);
 
     // extract payload - the tailing event itself
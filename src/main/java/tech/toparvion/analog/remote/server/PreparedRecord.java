@@ -0,0 +1,58 @@
+package tech.toparvion.analog.remote.server;
+
+import tech.toparvion.analog.model.api.StyledLine;
+
+import java.util.List;
+
+/**
+ * A record (or a bunch of flat lines) prepared for displaying but not yet bound to any particular destination. It is
+ * the part of the record shared by all the destinations it is fanned out to.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+final class PreparedRecord {
+  private final List<StyledLine> styledLines;
+  private final boolean isFlat;
+  private final String sourceNode;
+  private final String sourcePath;
+  private final long timestamp;
+
+  PreparedRecord(List<StyledLine> styledLines, boolean isFlat, String sourceNode, String sourcePath, long timestamp) {
+    this.styledLines = styledLines;
+    this.isFlat = isFlat;
+    this.sourceNode = sourceNode;
+    this.sourcePath = sourcePath;
+    this.timestamp = timestamp;
+  }
+
+  List<StyledLine> getStyledLines() {
+    return styledLines;
+  }
+
+  boolean isFlat() {
+    return isFlat;
+  }
+
+  String getSourceNode() {
+    return sourceNode;
+  }
+
+  String getSourcePath() {
+    return sourcePath;
+  }
+
+  long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return the size of the record in the units of the corresponding tail size, i.e. number of lines in case of flat
+   * record and 1 otherwise
+   */
+  int getSize() {
+    return isFlat
+        ? styledLines.size()
+        : 1;
+  }
+}
@@ -10,7 +10,11 @@ import org.springframework.util.Assert;
 import tech.toparvion.analog.model.api.CompositeLinesPart;
 import tech.toparvion.analog.model.api.LinesPart;
 import tech.toparvion.analog.model.api.StyledLine;
+import tech.toparvion.analog.model.remote.LogRecord;
+import tech.toparvion.analog.remote.server.FanOutRegistry.Subscription;
 import tech.toparvion.analog.service.RecordLevelDetector;
+import tech.toparvion.analog.service.RecordLevelDetector.PositionHint;
+import tech.toparvion.analog.service.XmlFormattingService;
 import tech.toparvion.analog.util.AnaLogUtils;
 
 import java.io.File;
@@ -36,36 +40,65 @@ import static tech.toparvion.analog.remote.RemotingConstants.*;
 @Service
 public class RecordSender {
   private static final Logger log = LoggerFactory.getLogger(RecordSender.class);
+  private static final String XML_STYLE = "XML";
 
   private final RecordLevelDetector recordLevelDetector; 
   private final SimpMessagingTemplate messagingTemplate;
   private final ColorPicker colorPicker;
+  private final FanOutRegistry fanOutRegistry;
+  /**
+   * Whether XML fragments are sent as is to be pretty printed on demand (see {@link XmlFormattingService}).
+   */
+  private final boolean isXmlFormattingLazy;
 
-  @Autowired
   public RecordSender(RecordLevelDetector recordLevelDetector, 
                       SimpMessagingTemplate messagingTemplate, 
                       ColorPicker colorPicker) {
+    this(recordLevelDetector, messagingTemplate, colorPicker, new FanOutRegistry(0, 0), false);
+  }
+
+  @Autowired
+  public RecordSender(RecordLevelDetector recordLevelDetector,
+                      SimpMessagingTemplate messagingTemplate,
+                      ColorPicker colorPicker,
+                      FanOutRegistry fanOutRegistry,
+                      XmlFormattingService xmlFormattingService) {
+    this(recordLevelDetector, messagingTemplate, colorPicker, fanOutRegistry, xmlFormattingService.isLazy());
+  }
+
+  RecordSender(RecordLevelDetector recordLevelDetector,
+               SimpMessagingTemplate messagingTemplate,
+               ColorPicker colorPicker,
+               FanOutRegistry fanOutRegistry,
+               boolean isXmlFormattingLazy) {
     this.recordLevelDetector = recordLevelDetector;
     this.messagingTemplate = messagingTemplate;
     this.colorPicker = colorPicker;
+    this.fanOutRegistry = fanOutRegistry;
+    this.isXmlFormattingLazy = isXmlFormattingLazy;
   }
 
+  /**
+   * Prepares the record for displaying once and then sends it to all the destinations bound to the record's
+   * subscription key (see {@link FanOutRegistry}).
+   */
   void sendRecord(Message<?> recordMessage) {
-    String destination = recordMessage.getHeaders().get(CLIENT_DESTINATION__HEADER, String.class);
+    String subscriptionKey = recordMessage.getHeaders().get(CLIENT_DESTINATION__HEADER, String.class);
+    Subscription subscription = fanOutRegistry.findSubscription(requireNonNull(subscriptionKey));
+    if (subscription == null) {
+      log.debug("No destinations bound to subscription key '{}'; the record is skipped.", subscriptionKey);
+      return;
+    }
     String sourceNode = recordMessage.getHeaders().get(SOURCE_NODE__HEADER, String.class);
     String sourcePath = requireNonNull(recordMessage.getHeaders().get(ORIGINAL_FILE, File.class)).getAbsolutePath();
-    String level = recordMessage.getHeaders().get(RECORD_LEVEL__HEADER, String.class);
-    LocalDateTime timestamp = recordMessage.getHeaders().get(LOG_TIMESTAMP_VALUE__HEADER, LocalDateTime.class);
-
-    Object payload = recordMessage.getPayload();
-    Assert.isInstanceOf(Collection.class, payload );
-    @SuppressWarnings("unchecked")
-    List<String> payloadAsList = new ArrayList<>((Collection<String>) payload);
+    LogRecord record = extractRecord(recordMessage);
+    // the lines may be modified in place as the record is deserialized exclusively for this message
+    List<String> payloadAsList = record.getLines();
     // much like with log config entry, the absence of timestamp means that the payload is a flat list of records
-    boolean isFlatMessage = (timestamp == null);
+    boolean isFlatMessage = record.isFlat();
     List<StyledLine> styledLines = isFlatMessage
-        ? prepareFlatMessage(payloadAsList)
-        : prepareGroupMessage(payloadAsList, level);
+        ? prepareFlatMessage(record)
+        : prepareGroupMessage(record);
 
     if (log.isTraceEnabled()) {
       log.trace("Fragment being sent:\n{}", styledLines.stream()
@@ -73,68 +106,176 @@ public class RecordSender {
           .collect(joining("\n")));
     }
 
+    PreparedRecord preparedRecord = new PreparedRecord(styledLines, isFlatMessage, sourceNode, sourcePath,
+        record.getTimestamp());
+    synchronized (subscription) {
+      subscription.remember(preparedRecord);
+      for (String destination : subscription.getDestinations()) {
+        if (subscription.isPending(destination)) {
+          // the destination hasn't been given the recent records yet, so it's time to do it (this record included)
+          sendRecentRecords(subscription, destination);
+        } else {
+          sendRecord(preparedRecord, destination);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends the recent records of the log to the destination that has joined the subscription key after the other
+   * destinations, i.e. when the agent's initial tail has already been sent. Does nothing if the destination has not
+   * requested the tail or has been given the records already.
+   */
+  public void sendRecentRecords(String subscriptionKey, String destination) {
+    Subscription subscription = fanOutRegistry.findSubscription(subscriptionKey);
+    if (subscription == null) {
+      log.debug("No destinations bound to subscription key '{}'; nothing to send to '{}'.", subscriptionKey,
+          destination);
+      return;
+    }
+    synchronized (subscription) {
+      if (subscription.isPending(destination)) {
+        sendRecentRecords(subscription, destination);
+      }
+    }
+  }
+
+  private void sendRecentRecords(Subscription subscription, String destination) {
+    log.debug("Sending {} recent record(s) to destination '{}'.", subscription.getRecentRecords().size(),
+        destination);
+    for (PreparedRecord recentRecord : subscription.getRecentRecords()) {
+      sendRecord(recentRecord, destination);
+    }
+    subscription.markSent(destination);
+  }
+
+  private void sendRecord(PreparedRecord preparedRecord, String destination) {
     LinesPart linesPart;
-    if (isFlatMessage) {
-      linesPart = new LinesPart(styledLines);
+    if (preparedRecord.isFlat()) {
+      linesPart = new LinesPart(preparedRecord.getStyledLines());
     } else {
-      long timestampMillis = timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+      String sourcePath = preparedRecord.getSourcePath();
+      String sourceNode = preparedRecord.getSourceNode();
       String highlightColor = colorPicker.pickColor(sourcePath, sourceNode, destination);
-      linesPart = new CompositeLinesPart(styledLines, sourceNode, sourcePath, timestampMillis, highlightColor);
+      linesPart = new CompositeLinesPart(preparedRecord.getStyledLines(), sourceNode, sourcePath,
+          preparedRecord.getTimestamp(), highlightColor);
     }
     messagingTemplate.convertAndSend(WEBSOCKET_TOPIC_PREFIX + destination,
         linesPart, singletonMap(MESSAGE_TYPE_HEADER, MessageType.RECORD));
   }
 
+  /**
+   * Agents of version 0.14 and later send records wrapped into {@link LogRecord} envelope while the older ones send
+   * bare lists of lines along with the timestamp and level in message headers. The latter are converted into the
+   * envelope as well.
+   */
+  private LogRecord extractRecord(Message<?> recordMessage) {
+    Object payload = recordMessage.getPayload();
+    if (payload instanceof LogRecord) {
+      return (LogRecord) payload;
+    }
+    Assert.isInstanceOf(Collection.class, payload);
+    @SuppressWarnings("unchecked")
+    List<String> payloadAsList = new ArrayList<>((Collection<String>) payload);
+    LocalDateTime timestamp = recordMessage.getHeaders().get(LOG_TIMESTAMP_VALUE__HEADER, LocalDateTime.class);
+    if (timestamp == null) {
+      return LogRecord.flat(payloadAsList);
+    }
+    String level = recordMessage.getHeaders().get(RECORD_LEVEL__HEADER, String.class);
+    return LogRecord.grouped(payloadAsList, timestamp.toInstant(ZoneOffset.UTC).toEpochMilli(), level);
+  }
+
   /*private*/ List<StyledLine> prepareGroupMessage(List<String> payloadAsList, String firstLineLevel) {
-    List<StyledLine> parsedLines = new ArrayList<>();
+    return prepareGroupMessage(LogRecord.grouped(payloadAsList, 0L, firstLineLevel));
+  }
+
+  /**
+   * The lines {@linkplain LogRecord#getClassifiedLinesCount() classified} by the agent contain no XML and therefore
+   * are just escaped; the rest of the lines are examined for XML here.
+   */
+  /*private*/ List<StyledLine> prepareGroupMessage(LogRecord record) {
+    List<String> payloadAsList = record.getLines();
+    String firstLineLevel = record.getLevel();
+    List<StyledLine> parsedLines = new ArrayList<>(payloadAsList.size());
     if (payloadAsList.isEmpty()) {
       return parsedLines;
     }
+    int classifiedLinesCount = record.getClassifiedLinesCount();
     // самую первую строку записи обрабатываем отдельно, так как только она содержит метку уровня
-    String firstLine = AnaLogUtils.distinguishXml4Group(payloadAsList, 0);
+    String firstLine = (classifiedLinesCount > 0)
+        ? payloadAsList.get(0)
+        : AnaLogUtils.distinguishXml4Group(payloadAsList, 0, !isXmlFormattingLazy);
     if (isXmlPrefixed(firstLine)) {
       throw new IllegalStateException(format("The very first line of the record is distinguished as XML but it " +
           "must contain timestamp only: '%s'", firstLine));
     }
     parsedLines.add(new StyledLine(AnaLogUtils.escapeSpecialCharacters(firstLine), firstLineLevel));
 
+    for (int i = 1; i < classifiedLinesCount; i++) {
+      parsedLines.add(new StyledLine(AnaLogUtils.escapeSpecialCharacters(payloadAsList.get(i)),
+          PLAIN_RECORD_LEVEL_NAME));
+    }
     // остальные проверяем в цикле и проставляем им либо XML, либо PLAIN, так как других уровней быть не должно
-    for (int i = 1; i < payloadAsList.size(); i++) {
+    for (int i = Math.max(classifiedLinesCount, 1); i < payloadAsList.size(); i++) {
       // check the line for the presence of XML
-      String curLine = AnaLogUtils.distinguishXml4Group(payloadAsList, i);
+      String curLine = AnaLogUtils.distinguishXml4Group(payloadAsList, i, !isXmlFormattingLazy);
       // вставляем текст строки
       String text = AnaLogUtils.escapeSpecialCharacters(curLine);
       // определяем и вставляем уровень важности сообщения
       String style;
       if (isXmlPrefixed(text)) {
-        style = "XML";
+        style = XML_STYLE;
         text = stripXmlPrefix(text);
       } else {
         style = PLAIN_RECORD_LEVEL_NAME;
       }
       // завершаем оформление текущей строки
-      parsedLines.add(new StyledLine(text, style));
+      parsedLines.add(composeStyledLine(text, style));
     }
     return parsedLines;
   }
 
   /*private*/ List<StyledLine> prepareFlatMessage(List<String> payloadAsList) {
-    List<StyledLine> parsedLines = new ArrayList<>();
-    for (int i = 0; i < payloadAsList.size(); i++) {
+    return prepareFlatMessage(LogRecord.flat(payloadAsList));
+  }
+
+  /**
+   * The lines {@linkplain LogRecord#getClassifiedLinesCount() classified} by the agent are styled with the levels
+   * detected there; the rest of the lines are examined for XML and levels here.
+   */
+  /*private*/ List<StyledLine> prepareFlatMessage(LogRecord record) {
+    List<String> payloadAsList = record.getLines();
+    List<StyledLine> parsedLines = new ArrayList<>(payloadAsList.size());
+    int classifiedLinesCount = record.getClassifiedLinesCount();
+    for (int i = 0; i < classifiedLinesCount; i++) {
+      String lineLevel = record.getLineLevel(i);
+      parsedLines.add(new StyledLine(AnaLogUtils.escapeSpecialCharacters(payloadAsList.get(i)),
+          (lineLevel != null) ? lineLevel : PLAIN_RECORD_LEVEL_NAME));
+    }
+    // all the lines come from the same log and thus are likely to have their levels at the same position
+    PositionHint levelHint = new PositionHint();
+    for (int i = classifiedLinesCount; i < payloadAsList.size(); i++) {
       // check the line for the presence of XML
-      String curLine = AnaLogUtils.distinguishXml(payloadAsList, i);
+      String curLine = AnaLogUtils.distinguishXml(payloadAsList, i, !isXmlFormattingLazy);
 
       // insert the text of the line 
       String text = AnaLogUtils.escapeSpecialCharacters(curLine);
       // detect and set the importance level of the line (this also may appear an XML line) 
-      String style = recordLevelDetector.detectLevel(curLine)
+      String style = recordLevelDetector.detectLevel(curLine, levelHint)
                                         .orElseGet(() -> AnaLogUtils.checkIfXml(curLine));
       // finish current line construction
-      parsedLines.add(new StyledLine(text, style));
+      parsedLines.add(composeStyledLine(text, style));
     }
     return parsedLines;
   }
 
+  /**
+   * In the lazy XML formatting mode, XML lines are marked as raw for the client to request their formatting on demand.
+   */
+  private StyledLine composeStyledLine(String text, String style) {
+    return new StyledLine(text, style, isXmlFormattingLazy && XML_STYLE.equals(style));
+  }
+
   private boolean isXmlPrefixed(String text) {
     return text.startsWith("__XML__");
   }
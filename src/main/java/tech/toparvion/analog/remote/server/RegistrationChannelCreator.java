@@ -71,11 +71,15 @@ public class RegistrationChannelCreator implements BeanFactoryAware, Initializin
         node.getAgentPort(),
         SERVICE_NAME_PREFIX,
         AGENT_REGISTRATION_RMI_IN__CHANNEL);
+    Node thisNode = nodesProperties.getThis();
 
     StandardIntegrationFlow serverRmiRegisteringFlow =
         IntegrationFlows
             .from(direct(SERVER_REGISTRATION_RMI_OUT__CHANNEL_PREFIX + node.getName()))
-            .enrichHeaders(e -> e.header(REPLY_ADDRESS__HEADER, nodesProperties.getThis().getAgentInetSocketAddress()))
+            .enrichHeaders(e -> e.header(REPLY_ADDRESS__HEADER, thisNode.getAgentInetSocketAddress()))
+            // an unset port (or its absence in requests of older servers) makes the agent send records via RMI
+            .enrichHeaders(e -> e.header(STREAM_PORT__HEADER, thisNode.getStreamPort()))
+            .enrichHeaders(e -> e.header(STREAM_COMPRESSION__HEADER, node.isStreamCompression()))
             .handle(new RmiOutboundGateway(rmiUrl))
             .get();
 
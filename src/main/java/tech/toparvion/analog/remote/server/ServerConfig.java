@@ -9,7 +9,11 @@ import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlows;
 import org.springframework.integration.file.tail.FileTailingMessageProducerSupport.FileTailingEvent;
 import org.springframework.integration.rmi.RmiInboundGateway;
+import org.springframework.messaging.MessageChannel;
+import tech.toparvion.analog.model.config.nodes.Node;
 import tech.toparvion.analog.model.config.nodes.NodesProperties;
+import tech.toparvion.analog.model.remote.LogRecord;
+import tech.toparvion.analog.remote.stream.RecordStreamServer;
 
 import java.util.Collection;
 
@@ -42,10 +46,16 @@ public class ServerConfig {
         .get();
   }
 
+  /**
+   * The channel that all the payloads from agents come to, regardless of the transport they've been sent via.
+   */
+  @Bean(name = SERVER_PAYLOAD_IN__CHANNEL)
+  public MessageChannel serverPayloadInChannel() {
+    return new DirectChannel();
+  }
+
   @Bean
-  public IntegrationFlow serverRmiPayloadFlow(NodesProperties nodesProperties,
-                                              RecordSender recordSender,
-                                              MetaDataSender metaDataSender) {
+  public IntegrationFlow serverRmiPayloadFlow(NodesProperties nodesProperties) {
     DirectChannel payloadRmiInChannel = direct(SERVER_RMI_PAYLOAD_IN__CHANNEL).get();
     int myPort = nodesProperties.getThis().getAgentPort();
 
@@ -57,9 +67,33 @@ public class ServerConfig {
 
     return IntegrationFlows
         .from(inboundRmiGateway)
+        .channel(SERVER_PAYLOAD_IN__CHANNEL)
+        .get();
+  }
+
+  /**
+   * The server of persistent record streams from agents. Listens for connections only if the stream port of this
+   * node is set; otherwise agents keep sending records via RMI.
+   */
+  @Bean(destroyMethod = "close")
+  public RecordStreamServer recordStreamServer(NodesProperties nodesProperties) {
+    RecordStreamServer recordStreamServer = new RecordStreamServer(serverPayloadInChannel());
+    int streamPort = nodesProperties.getThis().getStreamPort();
+    if (streamPort != Node.NOT_SET) {
+      recordStreamServer.start(streamPort);
+    }
+    return recordStreamServer;
+  }
+
+  @Bean
+  public IntegrationFlow serverPayloadFlow(RecordSender recordSender,
+                                           MetaDataSender metaDataSender) {
+    return IntegrationFlows
+        .from(SERVER_PAYLOAD_IN__CHANNEL)
         .<Object, Class<?>>   // 'Object' stands for message payload; 'Class<?>' stands for payload type
             route(this::detectPayloadClass, routerSpec -> routerSpec
-                .subFlowMapping(Collection.class, flow -> flow.handle(recordSender::sendRecord))
+                .subFlowMapping(LogRecord.class, flow -> flow.handle(recordSender::sendRecord))
+                .subFlowMapping(Collection.class, flow -> flow.handle(recordSender::sendRecord))  // agents before v0.14
                 .subFlowMapping(FileTailingEvent.class, flow -> flow.handle(metaDataSender::sendMetaData)))
         .get();
   }
@@ -73,7 +107,7 @@ public class ServerConfig {
   private Class<?> detectPayloadClass(Object messagePayload) {
     Class<?> messagePayloadClass = messagePayload.getClass();
     
-    if (Collection.class.isAssignableFrom(messagePayloadClass)) {           // for log records
+    if (Collection.class.isAssignableFrom(messagePayloadClass)) {           // for log records of older agents
       return Collection.class;
       
     } if (FileTailingEvent.class.isAssignableFrom(messagePayloadClass)) {   // for tracking metadata
@@ -0,0 +1,379 @@
+package tech.toparvion.analog.remote.stream;
+
+import org.springframework.integration.file.tail.FileTailingMessageProducerSupport.FileTailingEvent;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.GenericMessage;
+import tech.toparvion.analog.model.remote.AccessViolationTailingEvent;
+import tech.toparvion.analog.model.remote.LogRecord;
+import tech.toparvion.analog.model.remote.SendingOverflowTailingEvent;
+import tech.toparvion.analog.remote.agent.si.ContainerTargetFile;
+import tech.toparvion.analog.util.AnaLogUtils;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.*;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.integration.file.FileHeaders.ORIGINAL_FILE;
+import static tech.toparvion.analog.remote.RemotingConstants.CLIENT_DESTINATION__HEADER;
+import static tech.toparvion.analog.remote.RemotingConstants.SOURCE_NODE__HEADER;
+
+/**
+ * Compact binary codec of the messages travelling through the record stream. A message with {@link LogRecord}
+ * payload is encoded as:
+ * <pre>
+ * RECORD flags destination node file [timestamp-delta] [level] classified-count [line-levels...] lines-count lines...
+ * </pre>
+ * where all numbers are unsigned varints (the timestamp delta is zigzag-encoded), lines are UTF-8 bytes prepended
+ * with their length and the repeating strings (destinations, nodes, paths, levels) are
+ * {@linkplain Encoder#writeString(String) interned}: each of them is sent once per connection and then referenced by
+ * its index. The timestamps are encoded as deltas to the previous record of the same log. Only those headers are kept
+ * that the server actually reads.<p>
+ * A message with a tailing event payload is encoded as:
+ * <pre>
+ * EVENT kind flags destination node file message
+ * </pre>
+ * where the kind tells the {@link FileTailingEvent} class apart from its {@link AccessViolationTailingEvent} and
+ * {@link SendingOverflowTailingEvent} subclasses. No other payloads can be encoded, so that nothing but these few
+ * types can ever be instantiated by the decoder.<p>
+ * Both encoder and decoder are stateful and thus must be used for a single connection (and a single thread) only; if
+ * a frame cannot be decoded, the connection must be dropped as the state is not in sync with the peer anymore.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+final class RecordCodec {
+  private static final int RECORD = 1;
+  private static final int EVENT = 2;
+
+  private static final int FLAT = 0x01;
+  private static final int HAS_LEVEL = 0x02;
+  private static final int CONTAINER_FILE = 0x04;
+
+  /**
+   * Kinds of tailing events.
+   */
+  private static final int TAILING_EVENT = 0;
+  private static final int ACCESS_VIOLATION_EVENT = 1;
+  private static final int SENDING_OVERFLOW_EVENT = 2;
+
+  /**
+   * String reference markers; the references to interned strings start right after them.
+   */
+  private static final int NULL_STRING = 0;
+  private static final int INLINE_STRING = 1;
+  private static final int FIRST_REF = 2;
+  /**
+   * A guard against interning unbounded number of strings; those exceeding the limit are sent inline.
+   */
+  private static final int MAX_INTERNED_STRINGS = 4096;
+
+  private RecordCodec() {}
+
+  static final class Encoder {
+    private final Map<String, Integer> internedStrings = new HashMap<>();
+    private final Map<String, Long> lastTimestamps = new HashMap<>();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+
+    /**
+     * Encodes the message and writes it out as a single frame.
+     * @throws IllegalArgumentException if the message cannot be encoded; the encoder must not be used after that
+     */
+    void encodeFrame(Message<?> message, DataOutputStream out) throws IOException {
+      buffer.reset();
+      Object payload = message.getPayload();
+      if (payload instanceof LogRecord) {
+        encodeRecord((LogRecord) payload, message.getHeaders());
+      } else if (payload instanceof FileTailingEvent) {
+        encodeEvent((FileTailingEvent) payload, message.getHeaders());
+      } else {
+        throw new IllegalArgumentException("Unsupported record stream message payload: " + payload.getClass());
+      }
+      if (buffer.size() > RecordStreamProtocol.MAX_FRAME_SIZE) {
+        throw new IllegalArgumentException(format("Encoded message is too big (%d bytes): %s", buffer.size(),
+            message));
+      }
+      out.writeInt(buffer.size());
+      buffer.writeTo(out);
+    }
+
+    private void encodeRecord(LogRecord record, MessageHeaders headers) {
+      File file = headers.get(ORIGINAL_FILE, File.class);
+      if (file == null) {
+        throw new IllegalArgumentException("No original file header found in record message: " + headers);
+      }
+      String level = record.getLevel();
+      int flags = (record.isFlat() ? FLAT : 0)
+          | ((level != null) ? HAS_LEVEL : 0)
+          | ((file instanceof ContainerTargetFile) ? CONTAINER_FILE : 0);
+      buffer.write(RECORD);
+      buffer.write(flags);
+      writeString(headers.get(CLIENT_DESTINATION__HEADER, String.class));
+      writeString(headers.get(SOURCE_NODE__HEADER, String.class));
+      String path = file.getAbsolutePath();
+      writeFile(file);
+      if (!record.isFlat()) {
+        long timestamp = record.getTimestamp();
+        Long lastTimestamp = lastTimestamps.put(path, timestamp);
+        writeSignedVarLong(timestamp - ((lastTimestamp != null) ? lastTimestamp : 0L));
+      }
+      if (level != null) {
+        writeString(level);
+      }
+      int classifiedLinesCount = record.getClassifiedLinesCount();
+      writeVarInt(classifiedLinesCount);
+      if (record.isFlat()) {
+        for (int i = 0; i < classifiedLinesCount; i++) {
+          writeString(record.getLineLevel(i));
+        }
+      }
+      List<String> lines = record.getLines();
+      writeVarInt(lines.size());
+      for (String line : lines) {
+        byte[] bytes = line.getBytes(UTF_8);
+        writeVarInt(bytes.length);
+        buffer.write(bytes, 0, bytes.length);
+      }
+    }
+
+    private void encodeEvent(FileTailingEvent event, MessageHeaders headers) {
+      int kind = (event instanceof AccessViolationTailingEvent)
+          ? ACCESS_VIOLATION_EVENT
+          : (event instanceof SendingOverflowTailingEvent)
+              ? SENDING_OVERFLOW_EVENT
+              : TAILING_EVENT;
+      File file = event.getFile();
+      buffer.write(EVENT);
+      buffer.write(kind);
+      buffer.write((file instanceof ContainerTargetFile) ? CONTAINER_FILE : 0);
+      writeString(headers.get(CLIENT_DESTINATION__HEADER, String.class));
+      writeString(headers.get(SOURCE_NODE__HEADER, String.class));
+      writeFile(file);
+      byte[] bytes = AnaLogUtils.extractMessage(event.toString()).getBytes(UTF_8);
+      writeVarInt(bytes.length);
+      buffer.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes the file's path along with the target resource in case of {@link ContainerTargetFile}; which of the two
+     * is written must be told to the decoder by the caller.
+     */
+    private void writeFile(File file) {
+      writeString(file.getAbsolutePath());
+      if (file instanceof ContainerTargetFile) {
+        writeString(file.getName());
+      }
+    }
+
+    /**
+     * Writes either a reference to the string interned earlier, or the string itself along with interning it
+     * (the decoder interns it as well upon reading), or the string inline (if there are too many interned strings
+     * already), or the null marker.
+     */
+    private void writeString(@Nullable String string) {
+      if (string == null) {
+        writeVarInt(NULL_STRING);
+        return;
+      }
+      Integer index = internedStrings.get(string);
+      if (index != null) {
+        writeVarInt(FIRST_REF + index);
+        return;
+      }
+      if (internedStrings.size() < MAX_INTERNED_STRINGS) {
+        index = internedStrings.size();
+        internedStrings.put(string, index);
+        writeVarInt(FIRST_REF + index);     // the new index is exactly the one that the decoder expects next
+      } else {
+        writeVarInt(INLINE_STRING);
+      }
+      byte[] bytes = string.getBytes(UTF_8);
+      writeVarInt(bytes.length);
+      buffer.write(bytes, 0, bytes.length);
+    }
+
+    private void writeVarInt(int value) {
+      writeVarLong(value & 0xFFFF_FFFFL);
+    }
+
+    private void writeSignedVarLong(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        buffer.write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      buffer.write((int) value);
+    }
+  }
+
+  static final class Decoder {
+    private final List<String> internedStrings = new ArrayList<>();
+    private final Map<String, Long> lastTimestamps = new HashMap<>();
+    private byte[] frame;
+    private int pos;
+
+    Message<?> decode(byte[] frame) throws IOException {
+      this.frame = frame;
+      this.pos = 0;
+      try {
+        int type = readByte();
+        switch (type) {
+          case RECORD:
+            return decodeRecord();
+          case EVENT:
+            return decodeEvent();
+          default:
+            throw new StreamCorruptedException("Unknown record stream frame type: " + type);
+        }
+      } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+        throw new StreamCorruptedException(format("Malformed record stream frame (%d bytes): %s", frame.length, e));
+      }
+    }
+
+    private Message<?> decodeRecord() throws IOException {
+      int flags = readByte();
+      Map<String, Object> headers = new HashMap<>(4);
+      headers.put(CLIENT_DESTINATION__HEADER, readString());
+      headers.put(SOURCE_NODE__HEADER, readString());
+      File file = readFile((flags & CONTAINER_FILE) != 0);
+      String path = file.getAbsolutePath();
+      headers.put(ORIGINAL_FILE, file);
+      boolean isFlat = (flags & FLAT) != 0;
+      long timestamp = 0L;
+      if (!isFlat) {
+        Long lastTimestamp = lastTimestamps.get(path);
+        timestamp = ((lastTimestamp != null) ? lastTimestamp : 0L) + readSignedVarLong();
+        lastTimestamps.put(path, timestamp);
+      }
+      String level = ((flags & HAS_LEVEL) != 0)
+          ? readString()
+          : null;
+      int classifiedLinesCount = readVarInt();
+      String[] lineLevels = null;
+      if (isFlat) {
+        lineLevels = new String[classifiedLinesCount];
+        for (int i = 0; i < classifiedLinesCount; i++) {
+          lineLevels[i] = readString();
+        }
+      }
+      int linesCount = readVarInt();
+      ArrayList<String> lines = new ArrayList<>(Math.min(linesCount, frame.length));
+      for (int i = 0; i < linesCount; i++) {
+        lines.add(readUtf8());
+      }
+      if (pos != frame.length) {
+        throw new StreamCorruptedException(format("%d trailing bytes in record frame", frame.length - pos));
+      }
+      LogRecord record = isFlat
+          ? LogRecord.flat(lines, lineLevels)
+          : LogRecord.grouped(lines, timestamp, level, classifiedLinesCount);
+      return new GenericMessage<>(record, headers);
+    }
+
+    private Message<?> decodeEvent() throws IOException {
+      int kind = readByte();
+      int flags = readByte();
+      Map<String, Object> headers = new HashMap<>(2);
+      headers.put(CLIENT_DESTINATION__HEADER, readString());
+      String sourceNode = readString();
+      headers.put(SOURCE_NODE__HEADER, sourceNode);
+      File file = readFile((flags & CONTAINER_FILE) != 0);
+      String message = readUtf8();
+      if (pos != frame.length) {
+        throw new StreamCorruptedException(format("%d trailing bytes in event frame", frame.length - pos));
+      }
+      // the original source (agent's tailing producer) doesn't travel; the event must have some source though
+      Object source = (sourceNode != null)
+          ? sourceNode
+          : file.getAbsolutePath();
+      FileTailingEvent event;
+      switch (kind) {
+        case TAILING_EVENT:
+          event = new FileTailingEvent(source, message, file);
+          break;
+        case ACCESS_VIOLATION_EVENT:
+          event = new AccessViolationTailingEvent(source, message, file);
+          break;
+        case SENDING_OVERFLOW_EVENT:
+          event = new SendingOverflowTailingEvent(source, message, file);
+          break;
+        default:
+          throw new StreamCorruptedException("Unknown tailing event kind: " + kind);
+      }
+      return new GenericMessage<>(event, headers);
+    }
+
+    private File readFile(boolean isContainerFile) throws StreamCorruptedException {
+      String path = Objects.requireNonNull(readString(), "path");
+      return isContainerFile
+          ? new ContainerTargetFile("", Objects.requireNonNull(readString(), "target"), path)
+          : new File(path);
+    }
+
+    @Nullable
+    private String readString() throws StreamCorruptedException {
+      int marker = readVarInt();
+      if (marker == NULL_STRING) {
+        return null;
+      }
+      if (marker == INLINE_STRING) {
+        return readUtf8();
+      }
+      int index = marker - FIRST_REF;
+      if (index < internedStrings.size()) {
+        return internedStrings.get(index);
+      }
+      if (index > internedStrings.size()) {
+        throw new StreamCorruptedException(format("Reference to unknown string #%d (%d strings known)", index,
+            internedStrings.size()));
+      }
+      String string = readUtf8();
+      internedStrings.add(string);
+      return string;
+    }
+
+    private String readUtf8() throws StreamCorruptedException {
+      int length = readVarInt();
+      if (length < 0 || length > frame.length - pos) {
+        throw new StreamCorruptedException(format("Illegal string length %d at position %d", length, pos));
+      }
+      String string = new String(frame, pos, length, UTF_8);
+      pos += length;
+      return string;
+    }
+
+    private int readByte() {
+      return frame[pos++] & 0xFF;
+    }
+
+    private int readVarInt() throws StreamCorruptedException {
+      long value = readVarLong();
+      if (value > Integer.MAX_VALUE) {
+        throw new StreamCorruptedException("Varint is too big: " + value);
+      }
+      return (int) value;
+    }
+
+    private long readSignedVarLong() throws StreamCorruptedException {
+      long value = readVarLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong() throws StreamCorruptedException {
+      long value = 0L;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new StreamCorruptedException("Malformed varint at position " + pos);
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package tech.toparvion.analog.remote.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Agent side of the record stream to a particular server. All the sending flows targeting the server share the same
+ * client and thus the same TCP connection. The client doesn't queue the records by itself; instead, it serves as the
+ * {@link Executor} for the sending flows' buffers: their drain tasks are run by the client's dedicated writer thread
+ * which {@linkplain #write(Message) writes} the records right into the stream, without waiting for any replies. The
+ * stream is flushed once there are no more tasks to run, i.e. once per batch of records. If the stream is
+ * {@linkplain StreamTarget#isCompressed() compressed}, the flush also completes the compressed block of the batch.<p>
+ * If the server is (or becomes) unreachable, the records are rejected until the next connection attempt which is made
+ * not earlier than the reconnect delay after the previous one.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class RecordStreamClient implements Executor {
+  private static final Logger log = LoggerFactory.getLogger(RecordStreamClient.class);
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InetSocketAddress serverAddress;
+  private final boolean isCompressed;
+  private final long reconnectDelayMillis;
+  /**
+   * Drain tasks of the sending flows' buffers. Unbounded as every buffer has at most one task scheduled at a time.
+   */
+  private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  private volatile boolean isClosed = false;
+
+  //<editor-fold desc="Confined to the writer thread">
+  @Nullable
+  private Socket socket;
+  @Nullable
+  private DataOutputStream out;
+  @Nullable
+  private RecordCodec.Encoder encoder;
+  @Nullable
+  private Deflater deflater;
+  private long nextConnectAttemptMillis = 0L;
+  private long rejectedCount = 0L;
+  //</editor-fold>
+
+  RecordStreamClient(StreamTarget target, Duration reconnectDelay) {
+    this.serverAddress = target.getAddress();
+    this.isCompressed = target.isCompressed();
+    this.reconnectDelayMillis = reconnectDelay.toMillis();
+    this.writer = new Thread(this::writeLoop, "recordStreamWriter-" + serverAddress);
+    this.writer.setDaemon(true);
+  }
+
+  void start() {
+    writer.start();
+  }
+
+  /**
+   * Schedules the task for running in the writer thread. The tasks scheduled after closing of the client are ignored.
+   * @param drainTask a task writing the records of a sending flow with {@link #write(Message)}
+   */
+  @Override
+  public void execute(Runnable drainTask) {
+    if (!isClosed) {
+      tasks.add(drainTask);
+    }
+  }
+
+  /**
+   * Writes the record into the stream. Must be called from the tasks {@linkplain #execute(Runnable) run} by the
+   * client only.
+   * @param recordMessage a message with the record (or any other payload) to send
+   * @throws MessageDeliveryException if the record can't be written, e.g. because the server is not connected
+   */
+  public void write(Message<?> recordMessage) throws MessageDeliveryException {
+    Assert.state(Thread.currentThread() == writer, "Records must be written from the client's writer thread only");
+    try {
+      DataOutputStream out = connectIfNeeded();
+      if (out == null) {
+        rejectedCount++;
+        throw new MessageDeliveryException(recordMessage, "Record stream to " + serverAddress + " is not connected");
+      }
+      encoder.encodeFrame(recordMessage, out);
+
+    } catch (IOException e) {
+      log.warn("Failed to write a record to {}; will reconnect in {} ms. Cause: {}", serverAddress,
+          reconnectDelayMillis, e.toString());
+      rejectedCount++;
+      disconnect();
+      throw new MessageDeliveryException(recordMessage, "Failed to write a record to " + serverAddress, e);
+
+    } catch (IllegalArgumentException e) {
+      // the encoder's state is not in sync with the server's decoder anymore, so the stream must be restarted
+      log.error("Failed to encode a record for {}; reconnecting.", serverAddress, e);
+      rejectedCount++;
+      disconnect();
+      nextConnectAttemptMillis = 0L;
+      throw new MessageDeliveryException(recordMessage, "Failed to encode a record for " + serverAddress, e);
+    }
+  }
+
+  void close() {
+    isClosed = true;
+    writer.interrupt();
+  }
+
+  private void writeLoop() {
+    while (!isClosed) {
+      try {
+        tasks.take().run();     // the failures of particular records are handled by the tasks themselves
+        if (tasks.isEmpty() && out != null) {
+          out.flush();
+        }
+
+      } catch (InterruptedException e) {
+        break;      // the client is being closed
+
+      } catch (IOException e) {
+        log.warn("Failed to flush records to {}; will reconnect in {} ms. Cause: {}", serverAddress,
+            reconnectDelayMillis, e.toString());
+        disconnect();
+
+      } catch (RuntimeException e) {
+        log.error("Unexpected failure of a drain task for {}.", serverAddress, e);
+      }
+    }
+    disconnect();
+    log.debug("Record stream writer to {} has stopped.", serverAddress);
+  }
+
+  /**
+   * @return the stream to write the frames to or {@code null} if the server is not connected and it's too early to
+   * try connecting again
+   */
+  @Nullable
+  private DataOutputStream connectIfNeeded() throws IOException {
+    if (out != null) {
+      return out;
+    }
+    long now = System.currentTimeMillis();
+    if (now < nextConnectAttemptMillis) {
+      return null;
+    }
+    nextConnectAttemptMillis = now + reconnectDelayMillis;
+    socket = new Socket();
+    socket.setTcpNoDelay(true);     // the batching is done by the writer itself
+    socket.setKeepAlive(true);
+    socket.connect(serverAddress, CONNECT_TIMEOUT_MILLIS);
+    BufferedOutputStream socketOut = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    out = new DataOutputStream(socketOut);
+    RecordStreamProtocol.writeHandshake(out, isCompressed ? RecordStreamProtocol.COMPRESSED : 0);
+    if (isCompressed) {
+      // the outer buffer lets the deflater work on whole batches rather than on every single field of the frames
+      deflater = new Deflater(Deflater.BEST_SPEED);
+      out = new DataOutputStream(new BufferedOutputStream(
+          new DeflaterOutputStream(socketOut, deflater, BUFFER_SIZE, true), BUFFER_SIZE));
+    }
+    encoder = new RecordCodec.Encoder();     // the interned strings are negotiated anew for every connection
+    log.info("Connected record stream to {} (records rejected while disconnected: {}).", serverAddress, rejectedCount);
+    rejectedCount = 0L;
+    return out;
+  }
+
+  private void disconnect() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        log.debug("Failed to close record stream socket to {}.", serverAddress, e);
+      }
+    }
+    if (deflater != null) {
+      deflater.end();
+    }
+    socket = null;
+    out = null;
+    encoder = null;
+    deflater = null;
+  }
+
+  @Override
+  public String toString() {
+    return "RecordStreamClient{" +
+        "serverAddress=" + serverAddress +
+        ", isCompressed=" + isCompressed +
+        ", scheduledTasks=" + tasks.size() +
+        ", isClosed=" + isClosed +
+        '}';
+  }
+}
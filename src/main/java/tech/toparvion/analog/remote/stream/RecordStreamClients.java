@@ -0,0 +1,90 @@
+package tech.toparvion.analog.remote.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Agent side registry of {@linkplain RecordStreamClient record stream clients}, one per server. A client is created
+ * upon the first acquisition for its server and closed upon the last release so that a connection lives as long as
+ * there are sending flows using it.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+@Component
+public class RecordStreamClients {
+  private static final Logger log = LoggerFactory.getLogger(RecordStreamClients.class);
+
+  private final TrackingProperties trackingProperties;
+  /**
+   * Clients and the numbers of their users keyed by servers' streams. Guarded by itself.
+   */
+  private final Map<StreamTarget, Lease> leases = new HashMap<>();
+
+  @Autowired
+  public RecordStreamClients(TrackingProperties trackingProperties) {
+    this.trackingProperties = trackingProperties;
+  }
+
+  /**
+   * @param target stream of the server
+   * @return a (possibly shared) client to send the records to the server with
+   */
+  public RecordStreamClient acquire(StreamTarget target) {
+    synchronized (leases) {
+      Lease lease = leases.get(target);
+      if (lease == null) {
+        RecordStreamClient client = new RecordStreamClient(target, trackingProperties.getRetryDelay());
+        client.start();
+        lease = new Lease(client);
+        leases.put(target, lease);
+        log.debug("Created record stream client to {}.", target);
+      }
+      lease.usersCount++;
+      return lease.client;
+    }
+  }
+
+  /**
+   * Releases the client acquired earlier and closes it if there are no more users of it.
+   * @param target stream of the server
+   */
+  public void release(StreamTarget target) {
+    synchronized (leases) {
+      Lease lease = leases.get(target);
+      if (lease == null) {
+        log.warn("No record stream client to {} found to release.", target);
+        return;
+      }
+      if (--lease.usersCount < 1) {
+        leases.remove(target);
+        lease.client.close();
+        log.debug("Closed record stream client to {} as it has no users anymore.", target);
+      }
+    }
+  }
+
+  @PreDestroy
+  public void closeAll() {
+    synchronized (leases) {
+      leases.values().forEach(lease -> lease.client.close());
+      leases.clear();
+    }
+  }
+
+  private static final class Lease {
+    final RecordStreamClient client;
+    int usersCount = 0;
+
+    Lease(RecordStreamClient client) {
+      this.client = client;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package tech.toparvion.analog.remote.stream;
+
+import java.io.*;
+
+import static java.lang.String.format;
+
+/**
+ * The wire protocol of the record stream, i.e. of a persistent TCP connection carrying the records of all the logs
+ * watched by a server from an agent. After connecting, the agent sends a handshake ({@link #MAGIC} and
+ * {@link #VERSION} followed by the {@linkplain #COMPRESSED options} of the stream) and then an unbounded sequence of
+ * frames, each consisting of the payload length (4 bytes, big-endian) followed by the payload itself, i.e. by a
+ * message encoded with {@link RecordCodec}. The server never replies so that records are pipelined rather than
+ * exchanged one by one.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+final class RecordStreamProtocol {
+  /**
+   * 'ANLG' in ASCII.
+   */
+  static final int MAGIC = 0x414E4C47;
+  /**
+   * Version 1 carried Java serialized messages; version 2 carries the messages encoded with {@link RecordCodec};
+   * version 3 adds the stream options to the handshake; version 4 encodes tailing events with the codec as well
+   * instead of Java serialization.
+   */
+  static final int VERSION = 4;
+  /**
+   * The stream option meaning that everything after the handshake is compressed with a single deflate stream which is
+   * sync-flushed after every batch of frames. Unlike compressing every batch separately, this keeps the compression
+   * window across the batches so that the text repeating from record to record is compressed well even in small
+   * batches.
+   */
+  static final int COMPRESSED = 0x01;
+  /**
+   * A guard against reading garbage as frame length, e.g. in case of connecting with something that isn't an agent.
+   */
+  static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  private RecordStreamProtocol() {}
+
+  static void writeHandshake(DataOutputStream out, int options) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(options);
+  }
+
+  /**
+   * @return the options of the stream
+   * @throws IOException if the peer doesn't speak the protocol of this version
+   */
+  static int readHandshake(DataInputStream in) throws IOException {
+    int magic = in.readInt();
+    if (magic != MAGIC) {
+      throw new StreamCorruptedException(format("Unexpected record stream magic: 0x%08X", magic));
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new StreamCorruptedException(format("Unsupported record stream version: %d (expected %d)",
+          version, VERSION));
+    }
+    return in.readInt();
+  }
+
+  /**
+   * @throws EOFException if the stream has been closed by the peer between frames
+   */
+  static byte[] readFrame(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_FRAME_SIZE) {
+      throw new StreamCorruptedException(format("Illegal record stream frame length: %d", length));
+    }
+    byte[] frame = new byte[length];
+    in.readFully(frame);
+    return frame;
+  }
+}
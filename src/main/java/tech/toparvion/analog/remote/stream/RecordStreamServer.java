@@ -0,0 +1,142 @@
+package tech.toparvion.analog.remote.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Server side of the record streams. Accepts the connections from agents and reads each one in a dedicated thread,
+ * passing the received messages to the payload channel in the order they were sent by the agent.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class RecordStreamServer {
+  private static final Logger log = LoggerFactory.getLogger(RecordStreamServer.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final MessageChannel payloadChannel;
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+  @Nullable
+  private volatile ServerSocket serverSocket;
+
+  public RecordStreamServer(MessageChannel payloadChannel) {
+    this.payloadChannel = payloadChannel;
+  }
+
+  /**
+   * Starts listening for agents' connections.
+   * @param port TCP port to listen on
+   * @throws IllegalStateException if the port cannot be bound
+   */
+  public void start(int port) {
+    try {
+      serverSocket = new ServerSocket(port);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to open record stream server socket on port " + port, e);
+    }
+    Thread acceptor = new Thread(this::acceptLoop, "recordStreamAcceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    log.info("Record stream server is listening on port {}.", port);
+  }
+
+  /**
+   * @return the port actually listened on, e.g. the one chosen by the system if the server was started on port 0
+   */
+  int getLocalPort() {
+    ServerSocket serverSocket = this.serverSocket;
+    return (serverSocket != null)
+        ? serverSocket.getLocalPort()
+        : -1;
+  }
+
+  public void close() {
+    ServerSocket serverSocket = this.serverSocket;
+    if (serverSocket == null) {
+      return;
+    }
+    closeQuietly(serverSocket);
+    connections.forEach(this::closeQuietly);
+    connections.clear();
+  }
+
+  private void acceptLoop() {
+    ServerSocket serverSocket = this.serverSocket;
+    while (serverSocket != null && !serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        connections.add(socket);
+        Thread reader = new Thread(() -> readLoop(socket), "recordStreamReader-" + socket.getRemoteSocketAddress());
+        reader.setDaemon(true);
+        reader.start();
+
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          log.error("Failed to accept record stream connection.", e);
+        }
+      }
+    }
+  }
+
+  private void readLoop(Socket socket) {
+    SocketAddress agentAddress = socket.getRemoteSocketAddress();
+    Inflater inflater = null;
+    try {
+      BufferedInputStream socketIn = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+      DataInputStream in = new DataInputStream(socketIn);
+      int options = RecordStreamProtocol.readHandshake(in);
+      boolean isCompressed = (options & RecordStreamProtocol.COMPRESSED) != 0;
+      if (isCompressed) {
+        inflater = new Inflater();
+        in = new DataInputStream(new InflaterInputStream(socketIn, inflater, BUFFER_SIZE));
+      }
+      log.info("Accepted {}record stream from {}.", (isCompressed ? "compressed " : ""), agentAddress);
+      RecordCodec.Decoder decoder = new RecordCodec.Decoder();
+      while (true) {
+        byte[] frame = RecordStreamProtocol.readFrame(in);
+        // a frame that can't be decoded breaks the stream as the decoder's state may be out of sync with the agent
+        Message<?> message = decoder.decode(frame);
+        try {
+          payloadChannel.send(message);
+        } catch (RuntimeException e) {
+          log.error("Failed to handle message from {}: {}", agentAddress, message, e);
+        }
+      }
+
+    } catch (EOFException e) {
+      log.info("Record stream from {} has been closed by the agent.", agentAddress);
+
+    } catch (IOException e) {
+      if (!socket.isClosed()) {
+        log.warn("Record stream from {} has been broken: {}", agentAddress, e.toString());
+      }
+
+    } finally {
+      if (inflater != null) {
+        inflater.end();
+      }
+      connections.remove(socket);
+      closeQuietly(socket);
+    }
+  }
+
+  private void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      log.debug("Failed to close {}.", closeable, e);
+    }
+  }
+}
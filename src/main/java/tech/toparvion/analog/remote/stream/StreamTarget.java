@@ -0,0 +1,50 @@
+package tech.toparvion.analog.remote.stream;
+
+import java.net.InetSocketAddress;
+import java.util.Objects;
+
+/**
+ * Coordinates of a server's record stream along with the options negotiated for it.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public final class StreamTarget {
+  private final InetSocketAddress address;
+  /**
+   * Whether the batches of records must be compressed before sending.
+   */
+  private final boolean isCompressed;
+
+  public StreamTarget(InetSocketAddress address, boolean isCompressed) {
+    this.address = address;
+    this.isCompressed = isCompressed;
+  }
+
+  public InetSocketAddress getAddress() {
+    return address;
+  }
+
+  public boolean isCompressed() {
+    return isCompressed;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    StreamTarget that = (StreamTarget) o;
+    return isCompressed == that.isCompressed &&
+        address.equals(that.address);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(address, isCompressed);
+  }
+
+  @Override
+  public String toString() {
+    return address + (isCompressed ? " (compressed)" : "");
+  }
+}
@@ -22,11 +22,22 @@ public class WatchRegistry {
    * Value: a list of websocket session IDs that are currently watching the log in key
    */
   private final Map<AbstractLogConfigEntry, List<String>> storage = new ConcurrentHashMap<>();
+  /**
+   * Key: the same as in {@link #storage}
+   * Value: client destination (without websocket topic prefix) the log's records are sent to
+   */
+  private final Map<AbstractLogConfigEntry, String> destinations = new ConcurrentHashMap<>();
 
-  void addEntry(AbstractLogConfigEntry logConfig, String sessionId) {
+  void addEntry(AbstractLogConfigEntry logConfig, String destination, String sessionId) {
     List<String> sids = new LinkedList<>();
     sids.add(sessionId);
     storage.put(logConfig, sids);
+    destinations.put(logConfig, destination);
+  }
+
+  @Nullable
+  String findDestinationFor(AbstractLogConfigEntry logConfigEntry) {
+    return destinations.get(logConfigEntry);
   }
 
   @Nullable
@@ -62,5 +73,6 @@ public class WatchRegistry {
 
   void removeEntry(AbstractLogConfigEntry logConfig) {
     storage.remove(logConfig);
+    destinations.remove(logConfig);
   }
 }
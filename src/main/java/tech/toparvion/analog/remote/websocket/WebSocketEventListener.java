@@ -18,18 +18,21 @@ import tech.toparvion.analog.model.ServerFailure;
 import tech.toparvion.analog.model.config.ChoiceProperties;
 import tech.toparvion.analog.model.config.entry.*;
 import tech.toparvion.analog.model.remote.TrackingRequest;
+import tech.toparvion.analog.remote.server.FanOutRegistry;
+import tech.toparvion.analog.remote.server.RecordSender;
 import tech.toparvion.analog.remote.server.RegistrationChannelCreator;
 import tech.toparvion.analog.remote.server.RemoteGateway;
 import tech.toparvion.analog.util.LocalizedLogger;
 import tech.toparvion.analog.util.PathUtils;
 
-import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 import java.util.List;
 
 import static java.lang.String.format;
 import static java.time.ZonedDateTime.now;
+import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toList;
 import static tech.toparvion.analog.remote.RemotingConstants.*;
 import static tech.toparvion.analog.util.AnaLogUtils.doSafely;
@@ -48,6 +51,8 @@ public class WebSocketEventListener {
   private final WatchRegistry registry;
   private final RegistrationChannelCreator registrationChannelCreator;
   private final RemoteGateway remoteGateway;
+  private final FanOutRegistry fanOutRegistry;
+  private final RecordSender recordSender;
   private final SimpMessagingTemplate messagingTemplate;
   private final Converter<String, LogPath> converter;
 
@@ -59,6 +64,8 @@ public class WebSocketEventListener {
                                 WatchRegistry registry,
                                 RegistrationChannelCreator registrationChannelCreator,
                                 RemoteGateway remoteGateway,
+                                FanOutRegistry fanOutRegistry,
+                                RecordSender recordSender,
                                 SimpMessagingTemplate messagingTemplate,
                                 Converter<String, LogPath> converter,
                                 MessageSource messageSource) {
@@ -66,6 +73,8 @@ public class WebSocketEventListener {
     this.registry = registry;
     this.registrationChannelCreator = registrationChannelCreator;
     this.remoteGateway = remoteGateway;
+    this.fanOutRegistry = fanOutRegistry;
+    this.recordSender = recordSender;
     this.messagingTemplate = messagingTemplate;
     this.converter = converter;
 
@@ -110,11 +119,13 @@ public class WebSocketEventListener {
         // 2. Register the tracking on specified nodes
         startTracking(logConfig, path, isTailNeeded);
         // 3. Remember the tracking in the registry
-        registry.addEntry(logConfig, sessionId);
+        registry.addEntry(logConfig, path, sessionId);
         log.info("New tracking for log '{}' has started within session id={}.", logConfig.getId(), sessionId);
 
       } catch (Exception e) {
         log.error(format("Failed to start watching of log '%s'.", logConfig.getId()), e);
+        // roll back the bindings made before the failure (if any) to keep them in sync with agents
+        doSafely(getClass(), () -> stopTracking(logConfig, path));
         Throwable rootCause = Throwables.getRootCause(e);
         ServerFailure failure = new ServerFailure(rootCause.getMessage(), now());
         messagingTemplate.convertAndSend(destination, failure, singletonMap(MESSAGE_TYPE_HEADER, MessageType.FAILURE));
@@ -127,6 +138,15 @@ public class WebSocketEventListener {
       watchingSessionIds.add(sessionId);
       log.info("There were {} session(s) already watching log '{}'. New session {} has been added to them.",
           watchingSessionIds.size()-1, logConfig.getId(), sessionId);
+      try {
+        resumeDroppedTracking(logConfig, path, isTailNeeded);
+
+      } catch (Exception e) {
+        log.error(format("Failed to resume watching of log '%s'.", logConfig.getId()), e);
+        Throwable rootCause = Throwables.getRootCause(e);
+        ServerFailure failure = new ServerFailure(rootCause.getMessage(), now());
+        messagingTemplate.convertAndSend(destination, failure, singletonMap(MESSAGE_TYPE_HEADER, MessageType.FAILURE));
+      }
     }
   }
 
@@ -171,8 +191,10 @@ public class WebSocketEventListener {
     }
     // in case it was the latest session watching that log we should unsubscribe current node from the agent
     AbstractLogConfigEntry watchingLog = registry.findLogConfigEntryBy(sessionId);
+    String destination = registry.findDestinationFor(watchingLog);
+    Assert.state(destination != null, "No destination found for log " + watchingLog.getId());
     log.debug("No sessions left watching log '{}'. Will unsubscribe current node...", watchingLog.getId());
-    doSafely(getClass(), () -> stopTracking(watchingLog));
+    doSafely(getClass(), () -> stopTracking(watchingLog, destination));
     // now that the log is not watched anymore on current node we need to remove it from the registry
     registry.removeEntry(watchingLog);
     log.info("Current node has unregistered itself from tracking log '{}' as there is no watching sessions anymore.",
@@ -250,38 +272,96 @@ public class WebSocketEventListener {
     switchTracking(logConfigEntry, destination, true, isTailNeeded);
   }
 
-  private void stopTracking(AbstractLogConfigEntry logConfigEntry) {
-    switchTracking(logConfigEntry, null, false, false);
+  private void stopTracking(AbstractLogConfigEntry logConfigEntry, String destination) {
+    switchTracking(logConfigEntry, destination, false, false);
+  }
+
+  /**
+   * Restarts the tracking of those logs (of the given entry) that have lost their subscription while still being
+   * watched, e.g. because the agent has stopped sending a log on overflow (see {@code MetaDataSender}). Without this
+   * the sessions watching the entry would keep their registry record but receive nothing until all of them leave.
+   */
+  private void resumeDroppedTracking(AbstractLogConfigEntry logConfigEntry, String destination, boolean isTailNeeded) {
+    for (TrackingRequest request : composeTrackingRequests(logConfigEntry, isTailNeeded)) {
+      String subscriptionKey = requireNonNull(request.getClientDestination());
+      if (fanOutRegistry.findDestinations(subscriptionKey).contains(destination)) {
+        continue;
+      }
+      log.info("Log '{}' of watched log '{}' has no subscription anymore. Restarting its tracking: {}",
+          subscriptionKey, logConfigEntry.getId(), request);
+      if (!fanOutRegistry.bind(request, destination)) {
+        continue;     // the log is being received for other destination(s) already
+      }
+      try {
+        remoteGateway.switchRegistration(request, true);
+      } catch (RuntimeException e) {
+        // the binding must not outlive the failed request, otherwise the log would never be requested again
+        fanOutRegistry.unbind(subscriptionKey, destination);
+        throw e;
+      }
+    }
   }
 
   private void switchTracking(AbstractLogConfigEntry logConfigEntry,
-                              @Nullable String destination /*can be null when switching OFF*/,
+                              String destination,
                               boolean isOn,
                               boolean isTailNeeded) {
     Assert.isTrue(!(isTailNeeded && !isOn), "isTailNeeded flag shouldn't be raised when switching tracking off");
 
-    // handling plain entries is quite simple so let's do it first
-    if (logConfigEntry instanceof PlainLogConfigEntry) {
-      PlainLogConfigEntry plainEntry = (PlainLogConfigEntry) logConfigEntry;
-      TrackingRequest request = new TrackingRequest(plainEntry.getPath(), null, destination, isTailNeeded);
-      log.debug("sending-plain-tracking-request", (isOn ? "ON" : "OFF"), request);
+    String logMessageKey = (logConfigEntry instanceof PlainLogConfigEntry)
+        ? "sending-plain-tracking-request"
+        : "sending-composite-tracking-request";
+    for (TrackingRequest request : composeTrackingRequests(logConfigEntry, isTailNeeded)) {
+      if (!isBindingChanged(request, destination, isOn)) {
+        continue;
+      }
+      log.debug(logMessageKey, (isOn ? "ON" : "OFF"), request);
       remoteGateway.switchRegistration(request, isOn);
-      return;
+      // This action may end up with an exception and thus interrupt the whole loop. While it is generally a bad
+      // practice, here it is considered OK as it allows to react on tracking faults in a fail-fast fashion.
     }
+  }
 
-    // handling composite entries involves iteration over all included paths
+  /**
+   * @return a tracking request for every log the entry consists of, i.e. a single flat request for a plain entry and
+   * a group request per included path for a composite one
+   */
+  private List<TrackingRequest> composeTrackingRequests(AbstractLogConfigEntry logConfigEntry, boolean isTailNeeded) {
+    if (logConfigEntry instanceof PlainLogConfigEntry) {
+      PlainLogConfigEntry plainEntry = (PlainLogConfigEntry) logConfigEntry;
+      String subscriptionKey = FanOutRegistry.composeSubscriptionKey(plainEntry.getPath(), true);
+      return singletonList(new TrackingRequest(plainEntry.getPath(), null, subscriptionKey, isTailNeeded));
+    }
     CompositeLogConfigEntry compositeEntry = (CompositeLogConfigEntry) logConfigEntry;
-    for (CompositeInclusion inclusion : compositeEntry.getIncludes()) {
-      TrackingRequest request = new TrackingRequest(
-          inclusion.getPath(),
-          inclusion.getTimestamp(),
-          destination,
-          isTailNeeded);
-      log.debug("sending-composite-tracking-request", isOn ? "ON" : "OFF", request);
-      remoteGateway.switchRegistration(request, isOn);
-      // This action may end up with an exception and thus interrupt the whole loop. While it is generally a bad
-      // practice, here it is considered OK as it allows to react on tracking faults in a fail-fast fashion.
+    return compositeEntry.getIncludes().stream()
+        .map(inclusion -> new TrackingRequest(
+            inclusion.getPath(),
+            inclusion.getTimestamp(),
+            FanOutRegistry.composeSubscriptionKey(inclusion.getPath(), false),
+            isTailNeeded))
+        .collect(toList());
+  }
+
+  /**
+   * Binds the destination to (or unbinds it from) the log's subscription key. A destination joining the log that is
+   * already being received for other destinations is given the log's recent records instead of the agent's tail.
+   * @return {@code true} if the agent must be requested to switch the tracking, i.e. if the destination is the first
+   * one bound to the key or the last one unbound from it; {@code false} if the log is (still) being sent to this
+   * node for other destinations
+   */
+  private boolean isBindingChanged(TrackingRequest request, String destination, boolean isOn) {
+    String subscriptionKey = requireNonNull(request.getClientDestination());
+    boolean isChanged = isOn
+        ? fanOutRegistry.bind(request, destination)
+        : fanOutRegistry.unbind(subscriptionKey, destination);
+    if (!isChanged) {
+      log.debug("Log '{}' is still being received for other destination(s); {} '{}' needs no agent request.",
+          subscriptionKey, (isOn ? "binding" : "unbinding"), destination);
+      if (isOn && request.isTailNeeded()) {
+        recordSender.sendRecentRecords(subscriptionKey, destination);
+      }
     }
+    return isChanged;
   }
 
 }
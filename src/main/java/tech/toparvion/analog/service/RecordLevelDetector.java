@@ -7,17 +7,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import tech.toparvion.analog.model.config.RecordLevelsProperties;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
-import static java.lang.Character.toLowerCase;
 import static java.lang.String.format;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toUnmodifiableList;
 
 /**
  * A component responsible for determining which level a record belongs to. Scans first line of every given record in
- * order to find known level entry. This is the third and the most complicated implementation of record level
- * detection logic aimed at both accuracy and performance at the same time.
+ * order to find known level entry. This is the fourth implementation of record level detection logic: the known
+ * levels are compiled into a {@linkplain LevelAutomaton deterministic automaton} in advance so that the detection
+ * takes a single table lookup per character and doesn't allocate any memory.
  * @author Toparvion
  * @since v0.8.1
  */
@@ -26,182 +28,277 @@ public class RecordLevelDetector {
   private static final Logger log = LoggerFactory.getLogger(RecordLevelDetector.class);
 
   /**
-   * Matrix of characters of all known record levels. Allows access by row and columns indexes. Built upon distinct
-   * level values.
+   * Automaton recognizing the words equal to known record levels. Built upon distinct level values.
    */
-  private final LevelMatrix levelMatrix;
+  private final LevelAutomaton levelAutomaton;
   /**
-   * Immutable list of distinct levels. Used as an ordered storage of levels to extract levels after successful
-   * detection thus avoiding excess memory allocations (in comparison with levelMatrix)
+   * Immutable list of distinct levels wrapped into optionals. Used as an ordered storage of levels to return them
+   * after successful detection thus avoiding excess memory allocations.
    */
-  private final List<String> distinctLevels;
+  private final List<Optional<String>> distinctLevels;
+  /**
+   * Whether the {@linkplain PositionHint positions} of previously found levels are checked before the full scan.
+   */
+  private final boolean isAdaptive;
+
+  public RecordLevelDetector(RecordLevelsProperties recordLevelsProperties, boolean isCaseSensitive) {
+    this(recordLevelsProperties, isCaseSensitive, true);
+  }
 
   @Autowired
   public RecordLevelDetector(RecordLevelsProperties recordLevelsProperties,
-                             @Value("${recordLevelsDetector.caseSensitive:true}") boolean isCaseSensitive) {
+                             @Value("${recordLevelsDetector.caseSensitive:true}") boolean isCaseSensitive,
+                             @Value("${recordLevelsDetector.adaptive:true}") boolean isAdaptive) {
+    this.isAdaptive = isAdaptive;
     List<String> knownLevels = recordLevelsProperties.getRecordLevels();
-    this.distinctLevels = knownLevels.stream()
+    List<String> distinctLevels = knownLevels.stream()
         .distinct()
         .collect(toList());
     if (distinctLevels.size() != knownLevels.size()) {
       log.warn("Proposed list of record levels contains duplicates and therefore has been reduced to {}", distinctLevels);
     } else {
-      log.info("Record level detector has been initialized as caseSensitive={} and with known levels: {}",
-          isCaseSensitive, distinctLevels);
+      log.info("Record level detector has been initialized as caseSensitive={}, adaptive={} and with known levels: {}",
+          isCaseSensitive, isAdaptive, distinctLevels);
     }
-    levelMatrix = new LevelMatrix(distinctLevels, isCaseSensitive);
+    levelAutomaton = new LevelAutomaton(distinctLevels, isCaseSensitive);
+    this.distinctLevels = distinctLevels.stream()
+        .map(Optional::of)
+        .collect(toUnmodifiableList());
   }
 
   /**
    * Detects the level of given log record basing on {@linkplain #distinctLevels known levels}. Reads only the very
    * first line of the record from left to right and stops when either EOL/EOR (end of record) encountered or when the
    * full match is found. The full match is defined as (1) lengths equality between level and a word within the
-   * record, (2) precise character matching.
+   * record, (2) precise character matching. If several levels start with the same word, the word is checked against
+   * the one declared first only.
    * @param record record to detect level of
    * @return either one of levels given early to {@linkplain #RecordLevelDetector(RecordLevelsProperties, boolean)
    * constructor} or {@linkplain Optional#empty() empty optional} if no level was detected
    */
   public Optional<String> detectLevel(String record) {
-    for (int curPos = 0; curPos < record.length(); curPos++) {
-      char curChar = record.charAt(curPos);
-      if (curChar == '\n') {
-        return Optional.empty();
-      }
-      char prevChar = (curPos > 0)
-          ? record.charAt(curPos-1)
-          : 0;          // we treat prevChar as 0 at the record's start in order to detect it as ordinary word start
-      // word left boundary is where a non-alphanumerical character is followed by alphanumerical one
-      boolean isWordLeftBoundary = !isAlphaNum(prevChar) && isAlphaNum(curChar);
-      if (!isWordLeftBoundary) {
-        continue;       // there is no sense in analyzing words not from the beginning
-      }
+    int levelStart = findLevelStart(record);
+    return (levelStart >= 0)
+        ? distinctLevels.get(matchWordAt(record, levelStart))
+        : Optional.empty();
+  }
 
-      int wordAnalysisResult = analyzeWord(record, curPos);
-      if (wordAnalysisResult >= 0) {
-        //noinspection UnnecessaryLocalVariable
-        int matchedLevelIndex = wordAnalysisResult;
-        return Optional.of(distinctLevels.get(matchedLevelIndex));
+  /**
+   * The same as {@link #detectLevel(String)} but for the records of a particular log. Most logs put the level at the
+   * same position of every record (e.g. right after the fixed width timestamp), so unless the detector is created as
+   * non-adaptive, the position where the level was found last time is checked first. The full scan is performed only
+   * if there is no level at that position; its result updates the hint.<p>
+   * Note that a level at the hinted position wins over any level mention preceding it in the record.
+   * @param record record to detect level of
+   * @param hint   the position of the level found in the previous record of the same log
+   * @return the same as {@link #detectLevel(String)}
+   */
+  public Optional<String> detectLevel(String record, PositionHint hint) {
+    if (isAdaptive && hint.levelStart >= 0) {
+      int matchedLevelIndex = matchWordAt(record, hint.levelStart);
+      if (matchedLevelIndex >= 0) {
+        return distinctLevels.get(matchedLevelIndex);
       }
-      curPos += (Math.abs(wordAnalysisResult)-1);   // -1 to avoid one excess increment on transition to next loop step
     }
-
-    return Optional.empty();
+    int levelStart = findLevelStart(record);
+    if (levelStart < 0) {
+      return Optional.empty();
+    }
+    hint.levelStart = levelStart;
+    return distinctLevels.get(matchWordAt(record, levelStart));
   }
 
   /**
-   * Checks a word within {@code record} starting at position {@code startPos} for the full matching with any known
-   * record level. Result of a method call may be of two kinds. If negative, the result means that no match was found
-   * and it is just length of the analyzed word (for main loop to skip the word entirely). Otherwise the result is
-   * index of matched record level in {@link #levelMatrix}.
-   *
-   * @param record the whole record containing a word to analyze
-   * @param startPos word first letter's position
-   * @return word length ({@code <0}) or matched record level's index ({@code >=0)}
+   * Scans the first line of the record for a word matching any of known levels.
+   * @return position of the matching word's first letter or {@code -1} if there is no such word
    */
-  private int analyzeWord(String record, int startPos) {
-    int curPos = startPos;
-    char curChar = record.charAt(startPos);
-    int wordPos = 0;
-    boolean[] matchingLevels = new boolean[levelMatrix.getLevelsCount()];
-    int firstMatchingLevelIdx;
-    do {
-      matchingLevels = levelMatrix.markMatchingLevels(curChar, wordPos, matchingLevels);
-      firstMatchingLevelIdx = findFirstMatchingLevelIdx(matchingLevels);
-      if (firstMatchingLevelIdx < 0) {
-        // skip current word entirely
-        while (curPos < record.length() && isAlphaNum(record.charAt(curPos++))) {
-          wordPos++;
+  private int findLevelStart(String record) {
+    int state = LevelAutomaton.WORD_START;
+    int wordStart = 0;
+    for (int curPos = 0; curPos < record.length(); curPos++) {
+      char curChar = record.charAt(curPos);
+      int charClass = LevelAutomaton.classOf(curChar);
+      if (charClass < 0) {
+        // word right boundary (or just one more non-alphanumerical char); check what the word has led to
+        if (levelAutomaton.matchedLevelIndex(state) >= 0) {
+          return wordStart;
+        }
+        if (curChar == '\n') {
+          return -1;
         }
-        return -wordPos;      // return word position as negative to denote the mismatch (see method javadoc)
+        state = LevelAutomaton.WORD_START;
+        wordStart = curPos + 1;
+        continue;
       }
-      curPos++;
-      curChar = curPos < record.length()
-          ? record.charAt(curPos)
-          : 0;      // we treat the end of the record as 0 in order to detect it as ordinary word stop
-      wordPos++;
-    } while (isAlphaNum(curChar));
-
-    return levelMatrix.isLevelMatchesEntirely(firstMatchingLevelIdx, wordPos)
-        ? firstMatchingLevelIdx
+      if (state != LevelAutomaton.MISMATCH) {
+        state = levelAutomaton.next(state, charClass);
+      }
+      // otherwise there is no sense in analyzing the rest of the word
+    }
+    // the end of the record is an ordinary word stop
+    return (levelAutomaton.matchedLevelIndex(state) >= 0)
+        ? wordStart
         : -1;
   }
 
-  private int findFirstMatchingLevelIdx(boolean[] matchingLevels) {
-    int firstMatchingLevelIdx = -1;
-    for (int i = 0; i < matchingLevels.length; i++) {
-      boolean matchingLevel = matchingLevels[i];
-      if (matchingLevel) {
-        firstMatchingLevelIdx = i;
+  /**
+   * Checks the word starting exactly at {@code startPos} for the full matching with any known level. The word must
+   * reside on the first line of the record.
+   * @return index of the matched level or {@code -1} if there is no such word or it doesn't match
+   */
+  private int matchWordAt(String record, int startPos) {
+    if (startPos >= record.length()
+        || (startPos > 0 && LevelAutomaton.classOf(record.charAt(startPos - 1)) >= 0)
+        || record.lastIndexOf('\n', startPos) != -1) {
+      return -1;
+    }
+    int state = LevelAutomaton.WORD_START;
+    for (int curPos = startPos; curPos < record.length(); curPos++) {
+      int charClass = LevelAutomaton.classOf(record.charAt(curPos));
+      if (charClass < 0) {
         break;
       }
+      state = levelAutomaton.next(state, charClass);
+      if (state == LevelAutomaton.MISMATCH) {
+        return -1;
+      }
     }
-    return firstMatchingLevelIdx;
+    return levelAutomaton.matchedLevelIndex(state);
   }
 
-  private static boolean isAlphaNum(char aChar) {
-    return (aChar >= 'A' && aChar <= 'Z')
-        || (aChar >= 'a' && aChar <= 'z')
-        || (aChar >= '0' && aChar <= '9')
-        || (aChar == '_');
+  /**
+   * A per-log memo of where the level was found in the log's previous record. Is meant to be held by a component
+   * processing the records of single log and therefore <em>is not thread safe</em>. The hint is best-effort though:
+   * the word at the hinted position is always checked anew, so an outdated hint costs a full scan only and never
+   * leads to a wrong level.
+   */
+  public static final class PositionHint {
+    private int levelStart = -1;
+
+    @Override
+    public String toString() {
+      return "PositionHint{levelStart=" + levelStart + '}';
+    }
   }
 
-  private static class LevelMatrix {
-    private final char[][] rows;
+  /**
+   * A deterministic finite automaton built as a trie of known levels' characters. Its states are the prefixes of the
+   * levels and its transitions are driven by the classes of word characters (the case is folded into the class when
+   * the detector is case insensitive). Each state knows which level (if any) the word is matched with if the word
+   * ends in this state.
+   */
+  private static class LevelAutomaton {
+    static final int WORD_START = 0;
+    static final int MISMATCH = -1;
+    /**
+     * Number of character classes: 'A'-'Z', 'a'-'z', '0'-'9' and '_'.
+     */
+    private static final int CLASS_COUNT = 26 + 26 + 10 + 1;
+    /**
+     * Classes of the ASCII characters; -1 stands for non-alphanumerical ones.
+     */
+    private static final byte[] CHAR_CLASSES = new byte[128];
+    static {
+      Arrays.fill(CHAR_CLASSES, (byte) -1);
+      byte charClass = 0;
+      for (char c = 'A'; c <= 'Z'; c++) {
+        CHAR_CLASSES[c] = charClass++;
+      }
+      for (char c = 'a'; c <= 'z'; c++) {
+        CHAR_CLASSES[c] = charClass++;
+      }
+      for (char c = '0'; c <= '9'; c++) {
+        CHAR_CLASSES[c] = charClass++;
+      }
+      CHAR_CLASSES['_'] = charClass;
+    }
+
     private final boolean isCaseSensitive;
+    /**
+     * Transition table: next state for {@code [state * CLASS_COUNT + charClass]} or {@link #MISMATCH} if there is no
+     * such transition.
+     */
+    private final int[] transitions;
+    /**
+     * Index of the level matched by the word ending in the state or {@code -1} if there is no such level.
+     */
+    private final int[] matchedLevels;
 
-    LevelMatrix(List<String> levels, boolean isCaseSensitive) {
-      rows = new char[levels.size()][];
+    LevelAutomaton(List<String> levels, boolean isCaseSensitive) {
       this.isCaseSensitive = isCaseSensitive;
-      int i = 0;
+      int maxStateCount = 1;
       for (String level : levels) {
-        rows[i++] = checkAndGetChars(level);
+        checkLevel(level);
+        maxStateCount += level.length();
       }
-    }
+      int[] transitions = new int[maxStateCount * CLASS_COUNT];
+      Arrays.fill(transitions, MISMATCH);
+      int[] depths = new int[maxStateCount];
+      // the first declared level that has the state's prefix; it is the only candidate the word is checked against
+      int[] firstLevels = new int[maxStateCount];
+      Arrays.fill(firstLevels, -1);
+      int stateCount = 1;
 
-    /**
-     * Checks {@code curChar} for the matching with levels at the {@code wordPos} position. The checking is done only
-     * for levels which have {@code true} at their indexes at {@code prevMatches}. The exclusion is made for the very
-     * first position only ({@code wordPos==0}) as there are no previous matched levels yet.
-     * @param curChar current character of the word being analyzed
-     * @param wordPos current position within the word being analyzed
-     * @param prevMatches the result of previous method call
-     * @return {@code prevMatches} where matched levels' indexes are set to {@code true} and other are {@code false}
-     */
-    boolean[] markMatchingLevels(char curChar, int wordPos, boolean[] prevMatches) {
-      for (int i = 0; i < prevMatches.length; i++) {
-        boolean prevMatch = prevMatches[i];
-        if (wordPos != 0 && !prevMatch)
-          continue;
-        char[] row = rows[i];
-        prevMatches[i] = (wordPos < row.length) && areCharsEqual(row[wordPos], curChar);
+      for (int levelIdx = 0; levelIdx < levels.size(); levelIdx++) {
+        String level = levels.get(levelIdx);
+        int state = WORD_START;
+        for (int pos = 0; pos < level.length(); pos++) {
+          int transitionIdx = state * CLASS_COUNT + foldCase(classOf(level.charAt(pos)));
+          if (transitions[transitionIdx] == MISMATCH) {
+            depths[stateCount] = pos + 1;
+            transitions[transitionIdx] = stateCount++;
+          }
+          state = transitions[transitionIdx];
+          if (firstLevels[state] == -1) {
+            firstLevels[state] = levelIdx;
+          }
+        }
       }
-      return prevMatches;
+
+      matchedLevels = new int[stateCount];
+      matchedLevels[WORD_START] = -1;
+      for (int state = 1; state < stateCount; state++) {
+        int firstLevel = firstLevels[state];
+        matchedLevels[state] = (levels.get(firstLevel).length() == depths[state])
+            ? firstLevel
+            : -1;
+      }
+      this.transitions = Arrays.copyOf(transitions, stateCount * CLASS_COUNT);
+    }
+
+    static int classOf(char aChar) {
+      return (aChar < 128)
+          ? CHAR_CLASSES[aChar]
+          : -1;
     }
 
-    int getLevelsCount() {
-      return rows.length;
+    int next(int state, int charClass) {
+      return transitions[state * CLASS_COUNT + foldCase(charClass)];
     }
 
-    boolean isLevelMatchesEntirely(int levelIdx, int wordPos) {
-      return (rows[levelIdx].length == wordPos);
+    int matchedLevelIndex(int state) {
+      return (state == MISMATCH)
+          ? -1
+          : matchedLevels[state];
     }
 
-    private boolean areCharsEqual(char a, char b) {
-      return isCaseSensitive
-          ? a == b
-          : toLowerCase(a) == toLowerCase(b);
+    /**
+     * Maps the classes of lower case letters onto the classes of upper case ones if the automaton is case insensitive.
+     */
+    private int foldCase(int charClass) {
+      return (!isCaseSensitive && charClass >= 26 && charClass < 52)
+          ? charClass - 26
+          : charClass;
     }
 
-    private char[] checkAndGetChars(String level) throws IllegalArgumentException {
-      char[] levelChars = level.toCharArray();
-      for (char levelChar : levelChars) {
-        if (!isAlphaNum(levelChar)) {
+    private static void checkLevel(String level) throws IllegalArgumentException {
+      for (char levelChar : level.toCharArray()) {
+        if (classOf(levelChar) < 0) {
           throw new IllegalArgumentException(format("Unable to initialize record level detector: level '%s' contains " +
               "non-alphanumerical character '%s'. Levels must contain the following characters only: " +
               "'A'-'Z', 'a'-'z', '_', '0'-'9'.", level, levelChar));
         }
       }
-      return levelChars;
     }
   }
 
@@ -0,0 +1,123 @@
+package tech.toparvion.analog.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tech.toparvion.analog.util.AnaLogUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pretty prints XML fragments of log records on demand, i.e. when the user expands a fragment that has been sent to
+ * the client as is. This is the counterpart of the lazy XML formatting mode in which the server doesn't format the
+ * fragments before sending so that its CPU consumption depends on what is actually viewed rather than on what is
+ * logged.<p>
+ * The same fragments tend to be expanded by several clients watching the same log, so the results are cached by the
+ * fragments' content; the least recently used results are evicted first. The cache is bounded by the total length of
+ * the cached fragments (both raw and formatted) rather than by their number as the fragments' lengths may differ by
+ * orders of magnitude.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+@Service
+public class XmlFormattingService {
+  private static final Logger log = LoggerFactory.getLogger(XmlFormattingService.class);
+
+  private final boolean isLazy;
+  private final int maxFragmentLength;
+  private final long cacheCapacity;
+  /**
+   * Pretty printed fragments keyed by the raw ones, in access order. Guarded by itself, as well as
+   * {@link #cachedLength}.
+   */
+  private final Map<String, String> cache = new LinkedHashMap<>(16, 0.75f, true);
+  /**
+   * Total length of the raw and formatted fragments in the cache.
+   */
+  private long cachedLength = 0L;
+
+  /**
+   * @param isLazy whether to send XML fragments as is and format them on demand only
+   * @param maxFragmentLength maximum length (in chars) of a fragment accepted for formatting
+   * @param cacheCapacity maximum total length (in chars) of the raw and formatted fragments to keep in the cache
+   */
+  @Autowired
+  public XmlFormattingService(@Value("${xml-formatting.lazy:false}") boolean isLazy,
+                              @Value("${xml-formatting.max-fragment-length:262144}") int maxFragmentLength,
+                              @Value("${xml-formatting.cache-capacity:4194304}") long cacheCapacity) {
+    this.isLazy = isLazy;
+    this.maxFragmentLength = maxFragmentLength;
+    this.cacheCapacity = cacheCapacity;
+    log.info("XML formatting is {} (max fragment length: {} chars, cache capacity: {} chars).",
+        isLazy ? "lazy" : "eager", maxFragmentLength, cacheCapacity);
+  }
+
+  /**
+   * @return {@code true} if XML fragments must be sent to clients as is to be formatted on demand
+   */
+  public boolean isLazy() {
+    return isLazy;
+  }
+
+  /**
+   * @return maximum length (in chars) of a fragment accepted for formatting
+   */
+  public int getMaxFragmentLength() {
+    return maxFragmentLength;
+  }
+
+  /**
+   * @param rawXml XML fragment as it was sent to the client
+   * @return pretty printed fragment or the fragment as is if it cannot be formatted
+   * @throws IllegalArgumentException if the fragment is longer than {@link #getMaxFragmentLength()}
+   */
+  public String format(String rawXml) {
+    if (rawXml.length() > maxFragmentLength) {
+      throw new IllegalArgumentException(String.format("XML fragment of %d chars is longer than allowed %d chars.",
+          rawXml.length(), maxFragmentLength));
+    }
+    synchronized (cache) {
+      String cached = cache.get(rawXml);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    // the formatting itself is done outside of the lock as it is the longest part
+    String formatted = AnaLogUtils.reindentXml(rawXml);
+    cache(rawXml, formatted);
+    return formatted;
+  }
+
+  private void cache(String rawXml, String formatted) {
+    long length = (long) rawXml.length() + formatted.length();
+    if (length > cacheCapacity) {
+      return;     // otherwise it would evict all the other fragments and then itself
+    }
+    synchronized (cache) {
+      String previous = cache.put(rawXml, formatted);
+      cachedLength += (previous == null)
+          ? length
+          : (formatted.length() - previous.length());   // the fragment has been formatted concurrently
+      Iterator<Map.Entry<String, String>> eldestFirst = cache.entrySet().iterator();
+      while (cachedLength > cacheCapacity) {
+        Map.Entry<String, String> eldest = eldestFirst.next();
+        cachedLength -= (long) eldest.getKey().length() + eldest.getValue().length();
+        eldestFirst.remove();
+      }
+    }
+  }
+
+  /**
+   * @return total length of the raw and formatted fragments in the cache
+   */
+  long getCachedLength() {
+    synchronized (cache) {
+      return cachedLength;
+    }
+  }
+}
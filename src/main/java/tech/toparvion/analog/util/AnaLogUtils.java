@@ -3,11 +3,7 @@ package tech.toparvion.analog.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
-import org.w3c.tidy.Tidy;
 
-import java.io.PrintWriter;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.util.List;
 import java.util.Optional;
 import java.util.regex.Matcher;
@@ -23,7 +19,6 @@ import static tech.toparvion.analog.remote.RemotingConstants.PLAIN_RECORD_LEVEL_
  */
 public class AnaLogUtils {
   private static final Logger log = LoggerFactory.getLogger(AnaLogUtils.class);
-  private static final Logger tidyLog = LoggerFactory.getLogger(Tidy.class);
   // шаблоны разбора
   private static final Pattern MESSAGE_LEVEL_EXTRACTOR = Pattern.compile("^[\\S ]*(FINE|TRACE|DEBUG|INFO|WARN|ERROR|FATAL)");
   private static final Pattern XML_OPEN_EXTRACTOR = Pattern.compile("<((?:\\w[\\w-]*:)?\\w[\\w-]*).*>");
@@ -41,6 +36,14 @@ public class AnaLogUtils {
 
   // TODO move the method to RecordSender or its harness
   public static String distinguishXml(List<String> rawLines, int startingLineIndex) {
+    return distinguishXml(rawLines, startingLineIndex, true);
+  }
+
+  /**
+   * @param isFormatting whether the distinguished XML should be pretty printed or left as is (e.g. to be formatted
+   *                     on demand later on)
+   */
+  public static String distinguishXml(List<String> rawLines, int startingLineIndex, boolean isFormatting) {
     String startingLine = rawLines.get(startingLineIndex);
     Matcher xmlOpenMatcher = XML_OPEN_EXTRACTOR.matcher(startingLine);
     if (!xmlOpenMatcher.find()) {
@@ -48,15 +51,16 @@ public class AnaLogUtils {
     }
     String openTagName = xmlOpenMatcher.group(1);
     int startPositionForXmlCloseSearch = xmlOpenMatcher.end(1);
-    Pattern xmlCloseExtractor = Pattern.compile("</" + openTagName + ">");
+    // the tag name consists of word chars, dashes and colons only, so no pattern is needed to find the close tag
+    String xmlCloseTag = "</" + openTagName + ">";
 
     // пытаемся отдельно обработать ПЕРВУЮ СТРОКУ
-    Matcher xmlCloseMatcher = xmlCloseExtractor.matcher(startingLine);
-    if (xmlCloseMatcher.find(startPositionForXmlCloseSearch)) {            // значит, весь XML "упрятан" в одной строке
+    int xmlCloseTagIndex = startingLine.indexOf(xmlCloseTag, startPositionForXmlCloseSearch);
+    if (xmlCloseTagIndex != -1) {            // значит, весь XML "упрятан" в одной строке
       int xmlOpenIndex = xmlOpenMatcher.start(1) - 1;
-      int xmlCloseIndex = xmlCloseMatcher.end();
+      int xmlCloseIndex = xmlCloseTagIndex + xmlCloseTag.length();
       String xml = startingLine.substring(xmlOpenIndex, xmlCloseIndex);
-      xml = reindentXml(xml);
+      xml = isFormatting ? reindentXml(xml) : xml;
       boolean lineHasNonXmlBeginning = (xmlOpenIndex != 0);
       boolean lineHasNonXmlEnding = (xmlCloseIndex < startingLine.length());
       if (lineHasNonXmlEnding) {
@@ -84,8 +88,7 @@ public class AnaLogUtils {
         break;
       }
       accumulator.append(curLine);
-      xmlCloseMatcher = xmlCloseExtractor.matcher(curLine);
-      if (xmlCloseMatcher.find()) {
+      if (curLine.contains(xmlCloseTag)) {
         isXmlCloseTagFound = true;
         break;
       }
@@ -97,13 +100,11 @@ public class AnaLogUtils {
     }
     // если найден закрывающий тег
     // (1) удаляем старое "растянутое" представление XML
-    for (int j = startingLineIndex + 1; j <= i; j++) {
-      rawLines.remove(startingLineIndex + 1);
-    }
+    rawLines.subList(startingLineIndex + 1, i + 1).clear();
     // (2) подготавливаем XML-строку к вставке и вставляем ее
     String accumulatedString = accumulator.toString();
     int xmlOpenIndex = xmlOpenMatcher.start(1) - 1;
-    int xmlCloseIndex = accumulatedString.lastIndexOf(xmlCloseMatcher.group()) + xmlCloseMatcher.group().length();
+    int xmlCloseIndex = accumulatedString.lastIndexOf(xmlCloseTag) + xmlCloseTag.length();
     boolean lineHasNonXmlBeginning = (xmlOpenIndex != 0);
     boolean lineHasNonXmlEnding = (xmlCloseIndex < accumulatedString.length());
     if (lineHasNonXmlEnding) {
@@ -115,10 +116,10 @@ public class AnaLogUtils {
       String nonXmlBeginning = accumulatedString.substring(0, xmlOpenIndex);
       rawLines.set(startingLineIndex, nonXmlBeginning);
       accumulatedString = accumulatedString.substring(xmlOpenIndex, accumulatedString.length());
-      accumulatedString = reindentXml(accumulatedString);
+      accumulatedString = isFormatting ? reindentXml(accumulatedString) : accumulatedString;
       rawLines.add(startingLineIndex + 1, accumulatedString);
     } else {
-      accumulatedString = reindentXml(accumulatedString);
+      accumulatedString = isFormatting ? reindentXml(accumulatedString) : accumulatedString;
       rawLines.set(startingLineIndex, accumulatedString);
     }
 
@@ -127,6 +128,14 @@ public class AnaLogUtils {
 
   // TODO move the method to RecordSender or its harness
   public static String distinguishXml4Group(List<String> rawLines, int startingLineIndex) {
+    return distinguishXml4Group(rawLines, startingLineIndex, true);
+  }
+
+  /**
+   * @param isFormatting whether the distinguished XML should be pretty printed or left as is (e.g. to be formatted
+   *                     on demand later on)
+   */
+  public static String distinguishXml4Group(List<String> rawLines, int startingLineIndex, boolean isFormatting) {
     String startingLine = rawLines.get(startingLineIndex);
     if (startingLine.startsWith("__XML__")) {   // if the line marker as XML before
       return startingLine;
@@ -137,15 +146,16 @@ public class AnaLogUtils {
     }
     String openTagName = xmlOpenMatcher.group(1);
     int startPositionForXmlCloseSearch = xmlOpenMatcher.end(1);
-    Pattern xmlCloseExtractor = Pattern.compile("</" + openTagName + ">");
+    // the tag name consists of word chars, dashes and colons only, so no pattern is needed to find the close tag
+    String xmlCloseTag = "</" + openTagName + ">";
 
     // пытаемся отдельно обработать ПЕРВУЮ СТРОКУ
-    Matcher xmlCloseMatcher = xmlCloseExtractor.matcher(startingLine);
-    if (xmlCloseMatcher.find(startPositionForXmlCloseSearch)) {            // значит, весь XML "упрятан" в одной строке
+    int xmlCloseTagIndex = startingLine.indexOf(xmlCloseTag, startPositionForXmlCloseSearch);
+    if (xmlCloseTagIndex != -1) {            // значит, весь XML "упрятан" в одной строке
       int xmlOpenIndex = xmlOpenMatcher.start(1) - 1;
-      int xmlCloseIndex = xmlCloseMatcher.end();
+      int xmlCloseIndex = xmlCloseTagIndex + xmlCloseTag.length();
       String xml = startingLine.substring(xmlOpenIndex, xmlCloseIndex);
-      xml = reindentXml(xml);
+      xml = isFormatting ? reindentXml(xml) : xml;
       xml = prefix(xml);      // to mark the start of XML string among other records' strings
       boolean lineHasNonXmlBeginning = (xmlOpenIndex != 0);
       boolean lineHasNonXmlEnding = (xmlCloseIndex < startingLine.length());
@@ -170,8 +180,7 @@ public class AnaLogUtils {
     while (i < rawLines.size()) {
       String curLine = rawLines.get(i);
       accumulator.append(curLine);
-      xmlCloseMatcher = xmlCloseExtractor.matcher(curLine);
-      if (xmlCloseMatcher.find()) {
+      if (curLine.contains(xmlCloseTag)) {
         isXmlCloseTagFound = true;
         break;
       }
@@ -188,13 +197,11 @@ public class AnaLogUtils {
     }
     // если найден закрывающий тег
     // (1) удаляем старое "растянутое" представление XML
-    for (int j = startingLineIndex + 1; j <= i; j++) {
-      rawLines.remove(startingLineIndex + 1);
-    }
+    rawLines.subList(startingLineIndex + 1, i + 1).clear();
     // (2) подготавливаем XML-строку к вставке и вставляем ее
     String accumulatedString = accumulator.toString();
     int xmlOpenIndex = xmlOpenMatcher.start(1) - 1;
-    int xmlCloseIndex = accumulatedString.lastIndexOf(xmlCloseMatcher.group()) + xmlCloseMatcher.group().length();
+    int xmlCloseIndex = accumulatedString.lastIndexOf(xmlCloseTag) + xmlCloseTag.length();
     boolean lineHasNonXmlBeginning = (xmlOpenIndex != 0);
     boolean lineHasNonXmlEnding = (xmlCloseIndex < accumulatedString.length());
     if (lineHasNonXmlEnding) {
@@ -206,12 +213,12 @@ public class AnaLogUtils {
       String nonXmlBeginning = accumulatedString.substring(0, xmlOpenIndex);
       rawLines.set(startingLineIndex, nonXmlBeginning);
       accumulatedString = accumulatedString.substring(xmlOpenIndex, accumulatedString.length());
-      accumulatedString = reindentXml(accumulatedString);
+      accumulatedString = isFormatting ? reindentXml(accumulatedString) : accumulatedString;
       accumulatedString = prefix(accumulatedString);
 
       rawLines.add(startingLineIndex + 1, accumulatedString);
     } else {
-      accumulatedString = reindentXml(accumulatedString);
+      accumulatedString = isFormatting ? reindentXml(accumulatedString) : accumulatedString;
       accumulatedString = prefix(accumulatedString);
       rawLines.set(startingLineIndex, accumulatedString);
     }
@@ -223,36 +230,38 @@ public class AnaLogUtils {
     return "__XML__" + stringToPrefix;
   }
 
-  private static String reindentXml(String rawSourceXml) {
-    Tidy tidy = new Tidy();
-    StringWriter outputWriter = new StringWriter();
-    tidy.setOutputEncoding("UTF-8");
-    tidy.setXmlTags(true);
-    tidy.setXmlOut(true);
-    tidy.setIndentAttributes(false);
-    // tidy.setSmartIndent(true); // excess
-    tidy.setWraplen(150);
-    tidy.setWrapAttVals(true);
-    tidy.setErrout(new PrintWriter(new StringWriter() /* <- just a stub, isn't used actually */) {
-      @Override
-      public void write(@SuppressWarnings("NullableProblems") String s) {
-        tidyLog.info(s);      // we consider Tidy as auxiliary component so that its warnings are info for us
-      }
-    });
-    // tidy.setOnlyErrors(true);    // leads to undesirable Tidy behavior and therefore is turned off
-
-    final StringReader inputReader = new StringReader(rawSourceXml);
-    tidy.parse(inputReader, outputWriter);
-    String prettyPrintedSourceXml = outputWriter.toString();
-    inputReader.close();
-    if ("".equals(prettyPrintedSourceXml)) {
+  /**
+   * @param rawSourceXml XML fragment to pretty print
+   * @return pretty printed fragment or the fragment as is if it cannot be formatted
+   */
+  public static String reindentXml(String rawSourceXml) {
+    String prettyPrintedSourceXml = XmlFormatter.format(rawSourceXml);
+    if (prettyPrintedSourceXml == null) {
       log.warn(String.format("Failed to pretty print XML started with '%s'. Falling back to raw string.",
-              rawSourceXml.substring(0, Math.max(rawSourceXml.length(), 19))));
+              rawSourceXml.substring(0, Math.min(rawSourceXml.length(), 19))));
       return rawSourceXml;
     }
     else return prettyPrintedSourceXml;
   }
 
+  /**
+   * Finds how many leading lines of a record are free of XML, i.e. can be styled without XML processing. Relies upon
+   * the same pattern as {@link #distinguishXml(List, int)} and {@link #distinguishXml4Group(List, int)} do, so the
+   * lines counted here would be left intact by those methods.
+   * @param lines lines of a record
+   * @return index of the first line that may contain XML or the number of lines if there is no such line
+   */
+  public static int countLinesBeforeXml(List<String> lines) {
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      // the cheap check goes first as the vast majority of lines have no '<' at all
+      if (line.indexOf('<') != -1 && XML_OPEN_EXTRACTOR.matcher(line).find()) {
+        return i;
+      }
+    }
+    return lines.size();
+  }
+
   public static String checkIfXml(String curLine) {
     Matcher xmlMatcher = WHOLE_XML_EXTRACTOR.matcher(curLine);
     if (xmlMatcher.find()) {
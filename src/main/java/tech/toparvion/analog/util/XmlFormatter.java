@@ -0,0 +1,312 @@
+package tech.toparvion.analog.util;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A lightweight formatter (pretty printer) of XML fragments found in log records. Unlike general purpose tools, it
+ * doesn't build any DOM or validate the document; instead, it tokenizes the fragment in a single pass into a minimal
+ * tree of nodes and then renders the tree with 2 spaces indentation by the following rules:
+ * <ul>
+ *   <li>an element containing text only (or nothing at all) is rendered on a single line;</li>
+ *   <li>an element containing other elements is rendered with its children on separate lines, while its
+ *   whitespace-only text is dropped;</li>
+ *   <li>attribute values are always enclosed into double quotes;</li>
+ *   <li>comments, CDATA sections, processing instructions and declarations are kept as is.</li>
+ * </ul>
+ * Every line of the result (including the last one) ends with {@code '\n'}.<p>
+ * Fragments nested deeper than {@value #MAX_DEPTH} levels are not formatted at all, and the elements deeper than
+ * {@value #MAX_INDENTED_DEPTH} levels get the same indentation as the elements at that level. Both limits keep the
+ * cost of formatting proportional to the fragment's length, no matter how the fragment is nested.<p>
+ * The class is stateless and thread-safe.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public final class XmlFormatter {
+  /**
+   * Maximum nesting depth of elements the formatter accepts; it also bounds the recursion depth of the rendering.
+   */
+  static final int MAX_DEPTH = 256;
+  /**
+   * Maximum nesting depth of elements to reflect in indentation; without it the total length of indentation would
+   * grow as square of the depth.
+   */
+  static final int MAX_INDENTED_DEPTH = 32;
+  private static final String INDENTATION = "  ".repeat(MAX_INDENTED_DEPTH);
+
+  private XmlFormatter() {
+  }
+
+  /**
+   * @param xml an XML fragment, e.g. a single document
+   * @return formatted fragment or {@code null} if the fragment is not well-formed enough to be formatted or is nested
+   * deeper than {@value #MAX_DEPTH} levels
+   */
+  @Nullable
+  public static String format(String xml) {
+    Element root = parse(xml);
+    if (root == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(xml.length() + xml.length() / 2);
+    for (Object node : root.children) {
+      render(node, 0, sb);
+    }
+    return sb.toString();
+  }
+
+  //<editor-fold desc="Parsing">
+  /**
+   * @return a synthetic element holding the top level nodes of the fragment or {@code null} if the fragment is
+   * malformed or too deep
+   */
+  @Nullable
+  private static Element parse(String xml) {
+    Element root = new Element("", "", false);
+    List<Element> stack = new ArrayList<>();
+    stack.add(root);
+    int pos = 0;
+    int length = xml.length();
+    while (pos < length) {
+      Element parent = stack.get(stack.size() - 1);
+      if (xml.charAt(pos) != '<') {
+        int textEnd = xml.indexOf('<', pos);
+        if (textEnd == -1) {
+          textEnd = length;
+        }
+        parent.children.add(new Text(xml.substring(pos, textEnd)));
+        pos = textEnd;
+        continue;
+      }
+      if (xml.startsWith("<!--", pos)) {
+        int end = xml.indexOf("-->", pos + 4);
+        if (end == -1) {
+          return null;
+        }
+        parent.children.add(new Markup(xml.substring(pos, end + 3)));
+        pos = end + 3;
+
+      } else if (xml.startsWith("<![CDATA[", pos)) {
+        int end = xml.indexOf("]]>", pos + 9);
+        if (end == -1) {
+          return null;
+        }
+        parent.children.add(new Text(xml.substring(pos, end + 3)));
+        pos = end + 3;
+
+      } else if (xml.startsWith("<?", pos)) {
+        int end = xml.indexOf("?>", pos + 2);
+        if (end == -1) {
+          return null;
+        }
+        parent.children.add(new Markup(xml.substring(pos, end + 2)));
+        pos = end + 2;
+
+      } else if (xml.startsWith("<!", pos)) {
+        int end = xml.indexOf('>', pos + 2);
+        if (end == -1) {
+          return null;
+        }
+        parent.children.add(new Markup(xml.substring(pos, end + 1)));
+        pos = end + 1;
+
+      } else if (xml.startsWith("</", pos)) {
+        int end = xml.indexOf('>', pos + 2);
+        if (end == -1 || stack.size() == 1 || !xml.substring(pos + 2, end).strip().equals(parent.name)) {
+          return null;
+        }
+        stack.remove(stack.size() - 1);
+        pos = end + 1;
+
+      } else {
+        pos = parseStartTag(xml, pos, parent, stack);
+        if (pos == -1) {
+          return null;
+        }
+      }
+    }
+    return (stack.size() == 1)
+        ? root
+        : null;     // some elements are left unclosed
+  }
+
+  /**
+   * @return the position right after the tag or {@code -1} if the tag is malformed or opens too deep an element
+   */
+  private static int parseStartTag(String xml, int tagStart, Element parent, List<Element> stack) {
+    int pos = tagStart + 1;
+    int nameEnd = skipName(xml, pos);
+    if (nameEnd == pos) {
+      return -1;
+    }
+    String name = xml.substring(pos, nameEnd);
+    StringBuilder attributes = new StringBuilder();
+    pos = nameEnd;
+    while (true) {
+      pos = skipWhitespace(xml, pos);
+      if (pos >= xml.length()) {
+        return -1;
+      }
+      if (xml.startsWith("/>", pos)) {
+        parent.children.add(new Element(name, attributes.toString(), true));
+        return pos + 2;
+      }
+      if (xml.charAt(pos) == '>') {
+        if (stack.size() > MAX_DEPTH) {    // the stack includes the synthetic root
+          return -1;
+        }
+        Element element = new Element(name, attributes.toString(), false);
+        parent.children.add(element);
+        stack.add(element);
+        return pos + 1;
+      }
+      int attrNameEnd = skipName(xml, pos);
+      if (attrNameEnd == pos) {
+        return -1;
+      }
+      attributes.append(' ').append(xml, pos, attrNameEnd);
+      pos = skipWhitespace(xml, attrNameEnd);
+      if (pos >= xml.length() || xml.charAt(pos) != '=') {
+        continue;           // an attribute without value
+      }
+      pos = skipWhitespace(xml, pos + 1);
+      if (pos >= xml.length()) {
+        return -1;
+      }
+      char quote = xml.charAt(pos);
+      int valueStart;
+      int valueEnd;
+      if (quote == '"' || quote == '\'') {
+        valueStart = pos + 1;
+        valueEnd = xml.indexOf(quote, valueStart);
+        if (valueEnd == -1) {
+          return -1;
+        }
+        pos = valueEnd + 1;
+      } else {
+        valueStart = pos;
+        valueEnd = pos;
+        while (valueEnd < xml.length() && !Character.isWhitespace(xml.charAt(valueEnd))
+            && xml.charAt(valueEnd) != '>' && !xml.startsWith("/>", valueEnd)) {
+          valueEnd++;
+        }
+        pos = valueEnd;
+      }
+      attributes.append("=\"");
+      for (int i = valueStart; i < valueEnd; i++) {
+        char c = xml.charAt(i);
+        if (c == '"') {
+          attributes.append("&quot;");
+        } else {
+          attributes.append(c);
+        }
+      }
+      attributes.append('"');
+    }
+  }
+
+  private static int skipName(String xml, int pos) {
+    while (pos < xml.length()) {
+      char c = xml.charAt(pos);
+      if (Character.isWhitespace(c) || c == '>' || c == '/' || c == '=' || c == '<') {
+        break;
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+  private static int skipWhitespace(String xml, int pos) {
+    while (pos < xml.length() && Character.isWhitespace(xml.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="Rendering">
+  private static void render(Object node, int depth, StringBuilder sb) {
+    if (node instanceof Element) {
+      renderElement((Element) node, depth, sb);
+      return;
+    }
+    String content = (node instanceof Text)
+        ? ((Text) node).content.strip()
+        : ((Markup) node).content;
+    if (!content.isEmpty()) {
+      indent(depth, sb).append(content).append('\n');
+    }
+  }
+
+  private static void renderElement(Element element, int depth, StringBuilder sb) {
+    indent(depth, sb).append('<').append(element.name).append(element.attributes);
+    if (element.isSelfClosing) {
+      sb.append(" />\n");
+      return;
+    }
+    sb.append('>');
+    if (element.hasTextOnly()) {
+      for (Object child : element.children) {
+        sb.append(((Text) child).content);
+      }
+    } else {
+      sb.append('\n');
+      for (Object child : element.children) {
+        render(child, depth + 1, sb);
+      }
+      indent(depth, sb);
+    }
+    sb.append("</").append(element.name).append(">\n");
+  }
+
+  private static StringBuilder indent(int depth, StringBuilder sb) {
+    return sb.append(INDENTATION, 0, Math.min(depth, MAX_INDENTED_DEPTH) * 2);
+  }
+  //</editor-fold>
+
+  private static final class Element {
+    final String name;
+    /**
+     * Attributes already normalized for output, each one prepended with a space.
+     */
+    final String attributes;
+    final boolean isSelfClosing;
+    final List<Object> children = new ArrayList<>();
+
+    Element(String name, String attributes, boolean isSelfClosing) {
+      this.name = name;
+      this.attributes = attributes;
+      this.isSelfClosing = isSelfClosing;
+    }
+
+    boolean hasTextOnly() {
+      for (Object child : children) {
+        if (!(child instanceof Text)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Either character data or CDATA section.
+   */
+  private static final class Text {
+    final String content;
+
+    Text(String content) {
+      this.content = content;
+    }
+  }
+
+  private static final class Markup {
+    final String content;
+
+    Markup(String content) {
+      this.content = content;
+    }
+  }
+}
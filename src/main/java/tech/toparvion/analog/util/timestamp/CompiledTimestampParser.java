@@ -0,0 +1,262 @@
+package tech.toparvion.analog.util.timestamp;
+
+import javax.annotation.Nullable;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * A fast alternative to the pair of regex pattern and {@link DateTimeFormatter} for the timestamp formats consisting
+ * of fixed-width numeric fields only, e.g. {@code yyyy-MM-dd HH:mm:ss,SSS}. Such a format is compiled into a template
+ * of the timestamp where every position is either a literal character or a digit. The template is then matched
+ * against the line and the digits are decoded right in place, in a single pass and without any allocations.<p>
+ * Supported fields are {@code yyyy/uuuu, yy/uu, MM, dd, HH, mm, ss} and {@code S} (1 to 9 letters); quoting is
+ * supported as well. Formats with any other fields (e.g. text ones like {@code MMM} or {@code EEE}) or with variable
+ * width fields (like {@code d}) can't be compiled and must be handled by the regex and the formatter.<p>
+ * The parsed timestamps are represented as epoch milliseconds of the local date-time taken at UTC, i.e. the same way
+ * they are eventually converted on the server side. If the format has no date, the current date is assumed (just
+ * like {@link TimestampExtractor} does).<p>
+ * Instances are immutable and thread-safe.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public class CompiledTimestampParser {
+  /**
+   * Returned by {@link #parse(CharSequence)} when the line contains no valid timestamp.
+   */
+  public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  /**
+   * Template marker of a position that must contain a digit.
+   */
+  private static final char DIGIT = '\0';
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+  private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000,
+      100_000_000, 1_000_000_000};
+
+  private enum Field {YEAR, YEAR_REDUCED, MONTH, DAY, HOUR, MINUTE, SECOND, FRACTION}
+
+  private final String format;
+  private final char[] template;
+  private final Field[] fields;
+  private final int[] fieldOffsets;
+  private final int[] fieldWidths;
+  private final boolean hasDate;
+
+  private CompiledTimestampParser(String format, char[] template, Field[] fields, int[] fieldOffsets,
+                                  int[] fieldWidths) {
+    this.format = format;
+    this.template = template;
+    this.fields = fields;
+    this.fieldOffsets = fieldOffsets;
+    this.fieldWidths = fieldWidths;
+    boolean hasYear = false, hasMonth = false, hasDay = false;
+    for (Field field : fields) {
+      hasYear |= (field == Field.YEAR || field == Field.YEAR_REDUCED);
+      hasMonth |= (field == Field.MONTH);
+      hasDay |= (field == Field.DAY);
+    }
+    this.hasDate = hasYear && hasMonth && hasDay;
+  }
+
+  /**
+   * Tries to compile given format.
+   * @param format timestamp format in the {@link DateTimeFormatter} syntax
+   * @return compiled parser or {@code null} if the format contains fields not supported by this parser
+   */
+  @Nullable
+  public static CompiledTimestampParser compile(String format) {
+    StringBuilder template = new StringBuilder(format.length());
+    Field[] fields = new Field[format.length()];
+    int[] offsets = new int[format.length()];
+    int[] widths = new int[format.length()];
+    int fieldsCount = 0;
+    boolean isQuoting = false;
+
+    for (int i = 0; i < format.length(); i++) {
+      char curChar = format.charAt(i);
+      if (curChar == '\'') {
+        if (i < format.length() - 1 && format.charAt(i + 1) == '\'') {
+          template.append('\'');          // escaped quote char
+          i++;
+        } else {
+          isQuoting = !isQuoting;
+        }
+        continue;
+      }
+      if (isQuoting) {
+        template.append(curChar);
+        continue;
+      }
+      if ("[]{}#".indexOf(curChar) != -1) {
+        return null;                        // optional sections and reserved chars are beyond the template notion
+      }
+      if (!Character.isLetter(curChar)) {
+        template.append(curChar);
+        continue;
+      }
+      int width = 1;
+      while (i + width < format.length() && format.charAt(i + width) == curChar) {
+        width++;
+      }
+      Field field = toField(curChar, width);
+      if (field == null) {
+        return null;
+      }
+      fields[fieldsCount] = field;
+      offsets[fieldsCount] = template.length();
+      widths[fieldsCount] = width;
+      fieldsCount++;
+      template.append(String.valueOf(DIGIT).repeat(width));
+      i += width - 1;
+    }
+    if (fieldsCount == 0) {
+      return null;
+    }
+    return new CompiledTimestampParser(format, template.toString().toCharArray(), Arrays.copyOf(fields, fieldsCount),
+        Arrays.copyOf(offsets, fieldsCount), Arrays.copyOf(widths, fieldsCount));
+  }
+
+  @Nullable
+  private static Field toField(char letter, int width) {
+    return switch (letter) {
+      case 'y', 'u' -> (width == 4) ? Field.YEAR : (width == 2) ? Field.YEAR_REDUCED : null;
+      case 'M' -> (width == 2) ? Field.MONTH : null;
+      case 'd' -> (width == 2) ? Field.DAY : null;
+      case 'H' -> (width == 2) ? Field.HOUR : null;
+      case 'm' -> (width == 2) ? Field.MINUTE : null;
+      case 's' -> (width == 2) ? Field.SECOND : null;
+      case 'S' -> (width <= 9) ? Field.FRACTION : null;
+      default -> null;
+    };
+  }
+
+  /**
+   * Finds the first occurrence of the timestamp in given line and converts it into epoch milliseconds.
+   * @param line single line of log
+   * @return epoch milliseconds of the found timestamp or {@link #NO_TIMESTAMP} if there is no valid one
+   */
+  public long parse(CharSequence line) {
+    int lastStart = line.length() - template.length;
+    for (int start = 0; start <= lastStart; start++) {
+      if (matchesAt(line, start)) {
+        long millis = decodeAt(line, start);
+        if (millis != NO_TIMESTAMP) {
+          return millis;
+        }
+      }
+    }
+    return NO_TIMESTAMP;
+  }
+
+  /**
+   * The same as {@link #parse(CharSequence)} but expects the timestamp at the very beginning of the line only.
+   * @param line single line of log
+   * @return epoch milliseconds of the timestamp or {@link #NO_TIMESTAMP} if the line doesn't start with a valid one
+   */
+  public long parseAtStart(CharSequence line) {
+    return (line.length() >= template.length && matchesAt(line, 0))
+        ? decodeAt(line, 0)
+        : NO_TIMESTAMP;
+  }
+
+  private boolean matchesAt(CharSequence line, int start) {
+    for (int i = 0; i < template.length; i++) {
+      char expected = template[i];
+      char actual = line.charAt(start + i);
+      if (expected == DIGIT) {
+        if (actual < '0' || actual > '9') {
+          return false;
+        }
+      } else if (actual != expected) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long decodeAt(CharSequence line, int start) {
+    int year = 1970, month = 1, day = 1, hour = 0, minute = 0, second = 0;
+    long millisOfSecond = 0;
+    for (int f = 0; f < fields.length; f++) {
+      int width = fieldWidths[f];
+      int value = decodeDigits(line, start + fieldOffsets[f], width);
+      switch (fields[f]) {
+        case YEAR -> year = value;
+        case YEAR_REDUCED -> year = 2000 + value;
+        case MONTH -> month = value;
+        case DAY -> day = value;
+        case HOUR -> hour = value;
+        case MINUTE -> minute = value;
+        case SECOND -> second = value;
+        case FRACTION -> millisOfSecond = (width <= 3)
+            ? (long) value * POWERS_OF_TEN[3 - width]
+            : value / POWERS_OF_TEN[width - 3];
+      }
+    }
+    if (hour > 23 || minute > 59 || second > 59) {
+      return NO_TIMESTAMP;
+    }
+    long epochDay;
+    if (hasDate) {
+      if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+        return NO_TIMESTAMP;
+      }
+      epochDay = toEpochDay(year, month, day);
+    } else {
+      epochDay = LocalDate.now(Clock.systemDefaultZone()).toEpochDay();
+    }
+    return epochDay * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * 1000L + millisOfSecond;
+  }
+
+  private static int decodeDigits(CharSequence line, int offset, int width) {
+    int value = 0;
+    for (int i = offset; i < offset + width; i++) {
+      value = value * 10 + (line.charAt(i) - '0');
+    }
+    return value;
+  }
+
+  private static int lengthOfMonth(int year, int month) {
+    return switch (month) {
+      case 2 -> isLeapYear(year) ? 29 : 28;
+      case 4, 6, 9, 11 -> 30;
+      default -> 31;
+    };
+  }
+
+  private static boolean isLeapYear(int year) {
+    return (year % 4 == 0) && ((year % 100 != 0) || (year % 400 == 0));
+  }
+
+  /**
+   * The same algorithm as in {@link LocalDate#toEpochDay()}, just without creating the date object.
+   */
+  private static long toEpochDay(int year, int month, int day) {
+    long y = year;
+    long total = 365 * y;
+    if (y >= 0) {
+      total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+    } else {
+      total -= y / -4 - y / -100 + y / -400;
+    }
+    total += ((367 * month - 362) / 12);
+    total += day - 1;
+    if (month > 2) {
+      total--;
+      if (!isLeapYear(year)) {
+        total--;
+      }
+    }
+    return total - 719_528L;     // days from 0000 to 1970
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledTimestampParser{" +
+        "format='" + format + '\'' +
+        '}';
+  }
+}
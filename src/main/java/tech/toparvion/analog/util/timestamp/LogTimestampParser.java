@@ -0,0 +1,126 @@
+package tech.toparvion.analog.util.timestamp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import tech.toparvion.analog.util.timestamp.TimestampExtractor.PatternAndFormatter;
+
+import javax.annotation.Nullable;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.regex.Matcher;
+
+/**
+ * Timestamp parser {@linkplain TimestampExtractor#bindTo(String) bound} to a particular log. Holds the parsing means
+ * resolved from the {@link TimestampExtractor}'s registry once upon creation of the log's tracking flow so that the
+ * lines can be parsed without looking up the registry (and thus without composing the log path) for every line.<p>
+ * Instances are immutable and thread-safe.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+public final class LogTimestampParser {
+  private static final Logger log = LoggerFactory.getLogger(LogTimestampParser.class);
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+
+  private final String logPath;
+  @Nullable
+  private final CompiledTimestampParser compiledParser;
+  @Nullable
+  private final TimestampPrefilter prefilter;
+  private final PatternAndFormatter paf;
+  /**
+   * Whether the timestamps are sought at the very beginning of the lines only.
+   */
+  private final boolean isAnchored;
+
+  LogTimestampParser(String logPath,
+                     @Nullable CompiledTimestampParser compiledParser,
+                     @Nullable TimestampPrefilter prefilter,
+                     PatternAndFormatter paf,
+                     boolean isAnchored) {
+    this.logPath = logPath;
+    this.compiledParser = compiledParser;
+    this.prefilter = prefilter;
+    this.paf = paf;
+    this.isAnchored = isAnchored;
+  }
+
+  /**
+   * Message-based counterpart of {@link #extractTimestampMillis(String)} suitable for header enrichers.
+   * @param lineMessage a message wrapping single line of the log
+   * @return epoch milliseconds of the line's timestamp or {@code null} in case of parsing fail
+   */
+  @Nullable
+  public Long extractTimestampMillis(Message<String> lineMessage) {
+    long epochMillis = extractTimestampMillis(lineMessage.getPayload());
+    return (epochMillis != TimestampExtractor.NO_TIMESTAMP)
+        ? epochMillis
+        : null;
+  }
+
+  /**
+   * @param line single line of the log
+   * @return epoch milliseconds of the line's local timestamp taken at UTC or {@link TimestampExtractor#NO_TIMESTAMP}
+   * in case of parsing fail
+   */
+  public long extractTimestampMillis(String line) {
+    if (line.startsWith("\tat ")) {
+      // a kind of short-hand way to avoid wasting time on analyzing lines of java stack traces
+      return TimestampExtractor.NO_TIMESTAMP;
+    }
+    if (compiledParser != null) {
+      return isAnchored
+          ? compiledParser.parseAtStart(line)
+          : compiledParser.parse(line);
+    }
+    if (prefilter != null && !prefilter.mayContain(line, isAnchored)) {
+      return TimestampExtractor.NO_TIMESTAMP;
+    }
+
+    Matcher timestampMatcher = paf.getPattern().matcher(line);
+    boolean isFound = isAnchored
+        ? timestampMatcher.lookingAt()
+        : timestampMatcher.find();
+    if (!isFound) {
+      return TimestampExtractor.NO_TIMESTAMP;
+      // TODO есть проблема: если число таких записей без метки будет слишком велико, то выделяющий записи агрегатор
+      //  выпустит их без "головы", то есть без предшествующей записи с меткой. Из-за этого на принимающей стороне их,
+      //  возможно, будет трудно куда-либо определить. Нужно подумать, как это победить, и есть ли такая проблема.
+    }
+
+    String tsString = timestampMatcher.group();
+    DateTimeFormatter formatter = paf.getFormatter();
+    // the string is parsed only once; the date and the time are then queried separately as the former may be absent
+    TemporalAccessor parsed;
+    try {
+      parsed = formatter.parse(tsString);
+    } catch (DateTimeException e) {
+      log.debug("Unable to parse timestamp string '{}' with formatter '{}'.", tsString, formatter, e);
+      return TimestampExtractor.NO_TIMESTAMP;
+    }
+    LocalTime parsedTime = parsed.query(TemporalQueries.localTime());
+    if (parsedTime == null) {
+      log.debug("Timestamp string '{}' parsed with formatter '{}' contains no time.", tsString, formatter);
+      return TimestampExtractor.NO_TIMESTAMP;
+    }
+    LocalDate parsedDate = parsed.query(TemporalQueries.localDate());
+    if (parsedDate == null) {
+      // in case no date specified in timestamp format, AnaLog supposes the date to be equal to the current one
+      parsedDate = LocalDate.now(Clock.systemDefaultZone());
+    }
+    return parsedDate.toEpochDay() * MILLIS_PER_DAY + parsedTime.toNanoOfDay() / 1_000_000L;
+  }
+
+  @Override
+  public String toString() {
+    return "LogTimestampParser{" +
+        "logPath='" + logPath + '\'' +
+        ", compiledParser=" + compiledParser +
+        ", prefilter=" + prefilter +
+        ", isAnchored=" + isAnchored +
+        '}';
+  }
+}
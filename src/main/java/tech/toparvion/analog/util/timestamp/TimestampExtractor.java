@@ -6,15 +6,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
 
 import javax.annotation.Nullable;
 import java.io.File;
-import java.time.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Locale;
-import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import static java.lang.String.format;
@@ -41,17 +41,64 @@ public class TimestampExtractor {
    * localized logs in production environments (AFAIK).
    */
   public static final Locale DEFAULT_TIMESTAMP_PARSER_LOCALE = Locale.ENGLISH;
+  /**
+   * Returned by {@link LogTimestampParser#extractTimestampMillis(String)} when the line contains no timestamp.
+   */
+  public static final long NO_TIMESTAMP = CompiledTimestampParser.NO_TIMESTAMP;
+  /**
+   * How many records of the logs that are not tracked anymore are kept in the registry in case the logs are requested
+   * again. The least recently released records are evicted first.
+   */
+  static final int MAX_IDLE_RECORDS = 64;
+
   private final DateFormat2RegexConverter converter;
   /**
-   * Registry of compiled regex patterns and pre-built dateTime formatters for known logs. Registry records aren't
-   * deleted upon unregistration of corresponding watchers.
+   * Registry of compiled regex patterns and pre-built dateTime formatters for known logs. Records are written upon
+   * creation of tracking flows and read by tailing threads. Registry records are reference counted: every
+   * {@linkplain #registerNewTimestampFormat(String, String) registration} must be paired with
+   * {@linkplain #unregisterTimestampFormat(String) unregistration}. Records without references are not deleted
+   * immediately but are kept among {@link #MAX_IDLE_RECORDS} most recently released ones.
    * Keys are log paths and values are {@linkplain PatternAndFormatter tuples} of prepared objects.
    */
-  private final Map<String, PatternAndFormatter> registry = new HashMap<>();
+  private final Map<String, PatternAndFormatter> registry = new ConcurrentHashMap<>();
+  /**
+   * Registry of {@linkplain CompiledTimestampParser compiled parsers} for those logs whose timestamp formats can be
+   * compiled. Such logs are parsed with these parsers instead of the patterns and formatters from the main registry.
+   */
+  private final Map<String, CompiledTimestampParser> compiledParsers = new ConcurrentHashMap<>();
+  /**
+   * Registry of {@linkplain TimestampPrefilter prefilters} for the logs parsed with patterns and formatters. Allows
+   * to skip the pattern matching for the lines that definitely have no timestamp.
+   */
+  private final Map<String, TimestampPrefilter> prefilters = new ConcurrentHashMap<>();
+
+  //<editor-fold desc="Registry lifecycle state (guarded by this)">
+  /**
+   * Numbers of tracking flows using the registry records.
+   */
+  private final Map<String, Integer> referenceCounts = new HashMap<>();
+  /**
+   * Log paths of the records without references, in the order of their release.
+   */
+  private final Set<String> idleLogPaths = new LinkedHashSet<>();
+  //</editor-fold>
+  /**
+   * Whether the timestamps are sought at the very beginning of the lines only.
+   */
+  private final boolean isAnchored;
 
   @Autowired
-  public TimestampExtractor(DateFormat2RegexConverter converter) {
+  public TimestampExtractor(DateFormat2RegexConverter converter, TrackingProperties trackingProperties) {
+    this.converter = converter;
+    this.isAnchored = trackingProperties.isTimestampAnchored();
+  }
+
+  /**
+   * Creates the extractor seeking timestamps anywhere in the lines.
+   */
+  TimestampExtractor(DateFormat2RegexConverter converter) {
     this.converter = converter;
+    this.isAnchored = false;
   }
 
   /**
@@ -62,17 +109,69 @@ public class TimestampExtractor {
    * @param format log timestamp format in the {@link DateTimeFormatter} syntax
    * @param logPath target log path to associate created objects with
    */
-  public void registerNewTimestampFormat(String format, String logPath) {
+  public synchronized void registerNewTimestampFormat(String format, String logPath) {
     if (registry.containsKey(logPath)) {
-      log.debug("Extractor registry already has record '{}' for logPath='{}'. Skip registration.", format, logPath);
+      int references = addReference(logPath);
+      log.debug("Extractor registry already has record '{}' for logPath='{}' (references: {}). Skip registration.",
+          format, logPath, references);
       return;
     }
     Pattern pattern = converter.convertToRegex(format);
     DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format)
                                                    .withLocale(DEFAULT_TIMESTAMP_PARSER_LOCALE);
-    log.info("For logPath='{}' and its format='{}' new registry record was created: pattern='{}', formatter='{}'",
-        logPath, format, pattern, formatter);
+    CompiledTimestampParser compiledParser = CompiledTimestampParser.compile(format);
+    log.info("For logPath='{}' and its format='{}' new registry record was created: pattern='{}', formatter='{}', " +
+            "compiledParser={}", logPath, format, pattern, formatter, compiledParser);
+    if (compiledParser != null) {
+      compiledParsers.put(logPath, compiledParser);
+    } else {
+      prefilters.put(logPath, TimestampPrefilter.of(format));
+    }
     registry.put(logPath, new PatternAndFormatter(pattern, formatter));
+    // the reference is counted only after the record is created as the format may turn out to be invalid
+    addReference(logPath);
+  }
+
+  private int addReference(String logPath) {
+    idleLogPaths.remove(logPath);
+    return referenceCounts.merge(logPath, 1, Integer::sum);
+  }
+
+  /**
+   * Releases one reference to the registry record of given log. The record without references becomes idle and may
+   * be evicted from the registry later on.
+   * @param logPath log path as it was specified upon {@linkplain #registerNewTimestampFormat(String, String)
+   *                registration}
+   */
+  public synchronized void unregisterTimestampFormat(String logPath) {
+    Integer references = referenceCounts.computeIfPresent(logPath, (path, count) -> (count > 1) ? (count - 1) : null);
+    if (references != null) {
+      log.debug("Extractor registry record for logPath='{}' is still referenced {} time(s).", logPath, references);
+      return;
+    }
+    idleLogPaths.add(logPath);
+    log.debug("Extractor registry record for logPath='{}' has become idle.", logPath);
+    for (Iterator<String> iterator = idleLogPaths.iterator(); idleLogPaths.size() > MAX_IDLE_RECORDS; ) {
+      String evictedLogPath = iterator.next();
+      iterator.remove();
+      registry.remove(evictedLogPath);
+      compiledParsers.remove(evictedLogPath);
+      prefilters.remove(evictedLogPath);
+      log.debug("Idle extractor registry record for logPath='{}' has been evicted.", evictedLogPath);
+    }
+  }
+
+  /**
+   * @param logPath log path as it was specified upon {@linkplain #registerNewTimestampFormat(String, String)
+   *                registration}
+   * @return the pattern to find timestamps in lines of given log or {@code null} if the log is not registered
+   */
+  @Nullable
+  public Pattern findPattern(String logPath) {
+    PatternAndFormatter paf = registry.get(logPath);
+    return (paf != null)
+        ? paf.getPattern()
+        : null;
   }
 
   /**
@@ -82,9 +181,27 @@ public class TimestampExtractor {
    * Otherwise returns {@code null}.
    * @param lineMessage a message wrapping single line of log
    * @return parsed line's timestamp or {@code null} in case of parsing fail
+   * @see #extractTimestampMillis(Message)
    */
   @Nullable
   public LocalDateTime extractTimestamp(Message<String> lineMessage) {
+    Long epochMillis = extractTimestampMillis(lineMessage);
+    return (epochMillis != null)
+        ? LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000L),
+                                      (int) Math.floorMod(epochMillis, 1000L) * 1_000_000, ZoneOffset.UTC)
+        : null;
+  }
+
+  /**
+   * The same as {@link #extractTimestamp(Message)} but represents the timestamp as epoch milliseconds of the local
+   * date-time taken at UTC. This is the form the timestamps are carried through the tracking pipeline in.<p>
+   * The log's registry record is looked up by the message's file header upon every call, so the tracking flows use
+   * the parsers {@linkplain #bindTo(String) bound} to their logs instead.
+   * @param lineMessage a message wrapping single line of log
+   * @return parsed line's timestamp or {@code null} in case of parsing fail
+   */
+  @Nullable
+  public Long extractTimestampMillis(Message<String> lineMessage) {
     String line = lineMessage.getPayload();
     if (line.startsWith("\tat ")) {
       // a kind of short-hand way to avoid wasting time on analyzing lines of java stack traces
@@ -93,32 +210,23 @@ public class TimestampExtractor {
 
     File logFile = lineMessage.getHeaders().get(ORIGINAL_FILE, File.class);
     Assert.isTrue(logFile != null, "lineMessage doesn't contain 'file_originalFile' header; check tailAdapter.");
+    return bindTo(convertToUnixStyle(logFile.getAbsolutePath()))
+        .extractTimestampMillis(lineMessage);
+  }
 
-    String logPath = convertToUnixStyle(logFile.getAbsolutePath());
+  /**
+   * Resolves the registry record of given log into a parser dedicated to that log. Is intended to be called once per
+   * tracking flow so that the flow's lines are parsed without any registry lookups. Unlike
+   * {@link #extractTimestampMillis(Message)}, the resulting parser doesn't need the lines to carry the log file header.
+   * @param logPath log path as it was specified upon {@linkplain #registerNewTimestampFormat(String, String)
+   *                registration}
+   * @return timestamp parser for the lines of given log
+   * @throws IllegalArgumentException if the log is not registered
+   */
+  public LogTimestampParser bindTo(String logPath) {
     PatternAndFormatter paf = registry.get(logPath);
-    Assert.isTrue(paf != null, format("Log path '%s' is not registered but its line message was received.", logPath));
-
-    Matcher timestampMatcher = paf.getPattern().matcher(line);
-    if (!timestampMatcher.find()) {
-      return null;
-      // TODO есть проблема: если число таких записей без метки будет слишком велико, то выделяющий записи агрегатор
-      //  выпустит их без "головы", то есть без предшествующей записи с меткой. Из-за этого на принимающей стороне их,
-      //  возможно, будет трудно куда-либо определить. Нужно подумать, как это победить, и есть ли такая проблема.
-    }
-
-    String tsString = timestampMatcher.group();
-    DateTimeFormatter formatter = paf.getFormatter();
-    LocalDateTime parsedTimestamp;
-    try {
-      parsedTimestamp = formatter.parse(tsString, LocalDateTime::from);
-    } catch (DateTimeException e) {
-      log.debug("Unable to parse timestamp string '{}' with formatter '{}'.", tsString, formatter, e);
-      // in case no date specified in timestamp format, AnaLog supposes the date to be equal to the current one
-      LocalTime parsedTime = formatter.parse(tsString, LocalTime::from);
-      parsedTimestamp = LocalDateTime.of(LocalDate.now(Clock.systemDefaultZone()), parsedTime);
-    }
-
-    return parsedTimestamp;
+    Assert.isTrue(paf != null, () -> format("Log path '%s' is not registered in timestamp extractor.", logPath));
+    return new LogTimestampParser(logPath, compiledParsers.get(logPath), prefilters.get(logPath), paf, isAnchored);
   }
 
   static class PatternAndFormatter {
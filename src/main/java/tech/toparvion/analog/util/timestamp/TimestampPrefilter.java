@@ -0,0 +1,145 @@
+package tech.toparvion.analog.util.timestamp;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A cheap preliminary check of whether a line may contain a timestamp of given format. Is derived from the format
+ * and consists of
+ * <ul>
+ *   <li>the minimal length of the timestamp;</li>
+ *   <li>the classes of characters (digit, letter or exact literal) expected at fixed offsets from the timestamp's
+ *   beginning, i.e. up to the first field of variable width.</li>
+ * </ul>
+ * The lines rejected by the prefilter are guaranteed not to match the format's regex so that the latter can be
+ * skipped for them. This matters for the logs with deep stack traces where continuation lines prevail.<p>
+ * Instances are immutable and thread-safe.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class TimestampPrefilter {
+  private static final char DIGIT = '\0';
+  private static final char WORD = '\1';
+  /**
+   * Letters the {@link DateFormat2RegexConverter} treats as fields; the rest are literals.
+   */
+  private static final String FIELD_LETTERS = "uyMLdEahKkHmsSn";
+  private static final String TEXT_LETTERS = "LEa";
+  private static final String NUMBER_LETTERS = "MdhKkHmsn";
+
+  private final int minLength;
+  /**
+   * Expected character classes of the timestamp's fixed-offset prefix: either a literal char or one of the markers.
+   */
+  private final char[] prefix;
+
+  private TimestampPrefilter(int minLength, char[] prefix) {
+    this.minLength = minLength;
+    this.prefix = prefix;
+  }
+
+  /**
+   * Derives a prefilter from given format in the same way as {@link DateFormat2RegexConverter} derives the regex.
+   * @param format timestamp format in the {@link DateTimeFormatter} syntax
+   * @return prefilter for the timestamps of given format
+   */
+  static TimestampPrefilter of(String format) {
+    StringBuilder prefix = new StringBuilder(format.length());
+    boolean isPrefixComplete = false;
+    int minLength = 0;
+    boolean isQuoting = false;
+
+    for (int i = 0; i < format.length(); i++) {
+      char curChar = format.charAt(i);
+      if (curChar == '\'') {
+        if (i < format.length() - 1 && format.charAt(i + 1) == '\'') {
+          i++;                              // escaped quote char is a literal
+        } else {
+          isQuoting = !isQuoting;
+          continue;
+        }
+      }
+      if (isQuoting || FIELD_LETTERS.indexOf(curChar) == -1) {
+        minLength++;                        // a literal (including any letter unknown to the converter)
+        if (!isPrefixComplete) {
+          prefix.append(curChar);
+        }
+        continue;
+      }
+      int width = 1;
+      while (i + width < format.length() && format.charAt(i + width) == curChar) {
+        width++;
+      }
+      i += width - 1;
+      // the widths mirror the presentations of DateFormat2RegexConverter in order not to reject what its regex accepts
+      char charClass;
+      int fixedWidth;                       // -1 stands for variable width of at least one char
+      if (TEXT_LETTERS.indexOf(curChar) != -1) {
+        charClass = WORD;
+        fixedWidth = (width <= 3) ? width : (width == 5) ? 1 : -1;
+      } else {
+        charClass = DIGIT;
+        fixedWidth = (width == 1 && NUMBER_LETTERS.indexOf(curChar) != -1) ? -1 : width;
+      }
+      minLength += Math.max(fixedWidth, 1);
+      if (!isPrefixComplete) {
+        prefix.append(String.valueOf(charClass).repeat(Math.max(fixedWidth, 1)));
+        isPrefixComplete = (fixedWidth == -1);
+      }
+    }
+    return new TimestampPrefilter(minLength, prefix.toString().toCharArray());
+  }
+
+  /**
+   * @param line     a line to check
+   * @param anchored whether the timestamp may reside at the very beginning of the line only
+   * @return {@code false} if the line definitely contains no timestamp; {@code true} if it may contain one
+   */
+  boolean mayContain(CharSequence line, boolean anchored) {
+    int lastStart = line.length() - minLength;
+    if (lastStart < 0) {
+      return false;
+    }
+    if (anchored) {
+      return matchesAt(line, 0);
+    }
+    for (int start = 0; start <= lastStart; start++) {
+      if (matchesAt(line, start)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean matchesAt(CharSequence line, int start) {
+    for (int i = 0; i < prefix.length; i++) {
+      char expected = prefix[i];
+      char actual = line.charAt(start + i);
+      switch (expected) {
+        case DIGIT:
+          if (actual < '0' || actual > '9') {
+            return false;
+          }
+          break;
+        case WORD:        // [\w\x20] in terms of regex; may be wider but not narrower
+          if (!(Character.isLetterOrDigit(actual) || actual == '_' || actual == ' ')) {
+            return false;
+          }
+          break;
+        default:
+          if (actual != expected) {
+            return false;
+          }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "TimestampPrefilter{" +
+        "minLength=" + minLength +
+        ", prefix='" + new String(prefix).replace(DIGIT, '#').replace(WORD, '@') + '\'' +
+        '}';
+  }
+}
@@ -1,4 +1,4 @@
-app.factory('renderingService', ['$log', '$interval', 'config', function($log, $interval, config) {
+app.factory('renderingService', ['$log', '$interval', '$http', 'config', function($log, $interval, $http, config) {
     var $window = $(window);
     var $document = $(document);
     var $body = $('body');
@@ -43,11 +43,7 @@ app.factory('renderingService', ['$log', '$interval', 'config', function($log, $
         angular.forEach(newPart.lines, function (line) {
             let $messageLine;
             if (line.style === 'XML') {
-                let $code = $("<code></code>")
-                    .addClass("xml")
-                    .html(line.text);
-                $messageLine = $("<pre></pre>").append($code);
-                hljs.highlightBlock($messageLine[0]);
+                $messageLine = renderXml(line);
             } else {
                 $messageLine = $("<div></div>")
                     .addClass(line.style)
@@ -90,12 +86,7 @@ app.factory('renderingService', ['$log', '$interval', 'config', function($log, $
                     .addClass(line.style)
                     .html(line.text);
             } else {
-                let $code = $("<code></code>")
-                    .addClass("xml")
-                    .html(line.text);
-                $messageLine = $("<pre></pre>")
-                    .append($code);
-                hljs.highlightBlock($messageLine[0]);
+                $messageLine = renderXml(line);
             }
             $recordsBunch.append($messageLine);
         });
@@ -103,6 +94,36 @@ app.factory('renderingService', ['$log', '$interval', 'config', function($log, $
         renderingQueue.push($recordsBunch);
     }
 
+    /**
+     * Renders XML line either as is (if it's been formatted by the server) or with an ability to format it on demand
+     * (if the server sent it raw in lazy XML formatting mode)
+     */
+    function renderXml(line) {
+        let $code = $("<code></code>")
+            .addClass("xml")
+            .html(line.text);
+        let $messageLine = $("<pre></pre>")
+            .append($code);
+        hljs.highlightBlock($messageLine[0]);
+        if (line.raw) {
+            $messageLine
+                .addClass('raw-xml')
+                .attr('title', 'Click to format')
+                .one('click', function () {
+                    $http.post('/xml/pretty', $code.text(), {headers: {'Content-Type': 'text/plain'}})
+                        .then(function (response) {
+                            $code.text(response.data);
+                            hljs.highlightBlock($messageLine[0]);
+                            $messageLine.removeClass('raw-xml')
+                                .removeAttr('title');
+                        }, function (response) {
+                            $log.error("Failed to format XML: %o", response);
+                        });
+                });
+        }
+        return $messageLine;
+    }
+
     /**
      * Animated output logic
      */
@@ -0,0 +1,49 @@
+package tech.toparvion.analog.controller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import tech.toparvion.analog.service.XmlFormattingService;
+
+import static org.springframework.http.MediaType.TEXT_PLAIN;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class XmlControllerTest {
+  private static final int MAX_FRAGMENT_LENGTH = 64;
+
+  private final MockMvc mockMvc = standaloneSetup(
+      new XmlController(new XmlFormattingService(true, MAX_FRAGMENT_LENGTH, 1024))).build();
+
+  @Test
+  @DisplayName("Fragment is pretty printed")
+  void prettyPrint() throws Exception {
+    mockMvc.perform(post("/xml/pretty").contentType(TEXT_PLAIN).content("<a><b>1</b></a>"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("<a>\n  <b>1</b>\n</a>\n"));
+  }
+
+  @Test
+  @DisplayName("Malformed fragment is returned as is")
+  void malformedFragment() throws Exception {
+    mockMvc.perform(post("/xml/pretty").contentType(TEXT_PLAIN).content("<a><b>1</a>"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("<a><b>1</a>"));
+  }
+
+  @Test
+  @DisplayName("Fragment longer than the limit is rejected")
+  void tooLongFragment() throws Exception {
+    String fragment = "<a>" + "x".repeat(MAX_FRAGMENT_LENGTH - 7) + "</a>";
+    mockMvc.perform(post("/xml/pretty").contentType(TEXT_PLAIN).content(fragment))
+        .andExpect(status().isOk());
+    mockMvc.perform(post("/xml/pretty").contentType(TEXT_PLAIN).content(fragment + " "))
+        .andExpect(status().isPayloadTooLarge());
+  }
+}
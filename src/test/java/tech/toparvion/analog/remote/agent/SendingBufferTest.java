@@ -0,0 +1,156 @@
+package tech.toparvion.analog.remote.agent;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.GenericMessage;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties.Sending;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties.Sending.OverflowPolicy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static java.util.Collections.nCopies;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The drain tasks are run manually here so that the buffers' state between the tasks is deterministic.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class SendingBufferTest {
+  private static final String DISCONNECT_NOTICE = "disconnected";
+
+  private final Deque<Runnable> drainTasks = new ArrayDeque<>();
+  private final List<Object> sentPayloads = new ArrayList<>();
+
+  @Test
+  @DisplayName("Producer is never blocked, and the oldest messages are evicted on overflow")
+  void dropOldest() {
+    SendingBuffer sut = createBuffer(OverflowPolicy.DROP_OLDEST, 4, this::send);
+    handle(sut, 0, 20);
+
+    assertThat(sut.getReceivedCount()).isEqualTo(20);
+    assertThat(sut.getDroppedCount()).isEqualTo(16);
+    assertThat(drainTasks).hasSize(1);
+    runDrainTasks();
+    assertThat(sentPayloads).containsExactly(16, 17, 18, 19);
+    assertThat(sut.getSentCount()).isEqualTo(4);
+  }
+
+  @Test
+  @DisplayName("Only every n-th of the overflowing messages is kept in sample mode")
+  void sample() {
+    SendingBuffer sut = createBuffer(OverflowPolicy.SAMPLE, 4, this::send);
+    handle(sut, 0, 20);     // 16 messages overflow of which 5 are kept (evicting the oldest ones)
+
+    assertThat(sut.getDroppedCount()).isEqualTo(16);
+    runDrainTasks();
+    assertThat(sentPayloads).containsExactly(9, 12, 15, 18);
+  }
+
+  @Test
+  @DisplayName("Overflow in disconnect mode drops all the messages and sends the disconnect notice once")
+  void disconnect() {
+    SendingBuffer sut = createBuffer(OverflowPolicy.DISCONNECT, 4, this::send);
+    handle(sut, 0, 10);
+
+    assertThat(sut.isDisconnected()).isTrue();
+    assertThat(sut.getDroppedCount()).isEqualTo(10);
+    runDrainTasks();
+    handle(sut, 10, 11);
+    runDrainTasks();
+    assertThat(sentPayloads).containsExactly(DISCONNECT_NOTICE);
+    assertThat(sut.getDroppedCount()).isEqualTo(11);
+  }
+
+  @Test
+  @DisplayName("Disconnect notice is sent even if the disconnection happens during a drain task")
+  void disconnectDuringDrain() {
+    SendingBuffer[] sut = new SendingBuffer[1];
+    sut[0] = createBuffer(OverflowPolicy.DISCONNECT, 2, message -> {
+      send(message);
+      if (message.getPayload().equals(0)) {
+        handle(sut[0], 1, 4);      // the drain task is still running at this moment
+      }
+    });
+    handle(sut[0], 0, 1);
+    runDrainTasks();
+
+    assertThat(sentPayloads).containsExactly(0, DISCONNECT_NOTICE);
+  }
+
+  @Test
+  @DisplayName("Buffers sharing the same executor are drained in turn")
+  void fairDraining() {
+    List<String> sentNames = new ArrayList<>();
+    SendingBuffer busy = createBuffer(OverflowPolicy.DROP_OLDEST, 1000, message -> sentNames.add("busy"));
+    SendingBuffer quiet = createBuffer(OverflowPolicy.DROP_OLDEST, 1000, message -> sentNames.add("quiet"));
+    handle(busy, 0, 300);
+    handle(quiet, 0, 1);
+    runDrainTasks();
+
+    List<String> expected = new ArrayList<>(nCopies(256, "busy"));
+    expected.add("quiet");
+    expected.addAll(nCopies(44, "busy"));
+    assertThat(sentNames).isEqualTo(expected);
+  }
+
+  @Test
+  @DisplayName("Failed sending is counted and doesn't prevent the next messages from being sent")
+  void failedSending() {
+    SendingBuffer sut = createBuffer(OverflowPolicy.DROP_OLDEST, 4, message -> {
+      if (message.getPayload().equals(1)) {
+        throw new IllegalStateException("Emulated failure");
+      }
+      send(message);
+    });
+    handle(sut, 0, 3);
+    runDrainTasks();
+
+    assertThat(sentPayloads).containsExactly(0, 2);
+    assertThat(sut.getFailedCount()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Closed buffer sends nothing")
+  void closed() {
+    SendingBuffer sut = createBuffer(OverflowPolicy.DROP_OLDEST, 4, this::send);
+    handle(sut, 0, 3);
+    sut.close();
+    runDrainTasks();
+    handle(sut, 3, 4);
+
+    assertThat(sentPayloads).isEmpty();
+    assertThat(drainTasks).isEmpty();
+  }
+
+  private SendingBuffer createBuffer(OverflowPolicy overflowPolicy, int capacity, MessageHandler sender) {
+    Sending params = new Sending();
+    params.setBufferCapacity(capacity);
+    params.setOverflowPolicy(overflowPolicy);
+    params.setSampleRate(3);
+    return new SendingBuffer("test", sender, drainTasks::add, params, new GenericMessage<>(DISCONNECT_NOTICE));
+  }
+
+  private static void handle(SendingBuffer buffer, int fromInclusive, int toExclusive) {
+    for (int i = fromInclusive; i < toExclusive; i++) {
+      buffer.handleMessage(new GenericMessage<>(i));
+    }
+  }
+
+  private void runDrainTasks() {
+    Runnable task;
+    while ((task = drainTasks.poll()) != null) {
+      task.run();
+    }
+  }
+
+  private void send(Message<?> message) {
+    sentPayloads.add(message.getPayload());
+  }
+}
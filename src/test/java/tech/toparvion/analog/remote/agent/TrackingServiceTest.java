@@ -0,0 +1,106 @@
+package tech.toparvion.analog.remote.agent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.integration.dsl.context.IntegrationFlowContext;
+import org.springframework.messaging.support.GenericMessage;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties.Sending;
+import tech.toparvion.analog.model.config.entry.LogPath;
+import tech.toparvion.analog.model.config.entry.LogType;
+import tech.toparvion.analog.model.remote.TrackingRequest;
+import tech.toparvion.analog.remote.agent.tailing.TailingFlowProvider;
+import tech.toparvion.analog.remote.stream.RecordStreamClients;
+import tech.toparvion.analog.util.timestamp.TimestampExtractor;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static tech.toparvion.analog.remote.agent.TrackingService.SENDING_FLOW_TAG;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class TrackingServiceTest {
+  private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+
+  private final TimestampExtractor timestampExtractor = mock(TimestampExtractor.class);
+  private final TailingFlowProvider trackingFlowProvider = mock(TailingFlowProvider.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final TrackingService sut = new TrackingService(mock(IntegrationFlowContext.class), timestampExtractor,
+      trackingFlowProvider, mock(RecordStreamClients.class), new TrackingProperties(), meterRegistry,
+      new StaticMessageSource());
+
+  @AfterEach
+  void tearDown() {
+    sut.shutdown();
+  }
+
+  @Test
+  @DisplayName("Timestamp format is unregistered if the group flow fails to be created")
+  void failedGroupFlowCreation() {
+    when(trackingFlowProvider.provideGroupFlow(any(), anyBoolean(), any()))
+        .thenThrow(new IllegalStateException("Emulated failure"));
+    TrackingRequest request = new TrackingRequest(composeLogPath(), TIMESTAMP_FORMAT, "group>app.log", true);
+
+    assertThatThrownBy(() -> sut.registerWatcher(request, new InetSocketAddress("angara", 7801), null))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("Emulated failure");
+    verify(timestampExtractor).registerNewTimestampFormat(TIMESTAMP_FORMAT, "/home/upc/app.log");
+    verify(timestampExtractor).unregisterTimestampFormat("/home/upc/app.log");
+  }
+
+  @Test
+  @DisplayName("Sending buffer meters are tagged with the sending flow and removed along with it")
+  void sendingMeters() {
+    Deque<Runnable> drainTasks = new ArrayDeque<>();
+    Sending params = new Sending();
+    params.setBufferCapacity(2);
+    SendingBuffer first = new SendingBuffer("first", message -> { }, drainTasks::add, params,
+        new GenericMessage<>("disconnected"));
+    SendingBuffer second = new SendingBuffer("second", message -> { }, drainTasks::add, params,
+        new GenericMessage<>("disconnected"));
+    sut.registerSendingMeters("first", first);
+    sut.registerSendingMeters("second", second);
+    for (int i = 0; i < 3; i++) {
+      first.handleMessage(new GenericMessage<>(i));
+    }
+
+    assertThat(meterRegistry.get("analog.sending.received").tag(SENDING_FLOW_TAG, "first").functionCounter().count())
+        .isEqualTo(3);
+    assertThat(meterRegistry.get("analog.sending.dropped").tag(SENDING_FLOW_TAG, "first").functionCounter().count())
+        .isEqualTo(1);
+    assertThat(meterRegistry.get("analog.sending.queued").tag(SENDING_FLOW_TAG, "first").gauge().value())
+        .isEqualTo(2);
+    drainTasks.poll().run();
+    assertThat(meterRegistry.get("analog.sending.sent").tag(SENDING_FLOW_TAG, "first").functionCounter().count())
+        .isEqualTo(2);
+    assertThat(meterRegistry.get("analog.sending.queued").tag(SENDING_FLOW_TAG, "first").gauge().value())
+        .isEqualTo(0);
+    assertThat(meterRegistry.get("analog.sending.received").tag(SENDING_FLOW_TAG, "second").functionCounter().count())
+        .isEqualTo(0);
+
+    sut.removeSendingMeters("first");
+    assertThat(meterRegistry.find("analog.sending.received").tag(SENDING_FLOW_TAG, "first").meters()).isEmpty();
+    assertThat(meterRegistry.find("analog.sending.failed").tag(SENDING_FLOW_TAG, "second").meters()).hasSize(1);
+  }
+
+  private static LogPath composeLogPath() {
+    LogPath logPath = new LogPath();
+    logPath.setType(LogType.NODE);
+    logPath.setNode("angara");
+    logPath.setTarget("/home/upc/app.log");
+    logPath.setFullPath("node://angara/home/upc/app.log");
+    return logPath;
+  }
+}
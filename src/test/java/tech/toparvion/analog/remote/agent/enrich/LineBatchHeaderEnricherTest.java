@@ -0,0 +1,99 @@
+package tech.toparvion.analog.remote.agent.enrich;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.support.AbstractIntegrationMessageBuilder;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import tech.toparvion.analog.model.config.RecordLevelsProperties;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+import tech.toparvion.analog.service.RecordLevelDetector;
+import tech.toparvion.analog.util.timestamp.DateFormat2RegexConverter;
+import tech.toparvion.analog.util.timestamp.TimestampExtractor;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.integration.IntegrationMessageHeaderAccessor.CORRELATION_ID;
+import static tech.toparvion.analog.remote.RemotingConstants.*;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class LineBatchHeaderEnricherTest {
+  private static final String LOG_PATH = "/home/upc/app.log";
+  private static final String CUSTOM_HEADER = "custom";
+  private static final List<String> BATCH = List.of(
+      "orphan",
+      "2020-06-23 00:29:42,123 ERROR Failed",
+      "\tat com.example.Foo.bar(Foo.java:42)",
+      "2020-06-23 00:29:43,456 Started");
+
+  @Test
+  @DisplayName("Every line of the batch gets the headers the per-line enrichers would give it")
+  void enrichBatch() {
+    LineBatchHeaderEnricher sut = createEnricher();
+
+    List<Message<String>> lineMessages = sut.enrichBatch(batchMessage()).stream()
+        .map(AbstractIntegrationMessageBuilder::build)
+        .collect(toList());
+
+    assertThat(lineMessages).extracting(Message::getPayload).isEqualTo(BATCH);
+    assertThat(lineMessages.get(0).getHeaders()).doesNotContainKeys(LOG_TIMESTAMP_VALUE__HEADER, RECORD_LEVEL__HEADER);
+    assertThat(lineMessages.get(1).getHeaders())
+        .containsEntry(RECORD_LEVEL__HEADER, "ERROR")
+        .containsKey(LOG_TIMESTAMP_VALUE__HEADER);
+    assertThat(lineMessages.get(2).getHeaders()).doesNotContainKeys(LOG_TIMESTAMP_VALUE__HEADER, RECORD_LEVEL__HEADER);
+    assertThat(lineMessages.get(3).getHeaders()).containsEntry(RECORD_LEVEL__HEADER, PLAIN_RECORD_LEVEL_NAME);
+    // the lines of the same record share the same correlationId
+    List<Object> correlationIds = lineMessages.stream()
+        .map(lineMessage -> lineMessage.getHeaders().get(CORRELATION_ID))
+        .collect(toList());
+    assertThat(correlationIds).doesNotContainNull();
+    assertThat(correlationIds.get(1)).isEqualTo(correlationIds.get(2));
+    assertThat(correlationIds.get(1)).isNotEqualTo(correlationIds.get(0));
+    assertThat(correlationIds.get(3)).isNotEqualTo(correlationIds.get(1));
+  }
+
+  @Test
+  @DisplayName("Only the record heads of the batch get the headers composed, along with the batch's own ones")
+  void composeHeadHeaders() {
+    LineBatchHeaderEnricher sut = createEnricher();
+    MessageHeaders batchHeaders = batchMessage().getHeaders();
+
+    assertThat(sut.composeHeadHeaders(BATCH.get(0), batchHeaders)).isNull();
+    MessageHeaders firstHeadHeaders = sut.composeHeadHeaders(BATCH.get(1), batchHeaders);
+    assertThat(sut.composeHeadHeaders(BATCH.get(2), batchHeaders)).isNull();
+    MessageHeaders secondHeadHeaders = sut.composeHeadHeaders(BATCH.get(3), batchHeaders);
+
+    assertThat(firstHeadHeaders).isNotNull();
+    assertThat(firstHeadHeaders)
+        .containsEntry(CUSTOM_HEADER, "value")
+        .containsEntry(RECORD_LEVEL__HEADER, "ERROR")
+        .containsKeys(LOG_TIMESTAMP_VALUE__HEADER, CORRELATION_ID);
+    assertThat(secondHeadHeaders).isNotNull();
+    assertThat(secondHeadHeaders).containsEntry(RECORD_LEVEL__HEADER, PLAIN_RECORD_LEVEL_NAME);
+    assertThat((Long) secondHeadHeaders.get(LOG_TIMESTAMP_VALUE__HEADER))
+        .isEqualTo((Long) firstHeadHeaders.get(LOG_TIMESTAMP_VALUE__HEADER) + 1333L);
+    assertThat(secondHeadHeaders.get(CORRELATION_ID)).isNotEqualTo(firstHeadHeaders.get(CORRELATION_ID));
+  }
+
+  private static LineBatchHeaderEnricher createEnricher() {
+    TimestampExtractor timestampExtractor = new TimestampExtractor(new DateFormat2RegexConverter(),
+        new TrackingProperties());
+    timestampExtractor.registerNewTimestampFormat("yyyy-MM-dd HH:mm:ss,SSS", LOG_PATH);
+    RecordLevelsProperties levelsProperties = new RecordLevelsProperties();
+    levelsProperties.setRecordLevels(List.of("ERROR", "WARN", "INFO"));
+    return new LineBatchHeaderEnricher(timestampExtractor.bindTo(LOG_PATH),
+        new RecordLevelDetector(levelsProperties, true));
+  }
+
+  private static Message<List<String>> batchMessage() {
+    return MessageBuilder.withPayload(BATCH)
+        .setHeader(CUSTOM_HEADER, "value")
+        .build();
+  }
+}
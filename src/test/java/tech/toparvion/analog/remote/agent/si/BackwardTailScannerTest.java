@@ -0,0 +1,113 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static tech.toparvion.analog.remote.agent.si.RecordHeadMatcher.EVERY_LINE;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class BackwardTailScannerTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  @DisplayName("Last N lines are found regardless of the trailing line terminator")
+  void lastLines() throws IOException {
+    assertEquals("c\nd\n", scanTail("a\nb\nc\nd\n", 2, EVERY_LINE));
+    assertEquals("c\nd", scanTail("a\nb\nc\nd", 2, EVERY_LINE));
+    assertEquals("b\r\nc\r\n", scanTail("a\r\nb\r\nc\r\n", 2, EVERY_LINE));
+  }
+
+  @Test
+  @DisplayName("The whole file is returned when it contains fewer lines than requested")
+  void fewerLinesThanRequested() throws IOException {
+    assertEquals("a\nb\n", scanTail("a\nb\n", 10, EVERY_LINE));
+    assertEquals("", scanTail("", 10, EVERY_LINE));
+  }
+
+  @Test
+  @DisplayName("Zero tail size produces empty tail")
+  void zeroTailSize() throws IOException {
+    assertEquals("", scanTail("a\nb\n", 0, EVERY_LINE));
+  }
+
+  @Test
+  @DisplayName("Records are counted by their heads only")
+  void lastRecords() throws IOException {
+    var content = "#1 first\n\tat line\n#2 second\n\tat line\n\tat line\n#3 third\n";
+    RecordHeadMatcher headMatcher = (buffer, lineStart, lineEnd) -> buffer.get(lineStart) == '#';
+    assertEquals("#2 second\n\tat line\n\tat line\n#3 third\n", scanTail(content, 2, headMatcher));
+  }
+
+  @Test
+  @DisplayName("Headless lines at the beginning of the file are skipped")
+  void headlessBeginning() throws IOException {
+    var content = "\tat orphan\n#1 first\n\tat line\n";
+    RecordHeadMatcher headMatcher = (buffer, lineStart, lineEnd) -> buffer.get(lineStart) == '#';
+    assertEquals("#1 first\n\tat line\n", scanTail(content, 5, headMatcher));
+  }
+
+  @Test
+  @DisplayName("Lines spanning several windows are found")
+  void longTail() throws IOException {
+    var line = "x".repeat(999) + "\n";
+    var content = "head\n" + line.repeat(300);        // longer than the window
+    assertEquals(line.repeat(200), scanTail(content, 200, EVERY_LINE));
+    assertEquals(content, scanTail(content, 301, EVERY_LINE));
+  }
+
+  @Test
+  @DisplayName("A line longer than the window is found as a whole")
+  void longLine() throws IOException {
+    var line = "y".repeat(BackwardTailScanner.WINDOW_SIZE * 3) + "\n";
+    assertEquals(line, scanTail("head\n" + line, 1, EVERY_LINE));
+    assertEquals("head\n" + line, scanTail("head\n" + line, 2, EVERY_LINE));
+  }
+
+  @Test
+  @DisplayName("Too few record heads within the lines bound make the tail fall back to the last lines")
+  void tooFewHeadsWithinLines() throws IOException {
+    var content = "#1 stray head\n" + "headless line\n".repeat(5 * BackwardTailScanner.MAX_LINES_PER_RECORD)
+        + "#2 head\n" + "last line\n";
+    RecordHeadMatcher headMatcher = (buffer, lineStart, lineEnd) -> buffer.get(lineStart) == '#';
+    assertEquals("headless line\n".repeat(3) + "#2 head\nlast line\n", scanTail(content, 5, headMatcher));
+  }
+
+  @Test
+  @DisplayName("Too few record heads within the bytes bound make the tail fall back to the last lines")
+  void tooFewHeadsWithinBytes() throws IOException {
+    var line = "z".repeat(100_000) + "\n";
+    var content = "#1 stray head\n" + line.repeat(BackwardTailScanner.MAX_SCAN_SIZE / line.length() + 1);
+    RecordHeadMatcher headMatcher = (buffer, lineStart, lineEnd) -> buffer.get(lineStart) == '#';
+    assertEquals(line.repeat(3), scanTail(content, 3, headMatcher));
+  }
+
+  @Test
+  @DisplayName("The last lines make up the tail of a file without any record heads")
+  void noHeads() throws IOException {
+    RecordHeadMatcher headMatcher = (buffer, lineStart, lineEnd) -> false;
+    assertEquals("b\nc\n", scanTail("a\nb\nc\n", 2, headMatcher));
+    assertEquals("a\nb\nc\n", scanTail("a\nb\nc\n", 5, headMatcher));
+  }
+
+  private String scanTail(String content, int recordsCount, RecordHeadMatcher headMatcher) throws IOException {
+    Path file = Files.writeString(tempDir.resolve("test.log"), content, UTF_8);
+    try (FileChannel channel = FileChannel.open(file, READ)) {
+      long tailStart = BackwardTailScanner.scan(channel, channel.size(), recordsCount, headMatcher);
+      return content.substring((int) tailStart);       // the content is ASCII only
+    }
+  }
+}
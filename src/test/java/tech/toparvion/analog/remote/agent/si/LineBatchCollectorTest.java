@@ -0,0 +1,43 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class LineBatchCollectorTest {
+
+  @Test
+  @DisplayName("Lines are decoded within the given bounds and collected in the order of acceptance")
+  void collectsLines() {
+    var sut = new LineBatchCollector(UTF_8);
+    assertTrue(sut.isEmpty());
+    byte[] bytes = "first\nвторая\n".getBytes(UTF_8);
+    sut.accept(bytes, 0, 5);
+    sut.accept(bytes, 6, bytes.length - 7);
+    assertFalse(sut.isEmpty());
+    assertEquals(List.of("first", "вторая"), sut.drain());
+  }
+
+  @Test
+  @DisplayName("Drained batch is not affected by the lines accepted afterwards")
+  void drainStartsNewBatch() {
+    var sut = new LineBatchCollector(UTF_8);
+    byte[] bytes = "ab".getBytes(UTF_8);
+    sut.accept(bytes, 0, 1);
+    List<String> firstBatch = sut.drain();
+    assertTrue(sut.isEmpty());
+    sut.accept(bytes, 1, 1);
+
+    assertEquals(List.of("a"), firstBatch);
+    assertEquals(List.of("b"), sut.drain());
+    assertEquals(List.of(), sut.drain());
+  }
+}
@@ -0,0 +1,58 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class LineSplitterTest {
+
+  private final List<String> lines = new ArrayList<>();
+  private final LineSplitter.LineConsumer collector =
+      (bytes, offset, length) -> lines.add(new String(bytes, offset, length, UTF_8));
+
+  @Test
+  @DisplayName("Lines are split by LF and CRLF terminators")
+  void splitsLines() {
+    var sut = new LineSplitter();
+    sut.split(directBufferOf("first\nsecond\r\n\nfourth\n"), collector);
+    assertEquals(List.of("first", "second", "", "fourth"), lines);
+  }
+
+  @Test
+  @DisplayName("A line split between buffers is emitted once completed")
+  void joinsLineAcrossBuffers() {
+    var sut = new LineSplitter();
+    sut.split(directBufferOf("fir"), collector);
+    assertEquals(List.of(), lines);
+    sut.split(directBufferOf("st\r"), collector);
+    sut.split(directBufferOf("\n\u0441\u0435\u043a\u0443\u043d\u0434\u0430"), collector);
+    assertEquals(List.of("first"), lines);
+    sut.flush(collector);
+    assertEquals(List.of("first", "\u0441\u0435\u043a\u0443\u043d\u0434\u0430"), lines);
+  }
+
+  @Test
+  @DisplayName("Reset discards incomplete line")
+  void resetDiscardsIncompleteLine() {
+    var sut = new LineSplitter();
+    sut.split(directBufferOf("garbage"), collector);
+    sut.reset();
+    sut.split(directBufferOf("line\n"), collector);
+    assertEquals(List.of("line"), lines);
+  }
+
+  private static ByteBuffer directBufferOf(String content) {
+    byte[] bytes = content.getBytes(UTF_8);
+    return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+  }
+}
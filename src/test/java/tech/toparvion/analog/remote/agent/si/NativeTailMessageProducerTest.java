@@ -0,0 +1,145 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The producer is started with no thread of its own here; instead, the tests poll the file explicitly.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class NativeTailMessageProducerTest {
+
+  @TempDir
+  Path tempDir;
+
+  private final List<Object> lines = new ArrayList<>();
+  private final List<String> events = new ArrayList<>();
+  private NativeTailMessageProducer sut;
+
+  @AfterEach
+  void tearDown() {
+    sut.stop();
+  }
+
+  @Test
+  @DisplayName("The first opening sends the tail of the file, and then the appended lines are sent")
+  void firstOpening() throws IOException {
+    Path file = write("app.log", "a\nb\nc\n");
+    sut = startProducer(file, 2);
+
+    sut.pollOnce();
+    assertThat(lines).containsExactly("b", "c");
+    append(file, "d\ne\n");
+    sut.pollOnce();
+    assertThat(lines).containsExactly("b", "c", "d", "e");
+    assertThat(events).isEmpty();
+  }
+
+  @Test
+  @DisplayName("Rotated file is read up to its end before switching to the new file which is read from its beginning")
+  void rotation() throws IOException {
+    Path file = write("app.log", "a\n");
+    sut = startProducer(file, 10);
+    sut.pollOnce();
+    append(file, "b\n");
+
+    Files.move(file, tempDir.resolve("app.log.1"));
+    write("app.log", "c\n");
+    sut.pollOnce();
+
+    assertThat(lines).containsExactly("a", "b", "c");
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0)).contains("has been replaced");
+  }
+
+  @Test
+  @DisplayName("Truncated file is read from its beginning")
+  void truncation() throws IOException {
+    Path file = write("app.log", "a\nb\n");
+    sut = startProducer(file, 10);
+    sut.pollOnce();
+
+    try (FileChannel channel = FileChannel.open(file, WRITE)) {
+      channel.truncate(0L);
+    }
+    append(file, "c\n");
+    sut.pollOnce();
+
+    assertThat(lines).containsExactly("a", "b", "c");
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0)).contains("file truncated");
+  }
+
+  @Test
+  @DisplayName("Disappearance and reappearance of the file are announced once, and the new file is read entirely")
+  void disappearanceAndReappearance() throws IOException {
+    Path file = write("app.log", "a\n");
+    sut = startProducer(file, 10);
+    sut.pollOnce();
+
+    Files.delete(file);
+    sut.pollOnce();
+    sut.pollOnce();
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0)).contains("has become inaccessible");
+
+    write("app.log", "b\nc\n");
+    sut.pollOnce();
+    assertThat(lines).containsExactly("a", "b", "c");
+    assertThat(events).hasSize(2);
+    assertThat(events.get(1)).contains("has appeared");
+  }
+
+  @Test
+  @DisplayName("File missing upon the first opening is read entirely when it appears")
+  void missingUponFirstOpening() throws IOException {
+    Path file = tempDir.resolve("app.log");
+    sut = startProducer(file, 1);
+
+    sut.pollOnce();
+    sut.pollOnce();
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0)).contains("cannot open");
+
+    write("app.log", "a\nb\n");
+    sut.pollOnce();
+    assertThat(lines).containsExactly("a", "b");
+    assertThat(events.get(1)).contains("has appeared");
+  }
+
+  private NativeTailMessageProducer startProducer(Path file, int tailSize) {
+    var producer = new NativeTailMessageProducer();
+    producer.setFile(file.toFile());
+    producer.setTailSize(tailSize);
+    producer.setOutputChannel((message, timeout) -> lines.add(message.getPayload()));
+    producer.setApplicationEventPublisher(event -> events.add(event.toString()));
+    producer.setTaskExecutor(task -> { });     // the polls are performed by the tests themselves
+    producer.afterPropertiesSet();
+    producer.start();
+    return producer;
+  }
+
+  private Path write(String fileName, String content) throws IOException {
+    return Files.writeString(tempDir.resolve(fileName), content, UTF_8);
+  }
+
+  private static void append(Path file, String content) throws IOException {
+    Files.writeString(file, content, UTF_8, APPEND);
+  }
+}
@@ -0,0 +1,109 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.MessageChannel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class NativeTailMultiplexerTest {
+
+  @TempDir
+  Path tempDir;
+
+  private final NativeTailMultiplexer sut = new NativeTailMultiplexer(2, 50);
+  private final List<NativeTailMessageProducer> producers = new ArrayList<>();
+
+  @AfterEach
+  void tearDown() {
+    producers.forEach(NativeTailMessageProducer::stop);
+    sut.close();
+  }
+
+  @Test
+  @DisplayName("Lines are sent downstream by the dispatcher threads rather than by the pollers")
+  void deliveryByDispatchers() throws IOException {
+    Path file = Files.writeString(tempDir.resolve("app.log"), "", UTF_8);
+    List<String> threadNames = new CopyOnWriteArrayList<>();
+    startProducer(file, (message, timeout) -> threadNames.add(Thread.currentThread().getName()));
+
+    Files.writeString(file, "a\nb\nc\n", UTF_8, APPEND);
+
+    waitUntil(() -> threadNames.size() == 3);
+    assertThat(threadNames).allMatch(name -> name.startsWith("native-tail-dispatcher-"));
+  }
+
+  @Test
+  @DisplayName("Stalled flow of one file neither loses its lines nor stops the other files from being sent")
+  void stalledFlow() throws IOException, InterruptedException {
+    Path stalledFile = Files.writeString(tempDir.resolve("stalled.log"), "", UTF_8);
+    Path file = Files.writeString(tempDir.resolve("app.log"), "", UTF_8);
+    CountDownLatch stallLatch = new CountDownLatch(1);
+    List<Object> stalledLines = new CopyOnWriteArrayList<>();
+    List<Object> lines = new CopyOnWriteArrayList<>();
+    startProducer(stalledFile, (message, timeout) -> {
+      try {
+        stallLatch.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return stalledLines.add(message.getPayload());
+    });
+    startProducer(file, (message, timeout) -> lines.add(message.getPayload()));
+
+    // much more lines than a producer may keep pending, so that the stalled one stops reading its file for a while
+    List<String> expectedStalledLines = IntStream.range(0, 10_000)
+        .mapToObj(i -> "line #" + i)
+        .collect(toList());
+    Files.writeString(stalledFile, expectedStalledLines.stream().collect(joining("\n", "", "\n")), UTF_8, APPEND);
+    Thread.sleep(100);
+    Files.writeString(file, "a\nb\n", UTF_8, APPEND);
+
+    waitUntil(() -> lines.size() == 2);
+    assertThat(lines).containsExactly("a", "b");
+    assertThat(stalledLines).isEmpty();
+
+    stallLatch.countDown();
+    waitUntil(() -> stalledLines.size() == expectedStalledLines.size());
+    assertThat(stalledLines).isEqualTo(expectedStalledLines);
+  }
+
+  private void startProducer(Path file, MessageChannel outputChannel) {
+    var producer = new NativeTailMessageProducer();
+    producer.setFile(file.toFile());
+    producer.setTailSize(100_000);    // the lines may be written before the first opening of the file
+    producer.setOutputChannel(outputChannel);
+    producer.setMultiplexer(sut);
+    producer.afterPropertiesSet();
+    producer.start();
+    producers.add(producer);
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000L;
+    while (!condition.getAsBoolean()) {
+      assertThat(System.currentTimeMillis()).as("waiting deadline").isLessThan(deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package tech.toparvion.analog.remote.agent.si;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The tail process is emulated with {@code cat} which outputs the whole file and exits at once, thus making the
+ * producer restart the process over and over again.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+class ProcessTailMessageProducerTest {
+  private static final int LINES_PER_RUN = 200;
+  private static final int RUNS = 3;
+
+  @TempDir
+  Path tempDir;
+
+  private final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+  private ProcessTailMessageProducer sut;
+
+  @AfterEach
+  void tearDown() {
+    sut.stop();
+    taskScheduler.shutdown();
+  }
+
+  @Test
+  @DisplayName("Reader of the restarted process doesn't send until the reader of the previous one has finished")
+  void restartKeepsSingleProducer() throws IOException, InterruptedException {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < LINES_PER_RUN; i++) {
+      content.append(i).append('\n');
+    }
+    Path file = Files.writeString(tempDir.resolve("app.log"), content, UTF_8);
+    List<Object> lines = new ArrayList<>();
+    AtomicInteger activeSenders = new AtomicInteger(0);
+    AtomicInteger maxActiveSenders = new AtomicInteger(0);
+    CountDownLatch receivedAll = new CountDownLatch(LINES_PER_RUN * RUNS);
+
+    sut = new ProcessTailMessageProducer();
+    sut.setExecutable("cat");
+    sut.setOptions("");
+    sut.setFile(file.toFile());
+    sut.setEnableStatusReader(false);
+    sut.setTailAttemptsDelay(1L);     // the next process is started while the lines of the previous one are being sent
+    sut.setTaskExecutor(new SimpleAsyncTaskExecutor("process-tail-test-"));
+    taskScheduler.initialize();
+    sut.setTaskScheduler(taskScheduler);
+    sut.setOutputChannel((message, timeout) -> {
+      maxActiveSenders.accumulateAndGet(activeSenders.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(1L);          // a slow consumer
+        synchronized (lines) {
+          lines.add(message.getPayload());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        activeSenders.decrementAndGet();
+        receivedAll.countDown();
+      }
+      return true;
+    });
+    sut.afterPropertiesSet();
+    sut.start();
+
+    assertThat(receivedAll.await(30, TimeUnit.SECONDS)).isTrue();
+    assertThat(maxActiveSenders.get()).isEqualTo(1);
+    synchronized (lines) {
+      // every process' output must come entirely and in order, i.e. not interleaved with the output of another one
+      for (int i = 0; i < LINES_PER_RUN * RUNS; i++) {
+        assertThat(lines.get(i)).isEqualTo(String.valueOf(i % LINES_PER_RUN));
+      }
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.config.EnableIntegration;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.dsl.context.IntegrationFlowContext;
+import org.springframework.integration.dsl.context.IntegrationFlowContext.IntegrationFlowRegistration;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import tech.toparvion.analog.model.remote.LogRecord;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.integration.IntegrationMessageHeaderAccessor.CORRELATION_ID;
+import static tech.toparvion.analog.remote.RemotingConstants.LOG_TIMESTAMP_VALUE__HEADER;
+import static tech.toparvion.analog.remote.RemotingConstants.RECORD_LEVEL__HEADER;
+
+/**
+ * The aggregator is run within a real (though minimal) integration flow as its release decisions depend on the way the
+ * aggregator polls the channel and stores the group.
+ *
+ * @author Toparvion
+ * @since v0.14
+ */
+@SpringJUnitConfig(GroupAggregatorConfigurerTest.Config.class)
+class GroupAggregatorConfigurerTest {
+  private static final long HEAD_TIMESTAMP = 1_589_102_585_419L;
+  private static final long GROUP_TIMEOUT = 300L;
+
+  @Autowired
+  private IntegrationFlowContext flowContext;
+
+  private final SpscRingChannel preAggregatorChannel = new SpscRingChannel(64);
+  private final QueueChannel output = new QueueChannel();
+  private IntegrationFlowRegistration registration;
+
+  @AfterEach
+  void tearDown() {
+    if (registration != null) {
+      registration.destroy();
+    }
+  }
+
+  @Test
+  @DisplayName("Group is released upon reaching the size threshold")
+  void releaseOnSizeThreshold() {
+    startAggregator(3);
+
+    send(head("first", 1L));
+    send(line("a", 1L));
+    send(line("b", 1L));
+    send(line("c", 1L));
+
+    LogRecord record = receiveRecord(GROUP_TIMEOUT * 10);
+    assertThat(record.getLines()).isEqualTo(List.of("first", "a", "b"));
+    assertThat(record.getLevel()).isEqualTo("ERROR");
+    // the rest of the lines is released by timeout
+    LogRecord restRecord = receiveRecord(GROUP_TIMEOUT * 10);
+    assertThat(restRecord.getLines()).isEqualTo(List.of("c"));
+  }
+
+  @Test
+  @DisplayName("Group is released upon arrival of the next record head which then starts a group of its own")
+  void releaseOnNextHead() {
+    startAggregator(500);
+
+    send(head("first", 1L));
+    send(line("\tat some.Class", 1L));
+    send(head("second", 2L));
+
+    LogRecord record = receiveRecord(GROUP_TIMEOUT * 10);
+    assertThat(record.getLines()).isEqualTo(List.of("first", "\tat some.Class"));
+    assertThat(record.getTimestamp()).isEqualTo(HEAD_TIMESTAMP);
+    // the next head has been given back to the aggregator rather than lost or included into the previous record
+    LogRecord nextRecord = receiveRecord(GROUP_TIMEOUT * 10);
+    assertThat(nextRecord.getLines()).isEqualTo(List.of("second"));
+    assertThat(nextRecord.isFlat()).isFalse();
+  }
+
+  @Test
+  @DisplayName("Incomplete group is released upon timeout")
+  void releaseOnTimeout() {
+    startAggregator(500);
+
+    send(head("first", 1L));
+    send(line("\tat some.Class", 1L));
+
+    assertThat(output.receive(GROUP_TIMEOUT / 3)).isNull();
+    LogRecord record = receiveRecord(GROUP_TIMEOUT * 10);
+    assertThat(record.getLines()).isEqualTo(List.of("first", "\tat some.Class"));
+    assertThat(record.isFlat()).isFalse();
+    assertThat(output.receive(GROUP_TIMEOUT)).isNull();
+  }
+
+  private void startAggregator(int groupSizeThreshold) {
+    var sut = new GroupAggregatorConfigurer(preAggregatorChannel, groupSizeThreshold, GROUP_TIMEOUT);
+    registration = flowContext.registration(IntegrationFlows
+        .from(preAggregatorChannel)
+        .aggregate(sut::configure)
+        .channel(output)
+        .get())
+        .register();
+  }
+
+  private void send(Message<String> message) {
+    assertThat(preAggregatorChannel.send(message, 0)).isTrue();
+  }
+
+  private LogRecord receiveRecord(long timeout) {
+    Message<?> recordMessage = output.receive(timeout);
+    assertThat(recordMessage).isNotNull();
+    assertThat(recordMessage.getPayload()).isInstanceOf(LogRecord.class);
+    return (LogRecord) recordMessage.getPayload();
+  }
+
+  private static Message<String> head(String payload, long correlationId) {
+    return MessageBuilder.withPayload(payload)
+        .setHeader(LOG_TIMESTAMP_VALUE__HEADER, HEAD_TIMESTAMP)
+        .setHeader(RECORD_LEVEL__HEADER, "ERROR")
+        .setHeader(CORRELATION_ID, correlationId)
+        .build();
+  }
+
+  private static Message<String> line(String payload, long correlationId) {
+    return MessageBuilder.withPayload(payload)
+        .setHeader(CORRELATION_ID, correlationId)
+        .build();
+  }
+
+  @Configuration
+  @EnableIntegration
+  static class Config {
+  }
+}
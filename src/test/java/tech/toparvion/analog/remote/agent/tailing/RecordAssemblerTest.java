@@ -0,0 +1,202 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import tech.toparvion.analog.model.config.RecordLevelsProperties;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+import tech.toparvion.analog.model.remote.LogRecord;
+import tech.toparvion.analog.remote.agent.enrich.LineBatchHeaderEnricher;
+import tech.toparvion.analog.service.RecordLevelDetector;
+import tech.toparvion.analog.util.timestamp.DateFormat2RegexConverter;
+import tech.toparvion.analog.util.timestamp.TimestampExtractor;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static tech.toparvion.analog.remote.RemotingConstants.LOG_TIMESTAMP_VALUE__HEADER;
+import static tech.toparvion.analog.remote.RemotingConstants.RECORD_LEVEL__HEADER;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class RecordAssemblerTest {
+  private static final long HEAD_TIMESTAMP = 1_589_102_585_419L;
+
+  private QueueChannel output;
+  private TimerWheel timerWheel;
+  private ExecutorService timeoutExecutor;
+
+  @BeforeEach
+  void setUp() {
+    output = new QueueChannel();
+    timerWheel = new TimerWheel(10, 64, "test-timer-wheel");
+    timeoutExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "test-timeout-executor"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    timerWheel.close();
+    timeoutExecutor.shutdownNow();
+  }
+
+  @Test
+  @DisplayName("Record is flushed upon arrival of the next record head")
+  void flushOnNextHead() {
+    var sut = newAssembler(500, 60_000);
+
+    sut.handleMessage(head("first", "ERROR"));
+    sut.handleMessage(line("\tat some.Class"));
+    assertThat(output.receive(0)).isNull();
+    sut.handleMessage(head("second", "INFO"));
+
+    LogRecord record = receiveRecord(0);
+    assertThat(record.getLines()).isEqualTo(List.of("first", "\tat some.Class"));
+    assertThat(record.isFlat()).isFalse();
+    assertThat(record.getLevel()).isEqualTo("ERROR");
+    assertThat(record.getTimestamp()).isEqualTo(HEAD_TIMESTAMP);
+    assertThat(output.receive(0)).isNull();
+  }
+
+  @Test
+  @DisplayName("Record is flushed upon reaching the size threshold")
+  void flushOnSizeThreshold() {
+    var sut = newAssembler(3, 60_000);
+
+    sut.handleMessage(head("first", "ERROR"));
+    sut.handleMessage(line("a"));
+    sut.handleMessage(line("b"));
+    sut.handleMessage(line("c"));
+
+    LogRecord record = receiveRecord(0);
+    assertThat(record.getLines()).isEqualTo(List.of("first", "a", "b"));
+    assertThat(output.receive(0)).isNull();
+  }
+
+  @Test
+  @DisplayName("Record is flushed when no lines arrive within the timeout")
+  void flushOnIdleTimeout() {
+    var sut = newAssembler(500, 100);
+
+    sut.handleMessage(head("first", "WARN"));
+    sut.handleMessage(line("continuation"));
+
+    LogRecord record = receiveRecord(5_000);
+    assertThat(record.getLines()).isEqualTo(List.of("first", "continuation"));
+  }
+
+  @Test
+  @DisplayName("Record flushed by idle timeout is sent by the timeout executor rather than by the timer wheel")
+  void idleTimeoutFlushThread() {
+    var sut = newAssembler(500, 50);
+    String[] sendingThreadName = new String[1];
+    sut.setOutputChannel((message, timeout) -> {
+      sendingThreadName[0] = Thread.currentThread().getName();
+      return output.send(message);
+    });
+
+    sut.handleMessage(head("first", "WARN"));
+
+    assertThat(receiveRecord(5_000).getLines()).isEqualTo(List.of("first"));
+    assertThat(sendingThreadName[0]).isEqualTo("test-timeout-executor");
+  }
+
+  @Test
+  @DisplayName("Records flushed by the next heads are not followed by flushes of their stale timeouts")
+  void noStaleTimeoutFlushes() throws InterruptedException {
+    var sut = newAssembler(500, 50);
+
+    for (int i = 0; i < 10; i++) {
+      sut.handleMessage(head("record " + i, "INFO"));
+    }
+    for (int i = 0; i < 10; i++) {
+      LogRecord record = receiveRecord(5_000);     // the last record is flushed by its timeout
+      assertThat(record.getLines()).isEqualTo(List.of("record " + i));
+    }
+    Thread.sleep(200);
+    assertThat(output.receive(0)).isNull();
+  }
+
+  @Test
+  @DisplayName("Lines preceding the first record head are sent as a flat record")
+  void headlessLinesAreFlat() {
+    var sut = newAssembler(500, 60_000);
+
+    sut.handleMessage(line("orphan"));
+    sut.handleMessage(head("first", "INFO"));
+
+    LogRecord record = receiveRecord(0);
+    assertThat(record.getLines()).isEqualTo(List.of("orphan"));
+    assertThat(record.isFlat()).isTrue();
+  }
+
+  @Test
+  @DisplayName("Batches of lines are assembled into records without being split into line messages")
+  void batches() {
+    TimestampExtractor timestampExtractor = new TimestampExtractor(new DateFormat2RegexConverter(),
+        new TrackingProperties());
+    timestampExtractor.registerNewTimestampFormat("yyyy-MM-dd HH:mm:ss,SSS", "/home/upc/app.log");
+    RecordLevelsProperties levelsProperties = new RecordLevelsProperties();
+    levelsProperties.setRecordLevels(List.of("ERROR", "INFO"));
+    var batchEnricher = new LineBatchHeaderEnricher(timestampExtractor.bindTo("/home/upc/app.log"),
+        new RecordLevelDetector(levelsProperties, true));
+    var sut = new RecordAssembler(500, 60_000, timerWheel, timeoutExecutor, batchEnricher);
+    sut.setOutputChannel(output);
+
+    sut.handleMessage(MessageBuilder.withPayload(List.of(
+        "orphan",
+        "2020-06-23 00:29:42,123 ERROR Failed",
+        "\tat some.Class")).build());
+    LogRecord orphanRecord = receiveRecord(0);
+    assertThat(orphanRecord.getLines()).isEqualTo(List.of("orphan"));
+    assertThat(orphanRecord.isFlat()).isTrue();
+    assertThat(output.receive(0)).isNull();
+
+    // the record started in the previous batch continues in this one
+    sut.handleMessage(MessageBuilder.withPayload(List.of(
+        "\tat another.Class",
+        "2020-06-23 00:29:43,456 INFO  Started")).build());
+    LogRecord record = receiveRecord(0);
+    assertThat(record.getLines()).isEqualTo(List.of("2020-06-23 00:29:42,123 ERROR Failed", "\tat some.Class",
+        "\tat another.Class"));
+    assertThat(record.isFlat()).isFalse();
+    assertThat(record.getLevel()).isEqualTo("ERROR");
+    assertThat(output.receive(0)).isNull();
+
+    // single line messages are still accepted
+    sut.handleMessage(head("next", "INFO"));
+    assertThat(receiveRecord(0).getLevel()).isEqualTo("INFO");
+  }
+
+  private LogRecord receiveRecord(long timeout) {
+    Message<?> recordMessage = output.receive(timeout);
+    assertThat(recordMessage).isNotNull();
+    assertThat(recordMessage.getHeaders()).doesNotContainKeys(LOG_TIMESTAMP_VALUE__HEADER, RECORD_LEVEL__HEADER);
+    assertThat(recordMessage.getPayload()).isInstanceOf(LogRecord.class);
+    return (LogRecord) recordMessage.getPayload();
+  }
+
+  private RecordAssembler newAssembler(int sizeThreshold, long idleTimeout) {
+    var assembler = new RecordAssembler(sizeThreshold, idleTimeout, timerWheel, timeoutExecutor);
+    assembler.setOutputChannel(output);
+    return assembler;
+  }
+
+  private static Message<String> head(String payload, String level) {
+    return MessageBuilder.withPayload(payload)
+        .setHeader(LOG_TIMESTAMP_VALUE__HEADER, HEAD_TIMESTAMP)
+        .setHeader(RECORD_LEVEL__HEADER, level)
+        .build();
+  }
+
+  private static Message<String> line(String payload) {
+    return MessageBuilder.withPayload(payload).build();
+  }
+}
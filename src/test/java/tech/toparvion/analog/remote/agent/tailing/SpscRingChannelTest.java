@@ -0,0 +1,62 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class SpscRingChannelTest {
+
+  @Test
+  @DisplayName("Messages are received in the order they were sent, pushed back one goes first")
+  void orderIsKeptWithPushback() {
+    var sut = new SpscRingChannel(4);
+    sut.send(MessageBuilder.withPayload("a").build());
+    sut.send(MessageBuilder.withPayload("b").build());
+    sut.send(MessageBuilder.withPayload("c").build());
+
+    assertThat(sut.receive(0).getPayload()).isEqualTo("a");
+    Message<?> second = sut.receive(0);
+    assertThat(second.getPayload()).isEqualTo("b");
+    sut.pushBack(second);
+    assertThat(sut.receive(0).getPayload()).isEqualTo("b");
+    assertThat(sut.receive(0).getPayload()).isEqualTo("c");
+    assertThat(sut.receive(0)).isNull();
+  }
+
+  @Test
+  @DisplayName("Sending to the full ring fails upon timeout")
+  void fullRingRejectsOnTimeout() {
+    var sut = new SpscRingChannel(2);
+    assertThat(sut.send(MessageBuilder.withPayload("a").build(), 0)).isTrue();
+    assertThat(sut.send(MessageBuilder.withPayload("b").build(), 0)).isTrue();
+    assertThat(sut.send(MessageBuilder.withPayload("c").build(), 10)).isFalse();
+
+    sut.receive(0);
+    assertThat(sut.send(MessageBuilder.withPayload("c").build(), 0)).isTrue();
+  }
+
+  @Test
+  @DisplayName("Waiting consumer is woken up by the producer")
+  void consumerIsWokenUp() throws InterruptedException {
+    var sut = new SpscRingChannel(16);
+    Thread producer = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException ignored) { }
+      sut.send(MessageBuilder.withPayload("late").build());
+    });
+    producer.start();
+
+    Message<?> received = sut.receive(5_000);
+    assertThat(received).isNotNull();
+    assertThat(received.getPayload()).isEqualTo("late");
+    producer.join();
+  }
+}
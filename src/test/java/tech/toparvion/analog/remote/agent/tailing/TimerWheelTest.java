@@ -0,0 +1,91 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class TimerWheelTest {
+
+  private final List<String> executed = new CopyOnWriteArrayList<>();
+  private final CountDownLatch lastTaskLatch = new CountDownLatch(1);
+  private TimerWheel sut;
+
+  @AfterEach
+  void tearDown() {
+    sut.close();
+  }
+
+  @Test
+  @DisplayName("Tasks are executed in the order of their deadlines rather than in the order of scheduling")
+  void executionOrder() throws InterruptedException {
+    sut = new TimerWheel(10, 64, "test-timer-wheel");
+
+    sut.schedule(() -> executed.add("third"), 150);
+    sut.schedule(() -> executed.add("first"), 10);
+    sut.schedule(() -> executed.add("second"), 80);
+    sut.schedule(lastTaskLatch::countDown, 200);
+
+    assertThat(lastTaskLatch.await(5, SECONDS)).isTrue();
+    assertThat(executed).containsExactly("first", "second", "third");
+  }
+
+  @Test
+  @DisplayName("Cancelled task is not executed while the others are")
+  void cancellation() throws InterruptedException {
+    sut = new TimerWheel(10, 64, "test-timer-wheel");
+
+    TimerWheel.Timeout cancelled = sut.schedule(() -> executed.add("cancelled"), 50);
+    sut.schedule(() -> executed.add("kept"), 50);
+    cancelled.cancel();
+    sut.schedule(lastTaskLatch::countDown, 150);
+
+    assertThat(lastTaskLatch.await(5, SECONDS)).isTrue();
+    assertThat(executed).containsExactly("kept");
+  }
+
+  @Test
+  @DisplayName("Task spanning several rounds of the wheel is executed neither earlier than its delay nor on the " +
+      "intermediate rounds")
+  void severalRounds() throws InterruptedException {
+    // the wheel of 4 buckets makes a round every 40 ms
+    sut = new TimerWheel(10, 4, "test-timer-wheel");
+    long startNanos = System.nanoTime();
+    long[] executionNanos = new long[1];
+
+    sut.schedule(() -> {
+      executionNanos[0] = System.nanoTime();
+      lastTaskLatch.countDown();
+    }, 170);
+    sut.schedule(() -> executed.add("same bucket, next round"), 50);
+
+    assertThat(lastTaskLatch.await(5, SECONDS)).isTrue();
+    assertThat(TimeUnit.NANOSECONDS.toMillis(executionNanos[0] - startNanos)).isGreaterThanOrEqualTo(170);
+    assertThat(executed).containsExactly("same bucket, next round");
+  }
+
+  @Test
+  @DisplayName("Wheel resumes ticking after being idle")
+  void resumptionAfterIdle() throws InterruptedException {
+    sut = new TimerWheel(10, 64, "test-timer-wheel");
+    CountDownLatch firstTaskLatch = new CountDownLatch(1);
+
+    sut.schedule(firstTaskLatch::countDown, 10);
+    assertThat(firstTaskLatch.await(5, SECONDS)).isTrue();
+    Thread.sleep(100);      // lets the wheel fall asleep
+    sut.schedule(lastTaskLatch::countDown, 10);
+
+    assertThat(lastTaskLatch.await(5, SECONDS)).isTrue();
+  }
+}
@@ -0,0 +1,65 @@
+package tech.toparvion.analog.remote.agent.tailing;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+import tech.toparvion.analog.util.timestamp.DateFormat2RegexConverter;
+import tech.toparvion.analog.util.timestamp.TimestampExtractor;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class TimestampRecordHeadMatcherTest {
+  private static final String LOG_PATH = "/home/upc/app.log";
+
+  @Test
+  @DisplayName("Anchored matcher considers only the lines starting with a timestamp to be record heads")
+  void anchored() {
+    TimestampRecordHeadMatcher sut = createMatcher("yyyy-MM-dd HH:mm:ss,SSS", true);
+
+    assertThat(isRecordHead(sut, "2020-06-23 00:29:42,123 INFO  Started")).isTrue();
+    assertThat(isRecordHead(sut, "Caused by: 2020-06-23 00:29:42,123 is a bad date")).isFalse();
+    assertThat(isRecordHead(sut, "\tat com.example.Foo.bar(Foo.java:42)")).isFalse();
+  }
+
+  @Test
+  @DisplayName("Non-anchored matcher considers the lines with a timestamp anywhere to be record heads")
+  void notAnchored() {
+    TimestampRecordHeadMatcher sut = createMatcher("yyyy-MM-dd HH:mm:ss,SSS", false);
+
+    assertThat(isRecordHead(sut, "[main] 2020-06-23 00:29:42,123 INFO  Started")).isTrue();
+    assertThat(isRecordHead(sut, "Тело: 2020-06-23 00:29:42,123")).isTrue();
+    assertThat(isRecordHead(sut, "Caused by: java.lang.IllegalStateException")).isFalse();
+  }
+
+  @Test
+  @DisplayName("Lines whose timestamp can't be parsed are not record heads, just like in the group tracking flow")
+  void unparsableTimestamp() {
+    TimestampRecordHeadMatcher sut = createMatcher("dd/LLL/yyyy:HH:mm:ss", false);
+
+    assertThat(isRecordHead(sut, "127.0.0.1 - - [23/Jun/2020:00:29:42 +0300] \"GET / HTTP/1.1\"")).isTrue();
+    assertThat(isRecordHead(sut, "127.0.0.1 - - [23/Jun/2020:25:29:42 +0300] \"GET / HTTP/1.1\"")).isFalse();
+  }
+
+  private static TimestampRecordHeadMatcher createMatcher(String timestampFormat, boolean isAnchored) {
+    TrackingProperties trackingProperties = new TrackingProperties();
+    trackingProperties.setTimestampAnchored(isAnchored);
+    TimestampExtractor timestampExtractor = new TimestampExtractor(new DateFormat2RegexConverter(), trackingProperties);
+    timestampExtractor.registerNewTimestampFormat(timestampFormat, LOG_PATH);
+    return new TimestampRecordHeadMatcher(timestampExtractor.bindTo(LOG_PATH), UTF_8);
+  }
+
+  private static boolean isRecordHead(TimestampRecordHeadMatcher matcher, String line) {
+    // the line is surrounded with other bytes to make sure the matcher respects the bounds
+    byte[] lineBytes = line.getBytes(UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(lineBytes.length + 2);
+    buffer.put((byte) '\n').put(lineBytes).put((byte) '\n');
+    return matcher.isRecordHead(buffer, 1, lineBytes.length + 1);
+  }
+}
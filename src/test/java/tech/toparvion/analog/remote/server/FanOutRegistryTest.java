@@ -0,0 +1,132 @@
+package tech.toparvion.analog.remote.server;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import tech.toparvion.analog.model.api.LinesPart;
+import tech.toparvion.analog.model.api.StyledLine;
+import tech.toparvion.analog.model.config.entry.LogPath;
+import tech.toparvion.analog.model.config.entry.LogType;
+import tech.toparvion.analog.model.remote.LogRecord;
+import tech.toparvion.analog.model.remote.TrackingRequest;
+import tech.toparvion.analog.service.RecordLevelDetector;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.integration.file.FileHeaders.ORIGINAL_FILE;
+import static tech.toparvion.analog.remote.RemotingConstants.*;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class FanOutRegistryTest {
+  private static final String KEY = "group>node://angara/home/upc/app.log";
+  private static final String FLAT_KEY = "flat>node://angara/home/upc/app.log";
+  private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+  private static final String FLAT_DESTINATION = "node://angara/home/upc/app.log";
+  private static final String JOINING_DESTINATION = "node://angara/home/upc/app.log#copy";
+
+  private final FanOutRegistry sut = new FanOutRegistry(3, 2);
+
+  @Test
+  @DisplayName("Only the first binding and the last unbinding of a key require agent requests")
+  void bindingsOfSameKey() {
+    assertThat(sut.bind(request(KEY, TIMESTAMP_FORMAT), "composite://payments")).isTrue();
+    assertThat(sut.bind(request(KEY, TIMESTAMP_FORMAT), "composite://billing")).isFalse();
+    assertThat(sut.findDestinations(KEY)).containsExactlyInAnyOrder("composite://payments", "composite://billing");
+
+    assertThat(sut.unbind(KEY, "composite://payments")).isFalse();
+    assertThat(sut.findDestinations(KEY)).containsExactly("composite://billing");
+    assertThat(sut.unbind(KEY, "composite://unknown")).isFalse();
+    assertThat(sut.unbind(KEY, "composite://billing")).isTrue();
+    assertThat(sut.findDestinations(KEY)).isEmpty();
+    assertThat(sut.unbind(KEY, "composite://billing")).isFalse();
+  }
+
+  @Test
+  @DisplayName("A log can't be grouped with different timestamp formats at the same time")
+  void conflictingTimestampFormats() {
+    sut.bind(request(KEY, TIMESTAMP_FORMAT), "composite://payments");
+
+    assertThatThrownBy(() -> sut.bind(request(KEY, "HH:mm:ss"), "composite://billing"))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("HH:mm:ss");
+    assertThat(sut.findDestinations(KEY)).containsExactly("composite://payments");
+  }
+
+  @Test
+  @DisplayName("Dropped key loses all its destinations and requires the agent request again")
+  void droppedKey() {
+    sut.bind(request(KEY, TIMESTAMP_FORMAT), "composite://payments");
+    sut.bind(request(KEY, TIMESTAMP_FORMAT), "composite://billing");
+
+    FanOutRegistry.Subscription dropped = sut.drop(KEY);
+
+    assertThat(dropped).isNotNull();
+    assertThat(dropped.getLogPath().getFullPath()).isEqualTo("node://angara/home/upc/app.log");
+    assertThat(dropped.getTimestampFormat()).isEqualTo(TIMESTAMP_FORMAT);
+    assertThat(dropped.getDestinations()).containsExactlyInAnyOrder("composite://payments", "composite://billing");
+    assertThat(sut.findDestinations(KEY)).isEmpty();
+    assertThat(sut.drop(KEY)).isNull();
+    assertThat(sut.unbind(KEY, "composite://payments")).isFalse();
+    assertThat(sut.bind(request(KEY, TIMESTAMP_FORMAT), "composite://payments")).isTrue();
+  }
+
+  @Test
+  @DisplayName("Destination joining an active key is given the recent records before the new ones")
+  void recentRecordsForJoiningDestination() {
+    SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    RecordSender recordSender = new RecordSender(mock(RecordLevelDetector.class), messagingTemplate,
+        mock(ColorPicker.class), sut, false);
+    sut.bind(request(FLAT_KEY, null), FLAT_DESTINATION);
+    for (int i = 1; i <= 4; i++) {
+      recordSender.sendRecord(composeLineMessage("line " + i));
+    }
+
+    assertThat(sut.bind(request(FLAT_KEY, null), JOINING_DESTINATION)).isFalse();
+    recordSender.sendRecentRecords(FLAT_KEY, JOINING_DESTINATION);
+    recordSender.sendRecentRecords(FLAT_KEY, JOINING_DESTINATION);    // must have no effect
+    recordSender.sendRecord(composeLineMessage("line 5"));
+
+    ArgumentCaptor<Object> partCaptor = ArgumentCaptor.forClass(Object.class);
+    verify(messagingTemplate, times(4))
+        .convertAndSend(eq(WEBSOCKET_TOPIC_PREFIX + JOINING_DESTINATION), partCaptor.capture(), anyMap());
+    List<String> sentLines = partCaptor.getAllValues().stream()
+        .flatMap(part -> ((LinesPart) part).getLines().stream())
+        .map(StyledLine::getText)
+        .collect(toList());
+    // the tail size of flat keys is 3 lines
+    assertThat(sentLines).containsExactly("line 2", "line 3", "line 4", "line 5");
+  }
+
+  static TrackingRequest request(String subscriptionKey, @Nullable String timestampFormat) {
+    LogPath logPath = new LogPath();
+    logPath.setType(LogType.NODE);
+    logPath.setNode("angara");
+    logPath.setTarget("/home/upc/app.log");
+    logPath.setFullPath("node://angara/home/upc/app.log");
+    return new TrackingRequest(logPath, timestampFormat, subscriptionKey, true);
+  }
+
+  private static Message<LogRecord> composeLineMessage(String line) {
+    return MessageBuilder.withPayload(LogRecord.flat(new ArrayList<>(singletonList(line))))
+        .setHeader(CLIENT_DESTINATION__HEADER, FLAT_KEY)
+        .setHeader(SOURCE_NODE__HEADER, "angara")
+        .setHeader(ORIGINAL_FILE, new File("/home/upc/app.log"))
+        .build();
+  }
+}
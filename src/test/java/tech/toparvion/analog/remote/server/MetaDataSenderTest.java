@@ -0,0 +1,79 @@
+package tech.toparvion.analog.remote.server;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import tech.toparvion.analog.model.ServerFailure;
+import tech.toparvion.analog.model.remote.SendingOverflowTailingEvent;
+import tech.toparvion.analog.model.remote.TrackingRequest;
+import tech.toparvion.analog.service.origin.LogEventTypeDetector;
+
+import java.io.File;
+
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static tech.toparvion.analog.remote.RemotingConstants.*;
+import static tech.toparvion.analog.remote.server.FanOutRegistryTest.request;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class MetaDataSenderTest {
+  private static final String KEY = "group>node://angara/home/upc/app.log";
+  private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+
+  private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+  private final RemoteGateway remoteGateway = mock(RemoteGateway.class);
+  private final FanOutRegistry fanOutRegistry = new FanOutRegistry(3, 2);
+  private final MetaDataSender sut = new MetaDataSender(messagingTemplate, mock(LogEventTypeDetector.class),
+      fanOutRegistry, remoteGateway);
+
+  @Test
+  @DisplayName("Sending overflow notice drops the log's subscription, stops its tracking and notifies all the clients")
+  void sendingOverflowNotice() {
+    fanOutRegistry.bind(request(KEY, TIMESTAMP_FORMAT), "composite://payments");
+    fanOutRegistry.bind(request(KEY, TIMESTAMP_FORMAT), "composite://billing");
+
+    sut.sendMetaData(composeOverflowNotice());
+    sut.sendMetaData(composeOverflowNotice());      // a repeated notice must have no effect
+
+    ArgumentCaptor<TrackingRequest> requestCaptor = ArgumentCaptor.forClass(TrackingRequest.class);
+    verify(remoteGateway, times(1)).switchRegistration(requestCaptor.capture(), eq(false));
+    TrackingRequest offRequest = requestCaptor.getValue();
+    assertThat(offRequest.getClientDestination()).isEqualTo(KEY);
+    assertThat(offRequest.getTimestampFormat()).isEqualTo(TIMESTAMP_FORMAT);
+    assertThat(offRequest.getLogPath().getFullPath()).isEqualTo("node://angara/home/upc/app.log");
+    assertThat(fanOutRegistry.findDestinations(KEY)).isEmpty();
+
+    for (String destination : new String[]{"composite://payments", "composite://billing"}) {
+      ArgumentCaptor<Object> failureCaptor = ArgumentCaptor.forClass(Object.class);
+      verify(messagingTemplate).convertAndSend(eq(WEBSOCKET_TOPIC_PREFIX + destination), failureCaptor.capture(),
+          eq(singletonMap(MESSAGE_TYPE_HEADER, MessageType.FAILURE)));
+      assertThat(failureCaptor.getValue()).isInstanceOf(ServerFailure.class);
+      assertThat(((ServerFailure) failureCaptor.getValue()).getMessage())
+          .contains("/home/upc/app.log", "angara", "reopen");
+    }
+    // the next subscription must request the log from the agent anew
+    assertThat(fanOutRegistry.bind(request(KEY, TIMESTAMP_FORMAT), "composite://payments")).isTrue();
+    verify(remoteGateway, never()).switchRegistration(any(), eq(true));
+    verifyNoMoreInteractions(messagingTemplate);
+    verify(remoteGateway, times(1)).switchRegistration(any(), anyBoolean());
+  }
+
+  private static Message<SendingOverflowTailingEvent> composeOverflowNotice() {
+    SendingOverflowTailingEvent event = new SendingOverflowTailingEvent(MetaDataSenderTest.class,
+        "the log's records were coming too fast", new File("/home/upc/app.log"));
+    return MessageBuilder.withPayload(event)
+        .setHeader(CLIENT_DESTINATION__HEADER, KEY)
+        .setHeader(SOURCE_NODE__HEADER, "angara")
+        .build();
+  }
+}
@@ -7,13 +7,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import tech.toparvion.analog.model.api.StyledLine;
+import tech.toparvion.analog.model.remote.LogRecord;
 import tech.toparvion.analog.service.RecordLevelDetector;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static java.util.stream.Collectors.joining;
-import static org.mockito.Mockito.mock;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
 
 /**
  * @author Toparvion
@@ -21,11 +24,13 @@ import static org.mockito.Mockito.mock;
  */
 class RecordSenderPlainTest {
   private static final Logger log = LoggerFactory.getLogger(RecordSenderPlainTest.class);
+  private RecordLevelDetector recordLevelDetector;
   private RecordSender sut;
 
   @BeforeEach
   void setUp() {
-    sut = new RecordSender(mock(RecordLevelDetector.class), mock(SimpMessagingTemplate.class), mock(ColorPicker.class));
+    recordLevelDetector = mock(RecordLevelDetector.class);
+    sut = new RecordSender(recordLevelDetector, mock(SimpMessagingTemplate.class), mock(ColorPicker.class));
   }
 
   @Test
@@ -47,4 +52,40 @@ class RecordSenderPlainTest {
         .map(rec -> String.format("%7s: %s", rec.getStyle(), rec.getText()))
         .collect(joining("\n")));
   }
+
+  @Test
+  @DisplayName("Lines classified on the agent side are not examined once again")
+  void classifiedLines() {
+    List<String> payloadAsList = new ArrayList<>();
+    payloadAsList.add("2012-10-24 13:08:00,323 [http-9014-Processor23] DEBUG [LiteEngine] generateOTP");
+    payloadAsList.add("doc4hash: \"100.00\"");
+    payloadAsList.add("<payment-info>2196946604 Tax Free</payment-info>");
+    LogRecord record = LogRecord.flat(payloadAsList, new String[]{"DEBUG", null});
+
+    List<StyledLine> records = sut.prepareFlatMessage(record);
+
+    assertEquals(3, records.size());
+    assertEquals("DEBUG", records.get(0).getStyle());
+    assertEquals("PLAIN", records.get(1).getStyle());
+    assertEquals("doc4hash: &quot;100.00&quot;", records.get(1).getText());
+    assertEquals("XML", records.get(2).getStyle());
+    verify(recordLevelDetector).detectLevel(eq(payloadAsList.get(2)), any());
+    verifyNoMoreInteractions(recordLevelDetector);
+  }
+
+  @Test
+  @DisplayName("XML lines are sent as is and marked as raw in lazy XML formatting mode")
+  void lazyXmlFormatting() {
+    sut = new RecordSender(recordLevelDetector, mock(SimpMessagingTemplate.class), mock(ColorPicker.class),
+        new FanOutRegistry(0, 0), true);
+    List<String> payloadAsList = new ArrayList<>();
+    payloadAsList.add("<payment><amount>100.00</amount></payment>");
+
+    List<StyledLine> records = sut.prepareFlatMessage(payloadAsList);
+
+    assertEquals(1, records.size());
+    assertEquals("XML", records.get(0).getStyle());
+    assertEquals("&lt;payment&gt;&lt;amount&gt;100.00&lt;/amount&gt;&lt;/payment&gt;", records.get(0).getText());
+    assertTrue(records.get(0).isRaw());
+  }
 }
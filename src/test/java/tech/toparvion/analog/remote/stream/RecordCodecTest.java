@@ -0,0 +1,150 @@
+package tech.toparvion.analog.remote.stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.file.tail.FileTailingMessageProducerSupport.FileTailingEvent;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import tech.toparvion.analog.model.remote.AccessViolationTailingEvent;
+import tech.toparvion.analog.model.remote.LogRecord;
+import tech.toparvion.analog.model.remote.SendingOverflowTailingEvent;
+import tech.toparvion.analog.remote.agent.si.ContainerTargetFile;
+import tech.toparvion.analog.util.AnaLogUtils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.integration.file.FileHeaders.ORIGINAL_FILE;
+import static tech.toparvion.analog.remote.RemotingConstants.CLIENT_DESTINATION__HEADER;
+import static tech.toparvion.analog.remote.RemotingConstants.SOURCE_NODE__HEADER;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class RecordCodecTest {
+  private final RecordCodec.Encoder encoder = new RecordCodec.Encoder();
+  private final RecordCodec.Decoder decoder = new RecordCodec.Decoder();
+
+  @Test
+  @DisplayName("Grouped records are decoded with their timestamps, levels and used headers")
+  void groupedRecords() throws IOException {
+    List<Message<?>> decoded = roundTrip(
+        recordMessage(LogRecord.grouped(lines("2020-05-01 12:00:00 WARN head", "tail"), 1588334400000L, "WARN", 1),
+            new File("/var/log/app.log")),
+        recordMessage(LogRecord.grouped(lines("2020-05-01 11:59:59 head"), 1588334399000L, null),
+            new File("/var/log/app.log")));
+
+    LogRecord first = (LogRecord) decoded.get(0).getPayload();
+    assertThat(first.getLines()).containsExactly("2020-05-01 12:00:00 WARN head", "tail");
+    assertThat(first.getTimestamp()).isEqualTo(1588334400000L);
+    assertThat(first.getLevel()).isEqualTo("WARN");
+    assertThat(first.getClassifiedLinesCount()).isEqualTo(1);
+    LogRecord second = (LogRecord) decoded.get(1).getPayload();
+    assertThat(second.getTimestamp()).isEqualTo(1588334399000L);    // negative delta
+    assertThat(second.getLevel()).isNull();
+    assertThat(decoded.get(1).getHeaders())
+        .containsEntry(CLIENT_DESTINATION__HEADER, "composite-1")
+        .containsEntry(SOURCE_NODE__HEADER, "node-1")
+        .containsEntry(ORIGINAL_FILE, new File("/var/log/app.log"));
+  }
+
+  @Test
+  @DisplayName("Flat records and container files survive the encoding")
+  void flatRecordsOfContainers() throws IOException {
+    ContainerTargetFile file = new ContainerTargetFile("k8s://", "pod/app-1", "k8s://ns/pod/app-1");
+    List<Message<?>> decoded = roundTrip(
+        recordMessage(LogRecord.flat(lines("INFO Привет", "<xml/>"), new String[]{"INFO"}), file));
+
+    LogRecord record = (LogRecord) decoded.get(0).getPayload();
+    assertThat(record.isFlat()).isTrue();
+    assertThat(record.getLines()).containsExactly("INFO Привет", "<xml/>");
+    assertThat(record.getLineLevel(0)).isEqualTo("INFO");
+    File decodedFile = (File) decoded.get(0).getHeaders().get(ORIGINAL_FILE);
+    assertThat(decodedFile.getAbsolutePath()).isEqualTo("k8s://ns/pod/app-1");
+    assertThat(decodedFile.getName()).isEqualTo("pod/app-1");
+  }
+
+  @Test
+  @DisplayName("Repeating strings are sent once")
+  void internedStrings() throws IOException {
+    Message<?> record = recordMessage(LogRecord.flat(lines("x")), new File("/var/log/app.log"));
+    int firstSize = encode(record).length;
+    int secondSize = encode(record).length;
+    assertThat(secondSize).isLessThan(firstSize - "/var/log/app.log".length());
+  }
+
+  @Test
+  @DisplayName("Tailing events are decoded with their classes, messages, files and used headers")
+  void tailingEvents() throws IOException {
+    ContainerTargetFile containerFile = new ContainerTargetFile("docker://", "app-1", "docker://app-1");
+    List<Message<?>> decoded = roundTrip(
+        eventMessage(new FileTailingEvent(this, "tail: '/var/log/app.log' has become inaccessible",
+            new File("/var/log/app.log"))),
+        eventMessage(new AccessViolationTailingEvent(this, "access denied", new File("/etc/shadow"))),
+        eventMessage(new SendingOverflowTailingEvent(this, "the server cannot keep up", containerFile)));
+
+    assertThat(decoded.get(0).getPayload()).isExactlyInstanceOf(FileTailingEvent.class);
+    FileTailingEvent first = (FileTailingEvent) decoded.get(0).getPayload();
+    assertThat(AnaLogUtils.extractMessage(first.toString()))
+        .isEqualTo("tail: '/var/log/app.log' has become inaccessible");
+    assertThat(first.getFile()).isEqualTo(new File("/var/log/app.log"));
+    assertThat(decoded.get(0).getHeaders())
+        .containsEntry(CLIENT_DESTINATION__HEADER, "composite-1")
+        .containsEntry(SOURCE_NODE__HEADER, "node-1");
+    assertThat(decoded.get(1).getPayload()).isExactlyInstanceOf(AccessViolationTailingEvent.class);
+    assertThat(decoded.get(2).getPayload()).isExactlyInstanceOf(SendingOverflowTailingEvent.class);
+    File decodedFile = ((FileTailingEvent) decoded.get(2).getPayload()).getFile();
+    assertThat(decodedFile.getAbsolutePath()).isEqualTo("docker://app-1");
+    assertThat(decodedFile.getName()).isEqualTo("app-1");
+  }
+
+  @Test
+  @DisplayName("Neither arbitrary payloads are encoded nor unknown frames are decoded")
+  void unsupportedMessages() {
+    GenericMessage<String> message = new GenericMessage<>("event", Map.of(CLIENT_DESTINATION__HEADER, "composite-1"));
+    assertThatThrownBy(() -> encode(message)).isInstanceOf(IllegalArgumentException.class);
+    byte[] javaSerializedFrame = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05, 0x73, 0x72};
+    assertThatThrownBy(() -> decoder.decode(javaSerializedFrame)).isInstanceOf(StreamCorruptedException.class);
+    assertThatThrownBy(() -> decoder.decode(new byte[]{0})).isInstanceOf(StreamCorruptedException.class);
+  }
+
+  private List<Message<?>> roundTrip(Message<?>... messages) throws IOException {
+    List<Message<?>> decoded = new ArrayList<>();
+    for (Message<?> message : messages) {
+      decoded.add(decoder.decode(readFrame(encode(message))));
+    }
+    return decoded;
+  }
+
+  private byte[] encode(Message<?> message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    encoder.encodeFrame(message, new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  private static byte[] readFrame(byte[] bytes) throws IOException {
+    return RecordStreamProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  private static Message<?> recordMessage(LogRecord record, File file) {
+    return new GenericMessage<>(record, Map.of(
+        CLIENT_DESTINATION__HEADER, "composite-1",
+        SOURCE_NODE__HEADER, "node-1",
+        ORIGINAL_FILE, file));
+  }
+
+  private static Message<?> eventMessage(FileTailingEvent event) {
+    return new GenericMessage<>(event, Map.of(
+        CLIENT_DESTINATION__HEADER, "composite-1",
+        SOURCE_NODE__HEADER, "node-1"));
+  }
+
+  private static List<String> lines(String... lines) {
+    return new ArrayList<>(List.of(lines));
+  }
+}
@@ -0,0 +1,72 @@
+package tech.toparvion.analog.remote.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import tech.toparvion.analog.model.remote.LogRecord;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.integration.file.FileHeaders.ORIGINAL_FILE;
+import static tech.toparvion.analog.remote.RemotingConstants.CLIENT_DESTINATION__HEADER;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class RecordStreamTest {
+  private final BlockingQueue<Message<?>> received = new LinkedBlockingQueue<>();
+  private RecordStreamServer server;
+  private RecordStreamClient client;
+
+  @BeforeEach
+  void setUp() {
+    server = new RecordStreamServer(received::add);
+    server.start(0);
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (client != null) {
+      client.close();
+    }
+    server.close();
+  }
+
+  @ParameterizedTest(name = "compressed: {0}")
+  @ValueSource(booleans = {false, true})
+  @DisplayName("Messages are delivered in the order of sending along with their headers")
+  void deliveryOrder(boolean isCompressed) throws InterruptedException {
+    StreamTarget target = new StreamTarget(new InetSocketAddress("localhost", server.getLocalPort()), isCompressed);
+    client = new RecordStreamClient(target, Duration.ofSeconds(1));
+    client.start();
+    int count = 2000;
+    for (int i = 0; i < count; i++) {
+      Map<String, Object> headers = Map.of(
+          CLIENT_DESTINATION__HEADER, "/topic/" + (i % 3),
+          ORIGINAL_FILE, new File("/var/log/app.log"));
+      Message<?> message = new GenericMessage<>(LogRecord.flat(new ArrayList<>(List.of("line #" + i))), headers);
+      client.execute(() -> client.write(message));
+    }
+
+    for (int i = 0; i < count; i++) {
+      Message<?> message = received.poll(5, SECONDS);
+      assertThat(message).isNotNull();
+      assertThat(((LogRecord) message.getPayload()).getLines()).containsExactly("line #" + i);
+      assertThat(message.getHeaders().get(CLIENT_DESTINATION__HEADER)).isEqualTo("/topic/" + (i % 3));
+    }
+  }
+}
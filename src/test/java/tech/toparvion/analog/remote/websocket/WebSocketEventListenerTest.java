@@ -0,0 +1,115 @@
+package tech.toparvion.analog.remote.websocket;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+import tech.toparvion.analog.model.config.ChoiceGroup;
+import tech.toparvion.analog.model.config.ChoiceProperties;
+import tech.toparvion.analog.model.config.adapters.TrackingProperties;
+import tech.toparvion.analog.model.config.entry.CompositeInclusion;
+import tech.toparvion.analog.model.config.entry.CompositeLogConfigEntry;
+import tech.toparvion.analog.model.config.entry.LogPath;
+import tech.toparvion.analog.model.config.entry.LogType;
+import tech.toparvion.analog.model.remote.TrackingRequest;
+import tech.toparvion.analog.remote.server.FanOutRegistry;
+import tech.toparvion.analog.remote.server.RecordSender;
+import tech.toparvion.analog.remote.server.RegistrationChannelCreator;
+import tech.toparvion.analog.remote.server.RemoteGateway;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static tech.toparvion.analog.remote.RemotingConstants.WEBSOCKET_TOPIC_PREFIX;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class WebSocketEventListenerTest {
+  private static final String DESTINATION = "composite://payments";
+  private static final String KEY = "group>node://angara/home/upc/app.log";
+
+  private final RemoteGateway remoteGateway = mock(RemoteGateway.class);
+  private final FanOutRegistry fanOutRegistry = new FanOutRegistry(trackingProperties());
+  private final WebSocketEventListener sut = new WebSocketEventListener(choiceProperties(), new WatchRegistry(),
+      mock(RegistrationChannelCreator.class), remoteGateway, fanOutRegistry, mock(RecordSender.class),
+      mock(SimpMessagingTemplate.class), path -> null, new StaticMessageSource());
+
+  @Test
+  @DisplayName("Log dropped on sending overflow is requested again when a session rejoins its fellow watchers")
+  void resubscriptionAfterOverflow() {
+    sut.onSubscribe(new SessionSubscribeEvent(this, stompMessage(StompCommand.SUBSCRIBE, "first")));
+    sut.onSubscribe(new SessionSubscribeEvent(this, stompMessage(StompCommand.SUBSCRIBE, "second")));
+    verify(remoteGateway, times(1)).switchRegistration(any(), eq(true));
+
+    // this is what the server does on the agent's overflow notice (see MetaDataSender)
+    assertThat(fanOutRegistry.drop(KEY)).isNotNull();
+    // one of the sessions reopens the log while the other one is still watching it
+    sut.onUnsubscribe(new SessionUnsubscribeEvent(this, stompMessage(StompCommand.UNSUBSCRIBE, "first")));
+    sut.onSubscribe(new SessionSubscribeEvent(this, stompMessage(StompCommand.SUBSCRIBE, "first")));
+
+    ArgumentCaptor<TrackingRequest> requestCaptor = ArgumentCaptor.forClass(TrackingRequest.class);
+    verify(remoteGateway, times(2)).switchRegistration(requestCaptor.capture(), eq(true));
+    assertThat(requestCaptor.getValue().getClientDestination()).isEqualTo(KEY);
+    assertThat(fanOutRegistry.findDestinations(KEY)).containsExactly(DESTINATION);
+
+    // a session joining the live log must not request it once again
+    sut.onSubscribe(new SessionSubscribeEvent(this, stompMessage(StompCommand.SUBSCRIBE, "third")));
+    verify(remoteGateway, times(2)).switchRegistration(any(), eq(true));
+    // and the tracking is switched off as usual once all the sessions have left
+    for (String sessionId : List.of("second", "first", "third")) {
+      sut.onUnsubscribe(new SessionUnsubscribeEvent(this, stompMessage(StompCommand.UNSUBSCRIBE, sessionId)));
+    }
+    verify(remoteGateway, times(1)).switchRegistration(any(), eq(false));
+    assertThat(fanOutRegistry.findDestinations(KEY)).isEmpty();
+  }
+
+  private static Message<byte[]> stompMessage(StompCommand command, String sessionId) {
+    StompHeaderAccessor headers = StompHeaderAccessor.create(command);
+    headers.setSessionId(sessionId);
+    if (command == StompCommand.SUBSCRIBE) {
+      headers.setDestination(WEBSOCKET_TOPIC_PREFIX + DESTINATION);
+      headers.setNativeHeader("isTailNeeded", "true");
+    }
+    return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+  }
+
+  private static ChoiceProperties choiceProperties() {
+    LogPath logPath = new LogPath();
+    logPath.setType(LogType.NODE);
+    logPath.setNode("angara");
+    logPath.setTarget("/home/upc/app.log");
+    logPath.setFullPath("node://angara/home/upc/app.log");
+    CompositeInclusion inclusion = new CompositeInclusion();
+    inclusion.setPath(logPath);
+    inclusion.setTimestamp("yyyy-MM-dd HH:mm:ss,SSS");
+    CompositeLogConfigEntry compositeEntry = new CompositeLogConfigEntry();
+    compositeEntry.setUriName("payments");
+    compositeEntry.setIncludes(List.of(inclusion));
+    ChoiceGroup choiceGroup = new ChoiceGroup();
+    choiceGroup.setCompositeLogs(List.of(compositeEntry));
+    ChoiceProperties choiceProperties = new ChoiceProperties();
+    choiceProperties.setChoices(List.of(choiceGroup));
+    return choiceProperties;
+  }
+
+  private static TrackingProperties trackingProperties() {
+    TrackingProperties.TailSize tailSize = new TrackingProperties.TailSize();
+    tailSize.setFlat(3);
+    tailSize.setGroup(2);
+    TrackingProperties trackingProperties = new TrackingProperties();
+    trackingProperties.setTailSize(tailSize);
+    return trackingProperties;
+  }
+}
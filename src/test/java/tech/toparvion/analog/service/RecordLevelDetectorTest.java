@@ -3,6 +3,7 @@ package tech.toparvion.analog.service;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import tech.toparvion.analog.model.config.RecordLevelsProperties;
+import tech.toparvion.analog.service.RecordLevelDetector.PositionHint;
 
 import java.util.List;
 import java.util.Optional;
@@ -246,6 +247,95 @@ class RecordLevelDetectorTest {
     assertTrue(levelOpt.isPresent());
     assertEquals("INFO", levelOpt.get());
   }
-  
-  
-}
\ No newline at end of file
+
+  @Test
+  @DisplayName("The level is found at the hinted position learned from previous record")
+  void detectLevel_29() {
+    RecordLevelDetector sut = new RecordLevelDetector(getPropsFor("DEBUG", "INFO"), true);
+    PositionHint hint = new PositionHint();
+    assertEquals(Optional.of("INFO"), sut.detectLevel("2020-05-10 09:23:05 INFO  [main] started", hint));
+    Optional<String> levelOpt = sut.detectLevel("2020-05-10 09:23:06 DEBUG [main] INFO is passed", hint);
+    assertTrue(levelOpt.isPresent());
+    assertEquals("DEBUG", levelOpt.get());
+  }
+
+  @Test
+  @DisplayName("The full scan is performed if there is no level at the hinted position")
+  void detectLevel_30() {
+    RecordLevelDetector sut = new RecordLevelDetector(getPropsFor("DEBUG", "INFO"), true);
+    PositionHint hint = new PositionHint();
+    assertEquals(Optional.of("INFO"), sut.detectLevel("09:23:05 INFO  [main] started", hint));
+    assertEquals(Optional.of("DEBUG"), sut.detectLevel("2020-05-10 09:23:06 DEBUG [main] stopped", hint));
+    assertEquals(Optional.of("DEBUG"), sut.detectLevel("2020-05-10 09:23:07 DEBUG [main] stopped", hint));
+    assertFalse(sut.detectLevel("09:23:08 INFOS [main] no level", hint).isPresent());
+  }
+
+  @Test
+  @DisplayName("The hinted position is ignored if it is not at word start or not on the first line")
+  void detectLevel_31() {
+    RecordLevelDetector sut = new RecordLevelDetector(getPropsFor("DEBUG", "INFO"), true);
+    PositionHint hint = new PositionHint();
+    assertEquals(Optional.of("INFO"), sut.detectLevel("12 INFO", hint));
+    assertFalse(sut.detectLevel("12_INFO", hint).isPresent());
+    assertFalse(sut.detectLevel("1\n INFO", hint).isPresent());
+  }
+
+  @Test
+  @DisplayName("A level being a prefix of another level is told apart from it by the word length")
+  void detectLevel_32() {
+    RecordLevelDetector sut = new RecordLevelDetector(getPropsFor("WARN", "WARNING"), true);
+    assertEquals(Optional.of("WARNING"), sut.detectLevel("12:00 WARNING [main]"));
+    assertEquals(Optional.of("WARN"), sut.detectLevel("12:00 WARN [main]"));
+    assertFalse(sut.detectLevel("12:00 WARNI [main]").isPresent());
+    assertFalse(sut.detectLevel("12:00 WARNINGS [main]").isPresent());
+  }
+
+  @Test
+  @DisplayName("Levels sharing a prefix are recognized each, while the prefix alone and its other extensions are not")
+  void detectLevel_33() {
+    RecordLevelDetector sut = new RecordLevelDetector(getPropsFor("TRACE", "TRAP", "TRAIL"), true);
+    assertEquals(Optional.of("TRAIL"), sut.detectLevel("TRAIL"));
+    assertEquals(Optional.of("TRAP"), sut.detectLevel("TRAP"));
+    assertEquals(Optional.of("TRACE"), sut.detectLevel("TRA TRACK TRAPS TRACE TRAIL"));
+    assertFalse(sut.detectLevel("TRA TRACK TRAPS").isPresent());
+  }
+
+  @Test
+  @DisplayName("Case insensitive detector folds the case of letters only and returns the level as it is declared")
+  void detectLevel_34() {
+    RecordLevelDetector sut = new RecordLevelDetector(getPropsFor("WARN", "Info", "L_1"), false);
+    assertEquals(Optional.of("Info"), sut.detectLevel("12:00 info [main]"));
+    assertEquals(Optional.of("WARN"), sut.detectLevel("12:00 wArN [main]"));
+    assertEquals(Optional.of("L_1"), sut.detectLevel("12:00 l_1 [main]"));
+    assertFalse(sut.detectLevel("12:00 l-1 [main]").isPresent());
+    // the levels differing in case only are the same level for the case insensitive detector
+    RecordLevelDetector sameLevelsSut = new RecordLevelDetector(getPropsFor("warn", "WARN"), false);
+    assertEquals(Optional.of("warn"), sameLevelsSut.detectLevel("12:00 WARN [main]"));
+  }
+
+  @Test
+  @DisplayName("Non-ASCII characters are word boundaries and never match level characters")
+  void detectLevel_35() {
+    RecordLevelDetector sut = new RecordLevelDetector(getPropsFor("ERROR"), false);
+    assertEquals(Optional.of("ERROR"), sut.detectLevel("\u041e\u0448\u0438\u0431\u043a\u0430ERROR"));
+    assertEquals(Optional.of("ERROR"), sut.detectLevel("ERROR\u00e9"));
+    assertFalse(sut.detectLevel("ERR\u00d6R").isPresent());
+    assertFalse(sut.detectLevel("\u00c9RROR").isPresent());
+    // the Kelvin sign turns into 'k' when lower cased but is not a Latin letter anyway
+    RecordLevelDetector okSut = new RecordLevelDetector(getPropsFor("OK"), false);
+    assertFalse(okSut.detectLevel("O\u212a").isPresent());
+  }
+
+  @Test
+  @DisplayName("A level on the second line is not detected, neither by the full scan nor at the hinted position")
+  void detectLevel_36() {
+    RecordLevelDetector sut = new RecordLevelDetector(getPropsFor("DEBUG", "ERROR"), true);
+    assertFalse(sut.detectLevel("2020-05-10 09:23:05 something\nERROR").isPresent());
+    assertFalse(sut.detectLevel("2020-05-10 09:23:05 something\r\n09:23:05 ERROR").isPresent());
+    PositionHint hint = new PositionHint();
+    assertEquals(Optional.of("ERROR"), sut.detectLevel("ERROR at the first line", hint));
+    assertFalse(sut.detectLevel("x\nERROR", hint).isPresent());
+    assertFalse(sut.detectLevel("\nERROR", hint).isPresent());
+  }
+
+}
@@ -0,0 +1,43 @@
+package tech.toparvion.analog.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class XmlFormattingServiceTest {
+
+  @Test
+  @DisplayName("Cache is bounded by the total length of the fragments, evicting the least recently used ones")
+  void cacheIsBoundedByLength() {
+    // each fragment below takes 17 chars in the cache: 8 of the raw fragment and 9 of the formatted one
+    var sut = new XmlFormattingService(true, 100, 50);
+    String first = sut.format("<a>1</a>");
+    String second = sut.format("<a>2</a>");
+    assertThat(sut.getCachedLength()).isEqualTo(34);
+
+    assertThat(sut.format("<a>1</a>")).isSameAs(first);   // makes the 1st fragment the most recently used one
+    sut.format("<a>3</a>");                                 // evicts the 2nd fragment
+    assertThat(sut.getCachedLength()).isEqualTo(34);
+    assertThat(sut.format("<a>1</a>")).isSameAs(first);
+    assertThat(sut.format("<a>2</a>")).isEqualTo(second).isNotSameAs(second);
+
+    sut.format(" ".repeat(60));       // takes more than the whole cache, so it isn't cached at all
+    assertThat(sut.getCachedLength()).isEqualTo(34);
+  }
+
+  @Test
+  @DisplayName("Fragment longer than the limit is rejected")
+  void tooLongFragment() {
+    var sut = new XmlFormattingService(true, 8, 50);
+
+    assertThat(sut.format("<a>1</a>")).isEqualTo("<a>1</a>\n");
+    assertThatThrownBy(() -> sut.format("<a>10</a>"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
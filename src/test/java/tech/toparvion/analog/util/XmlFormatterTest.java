@@ -0,0 +1,76 @@
+package tech.toparvion.analog.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class XmlFormatterTest {
+
+  @Test
+  @DisplayName("Nested elements are indented while text-only and empty elements are kept on single lines")
+  void nestedElements() {
+    String xml = "<payment><amount>100.00</amount><payee account=\"40911810100060000005\"/>" +
+        "<payment-info>2196946604 Tax Free</payment-info></payment>";
+
+    assertThat(XmlFormatter.format(xml)).isEqualTo("<payment>\n" +
+        "  <amount>100.00</amount>\n" +
+        "  <payee account=\"40911810100060000005\" />\n" +
+        "  <payment-info>2196946604 Tax Free</payment-info>\n" +
+        "</payment>\n");
+  }
+
+  @Test
+  @DisplayName("Prolog, comments, CDATA, mixed content and single-quoted attributes are handled")
+  void miscellaneousMarkup() {
+    String xml = "<?xml version='1.0'?><soap:Envelope xmlns:soap='http://x'>\n  <soap:Body>\n" +
+        "    <!-- comment --><a b = 'x\"y'><![CDATA[<raw>]]></a>mixed<e></e>\n  </soap:Body></soap:Envelope>";
+
+    assertThat(XmlFormatter.format(xml)).isEqualTo("<?xml version='1.0'?>\n" +
+        "<soap:Envelope xmlns:soap=\"http://x\">\n" +
+        "  <soap:Body>\n" +
+        "    <!-- comment -->\n" +
+        "    <a b=\"x&quot;y\"><![CDATA[<raw>]]></a>\n" +
+        "    mixed\n" +
+        "    <e></e>\n" +
+        "  </soap:Body>\n" +
+        "</soap:Envelope>\n");
+  }
+
+  @Test
+  @DisplayName("Fragments nested deeper than the limit are not formatted")
+  void tooDeepFragment() {
+    assertThat(XmlFormatter.format(nest(XmlFormatter.MAX_DEPTH))).isNotNull();
+    assertThat(XmlFormatter.format(nest(XmlFormatter.MAX_DEPTH + 1))).isNull();
+  }
+
+  @Test
+  @DisplayName("Indentation stops growing beyond the limited depth")
+  void limitedIndentation() {
+    String formatted = XmlFormatter.format(nest(XmlFormatter.MAX_INDENTED_DEPTH + 3));
+
+    String maxIndentation = "  ".repeat(XmlFormatter.MAX_INDENTED_DEPTH);
+    assertThat(formatted).contains("\n" + maxIndentation + "<e>\n" + maxIndentation + "<e>\n" + maxIndentation + "<e>")
+        .doesNotContain(maxIndentation + " ");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"<a><b></a>", "<a>unclosed", "<a x='1>", "</a>", "<a></b>"})
+  @DisplayName("Malformed fragments are not formatted")
+  void malformedFragments(String xml) {
+    assertThat(XmlFormatter.format(xml)).isNull();
+  }
+
+  /**
+   * @return a fragment of {@code depth} nested elements with some text in the innermost one
+   */
+  private static String nest(int depth) {
+    return "<e>".repeat(depth) + "text" + "</e>".repeat(depth);
+  }
+}
@@ -0,0 +1,83 @@
+package tech.toparvion.analog.util.timestamp;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static tech.toparvion.analog.util.timestamp.CompiledTimestampParser.NO_TIMESTAMP;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class CompiledTimestampParserTest {
+
+  @ParameterizedTest(name = "[{index}] {0}")
+  @CsvSource(delimiter = '|', quoteCharacter = '"', value = {
+      "yyyy-MM-dd HH:mm:ss,SSS  | 2020-05-10 09:23:05,419  INFO [main] - tech.toparvion.analog.AnaLog",
+      "dd.MM.yy HH:mm:ss        | 02.10.14 09:21:58  INFO [main] - tech.toparvion.analog.AnaLog",
+      "uuuu-MM-dd'T'HH:mm:ss.SSSSSS | 2016-02-29T23:59:59.123456 some text",
+      "yyyy/MM/dd HH:mm:ss.S    | 1999/12/31 00:00:01.7",
+      "'['dd.MM.yyyy HH:mm:ss   | prefix [15.03.2021 13:45:00] after",
+  })
+  @DisplayName("Compiled parser gives the same result as the formatter")
+  void parseLikeFormatter(String format, String line) {
+    var sut = CompiledTimestampParser.compile(format);
+    assertThat(sut).isNotNull();
+
+    long epochMillis = sut.parse(line);
+
+    var formatter = DateTimeFormatter.ofPattern(format);
+    var matcher = new DateFormat2RegexConverter().convertToRegex(format).matcher(line);
+    assertThat(matcher.find()).isTrue();
+    LocalDateTime expected = formatter.parse(matcher.group(), LocalDateTime::from);
+    assertThat(epochMillis).isEqualTo(expected.toInstant(ZoneOffset.UTC).toEpochMilli());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"dd/MMM/yyyy:HH:mm:ss", "EEE HH:mm:ss", "d.M.yyyy HH:mm", "hh:mm a", "[yyyy-MM-dd]",
+      "'no fields'"})
+  @DisplayName("Formats with text, variable width or optional fields are not compiled")
+  void notCompilableFormats(String format) {
+    assertThat(CompiledTimestampParser.compile(format)).isNull();
+  }
+
+  @Test
+  @DisplayName("Current date is assumed if the format has no date")
+  void timeOnlyFormat() {
+    var sut = CompiledTimestampParser.compile("HH:mm:ss");
+    assertThat(sut).isNotNull();
+
+    long epochMillis = sut.parse("19:21:58 INFO [main] - tech.toparvion.analog.AnaLog");
+
+    LocalDateTime expected = LocalDateTime.of(LocalDate.now(Clock.systemDefaultZone()), LocalTime.of(19, 21, 58));
+    assertThat(epochMillis).isEqualTo(expected.toInstant(ZoneOffset.UTC).toEpochMilli());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "\tat tech.toparvion.analog.AnaLog.main(AnaLog.java:42)",
+      "2020-05-10 09:23",
+      "2020-13-10 09:23:05 month is out of range",
+      "2019-02-29 09:23:05 not a leap year",
+      "2020-05-10 24:00:00 hour is out of range",
+      "",
+  })
+  @DisplayName("Lines without valid timestamp are rejected")
+  void noTimestamp(String line) {
+    var sut = CompiledTimestampParser.compile("yyyy-MM-dd HH:mm:ss");
+    assertThat(sut).isNotNull();
+
+    assertThat(sut.parse(line)).isEqualTo(NO_TIMESTAMP);
+  }
+}
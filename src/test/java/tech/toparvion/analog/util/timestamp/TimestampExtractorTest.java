@@ -12,11 +12,13 @@ import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.regex.Pattern;
 
 import static java.time.temporal.ChronoUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.within;
 import static org.mockito.Mockito.*;
 import static org.springframework.integration.file.FileHeaders.ORIGINAL_FILE;
@@ -76,6 +78,47 @@ class TimestampExtractorTest {
 
   }
 
+  @Test
+  @DisplayName("A record is kept in the registry while it is referenced by at least one tracking")
+  void unregisterTimestampFormat_referenced() {
+    // given
+    var format = "yyyy-MM-dd HH:mm:ss";
+    var logPath = "logPath";
+    when(converter.convertToRegex(format)).thenReturn(Pattern.compile(""));
+    sut.registerNewTimestampFormat(format, logPath);
+    sut.registerNewTimestampFormat(format, logPath);
+
+    // when
+    sut.unregisterTimestampFormat(logPath);
+
+    // then
+    verify(converter, times(1)).convertToRegex(format);
+    assertThat(sut.getRegistry()).containsKey(logPath);
+  }
+
+  @Test
+  @DisplayName("Least recently released records are evicted when there are too many idle ones")
+  void unregisterTimestampFormat_eviction() {
+    // given
+    var format = "yyyy-MM-dd HH:mm:ss";
+    when(converter.convertToRegex(format)).thenReturn(Pattern.compile(""));
+    for (int i = 0; i <= TimestampExtractor.MAX_IDLE_RECORDS; i++) {
+      sut.registerNewTimestampFormat(format, "logPath" + i);
+    }
+    sut.registerNewTimestampFormat(format, "activeLogPath");
+
+    // when
+    for (int i = 0; i <= TimestampExtractor.MAX_IDLE_RECORDS; i++) {
+      sut.unregisterTimestampFormat("logPath" + i);
+    }
+
+    // then
+    assertThat(sut.getRegistry())
+        .hasSize(TimestampExtractor.MAX_IDLE_RECORDS + 1)
+        .doesNotContainKey("logPath0")
+        .containsKeys("logPath1", "activeLogPath");
+  }
+
   @Test
   @DisplayName("The extracting exits shortly with null if the line starts with '\\tat'")
   void extractTimestamp_shortHand() {
@@ -173,4 +216,30 @@ class TimestampExtractorTest {
     //noinspection ResultOfMethodCallIgnored
     verify(logFile).getAbsolutePath();
   }
-}
\ No newline at end of file
+
+  @Test
+  @DisplayName("The parser bound to a log extracts timestamps from the lines without log file header")
+  void bindTo_registeredLog() {
+    // given
+    var logPath = "/home/me/myapp/app.log";
+    var pattern = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{2} \\d{2}:\\d{2}:\\d{2}");
+    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yy HH:mm:ss");
+    sut.getRegistry().put(logPath, new PatternAndFormatter(pattern, formatter));
+    var message = MessageBuilder.withPayload("02.10.14 09:21:58  INFO [main] - tech.toparvion.analog.AnaLog").build();
+
+    // when
+    LogTimestampParser parser = sut.bindTo(logPath);
+
+    // then
+    assertThat(parser.extractTimestampMillis(message))
+        .isEqualTo(LocalDateTime.parse("2014-10-02T09:21:58").toInstant(ZoneOffset.UTC).toEpochMilli());
+    assertThat(parser.extractTimestampMillis("\tat SomeElse.java")).isEqualTo(TimestampExtractor.NO_TIMESTAMP);
+  }
+
+  @Test
+  @DisplayName("A parser cannot be bound to unregistered log")
+  void bindTo_unregisteredLog() {
+    assertThatThrownBy(() -> sut.bindTo("/home/me/myapp/app.log"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
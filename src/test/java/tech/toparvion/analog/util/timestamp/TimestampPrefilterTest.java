@@ -0,0 +1,57 @@
+package tech.toparvion.analog.util.timestamp;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Toparvion
+ * @since v0.14
+ */
+class TimestampPrefilterTest {
+
+  @ParameterizedTest(name = "[{index}] {0}")
+  @CsvSource(delimiter = '|', quoteCharacter = '"', value = {
+      "dd/LLL/yyyy:HH:mm:ss       | 127.0.0.1 - - [23/Jun/2020:00:29:42 +0300] \"GET / HTTP/1.1\"",
+      "EEE MMM d HH:mm:ss         | Tue 006 5 12:01:02 some text",
+      "[d.M.yy H:mm               | [5.6.20 9:01 some text",
+      "yyyy-MM-dd'T'HH:mm:ss.SSSZ | 2020-05-10T09:23:05.419Z some text",
+      "'at' HH:mm a               | at 09:23 PM some text",
+  })
+  @DisplayName("Lines accepted by the format's regex are accepted by the prefilter as well")
+  void acceptsWhatRegexAccepts(String format, String line) {
+    var sut = TimestampPrefilter.of(format);
+
+    assertThat(new DateFormat2RegexConverter().convertToRegex(format).matcher(line).find()).isTrue();
+    assertThat(sut.mayContain(line, false)).isTrue();
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "\tat tech.toparvion.analog.AnaLog.main(AnaLog.java:42)",
+      "Caused by: java.lang.IllegalStateException: something went wrong",
+      "\t... 42 more",
+      "  <element attribute=\"value\"/>",
+      "",
+  })
+  @DisplayName("Continuation lines are rejected")
+  void rejectsContinuationLines(String line) {
+    var sut = TimestampPrefilter.of("dd/LLL/yyyy:HH:mm:ss");
+
+    assertThat(sut.mayContain(line, false)).isFalse();
+  }
+
+  @Test
+  @DisplayName("Anchored prefilter accepts the timestamps at the beginning of the line only")
+  void anchoredCheck() {
+    var sut = TimestampPrefilter.of("[d.M.yy H:mm");
+
+    assertThat(sut.mayContain("[5.6.20 9:01 some text", true)).isTrue();
+    assertThat(sut.mayContain("prefix [5.6.20 9:01 some text", true)).isFalse();
+    assertThat(sut.mayContain("prefix [5.6.20 9:01 some text", false)).isTrue();
+  }
+}